@@ -1,13 +1,24 @@
 package edu.ufl.cise.plpfa22;
 
 import edu.ufl.cise.plpfa22.IToken.Kind;
+import edu.ufl.cise.plpfa22.analysis.CallGraph;
+import edu.ufl.cise.plpfa22.analysis.Effects;
+import edu.ufl.cise.plpfa22.analysis.LoopInvariants;
 import edu.ufl.cise.plpfa22.ast.*;
 import edu.ufl.cise.plpfa22.ast.Types.Type;
 import org.objectweb.asm.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
@@ -24,11 +35,177 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
     private static final String CLASS_NAME = "edu/ufl/cise/plpfa22/prog";
     private static final String INSTANCE_NAME = "Ledu/ufl/cise/plpfa22/prog;";
 
+    /** Emit CONST declarations as static final fields and their uses as constants. */
+    public static final String STATIC_CONSTANTS = "static-constants";
+
+    /** Compile the conditions of IF and WHILE into conditional jumps instead of testing a boolean. */
+    public static final String CONDITION_JUMPS = "condition-jumps";
+
+    /** Compile chains of string + into one invokedynamic to StringConcatFactory. */
+    public static final String INDY_CONCAT = "indy-concat";
+
+    /** Compile string relational operators into single calls to PLPRuntime, and # into equals XOR 1. */
+    public static final String STRING_INTRINSICS = "string-intrinsics";
+
+    /**
+     * Hold string variables that the program appends to (s := s + ...) as PLPString instead of String,
+     * so that appending in a loop is linear rather than quadratic. Reads flatten the value.
+     */
+    public static final String ROPE_STRINGS = "rope-strings";
+
+    /**
+     * Compile a CALL of the enclosing procedure in tail position into a jump back to the start of its
+     * run method, reusing the activation instead of allocating a new one.
+     */
+    public static final String TAIL_CALLS = "tail-calls";
+
+    /**
+     * Evaluate the expressions of a WHILE loop that read no variable the loop writes once before the
+     * loop, into locals, and keep the enclosing instances that its variable accesses walk to in locals.
+     */
+    public static final String LICM = "licm";
+
+    /**
+     * Keep the variables a WHILE loop reads or assigns in locals while it runs. They are written back
+     * to their fields before calls that may access them and when the loop ends, and reloaded after
+     * calls that may assign them.
+     */
+    public static final String SCALAR_REPLACEMENT = "scalar-replacement";
+
+    /**
+     * Hold the variables that no nested procedure reads or writes in locals of run instead of fields.
+     */
+    public static final String CAPTURE_ANALYSIS = "capture-analysis";
+
+    /** Compile multiplication, division and remainder by a power of two into shifts and masks. */
+    public static final String STRENGTH_REDUCTION = "strength-reduction";
+
+    /**
+     * Evaluate a NUMBER or BOOLEAN expression that occurs again in the same run of straight-line
+     * statements once, into a local, and load it from there at its later occurrences. An assignment or
+     * CALL that may write a variable the expression reads ends its reuse.
+     */
+    public static final String CSE = "cse";
+
+    /**
+     * Compile runs of IF statements that compare the same variable with distinct literals, and whose
+     * bodies cannot assign it, into one load of the variable and a tableswitch or lookupswitch.
+     */
+    public static final String SWITCH_DISPATCH = "switch-dispatch";
+
+    // shorter runs are compiled as separate IF statements
+    private static final int MIN_SWITCH_CASES = 3;
+
+    /**
+     * With a profile, move the bodies of IF statements that rarely run them after the end of run, so
+     * that the common path falls through without a taken jump.
+     */
+    public static final String HOT_COLD_LAYOUT = "hot-cold-layout";
+
+    // an IF is cold if it ran at least this often and took its body less than once in COLD_RATIO
+    private static final int MIN_PROFILE_EXECUTIONS = 100;
+    private static final int COLD_RATIO = 20;
+
+    /**
+     * Run every CALL of a non-recursive procedure on one instance, created on the first call and kept
+     * in the p$frame field of the enclosing instance. A recursive procedure gets a pool of instances in
+     * p$frames, indexed by its depth in p$depth, so calls allocate only on reaching a new depth. An
+     * activation resets its variable fields to their defaults when it starts.
+     *
+     * Not enabled by any level: the JIT removes the allocation of an instance whose run it inlines,
+     * and a shared instance defeats that, so this only pays where allocation itself is the cost (see
+     * FrameBenchmark).
+     */
+    public static final String FRAME_REUSE = "frame-reuse";
+
+    /**
+     * Compile the whole program into its main class. Each procedure becomes a private method of it.
+     * Variables that no nested procedure accesses are locals of that method. The others live in a
+     * one-element array created when the activation starts, and a procedure gets the arrays of the
+     * enclosing procedures' variables it or its callees access as parameters. Main block variables stay
+     * fields, and constants are always loaded as literals.
+     */
+    public static final String SINGLE_CLASS = "single-class";
+
+    // slot 1 is the scratch local of the string operators
+    private static final int FIRST_FREE_LOCAL = 2;
+
+    private static final String ROPE_APPEND = "(" + PLPString.DESCRIPTOR + "Ljava/lang/String;)" + PLPString.DESCRIPTOR;
+
+    private static final Handle CONCAT_BOOTSTRAP = new Handle(H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory",
+            "makeConcatWithConstants", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+            + "Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false);
+    // StringConcatFactory takes at most 200 argument slots
+    private static final int MAX_CONCAT_ARGS = 199;
+
     private final List<CodeGenUtils.GenClass> bytecodeList = new ArrayList<>();
     private final List<String> classNameList = new ArrayList<>();
+    private boolean generateNestedProcedures = true;
+    private final boolean staticConstants;
+    private final boolean conditionJumps;
+    private final boolean indyConcat;
+    private final boolean stringIntrinsics;
+    private final boolean ropeStrings;
+    private final boolean tailCalls;
+    private final boolean licm;
+    private final boolean scalarReplacement;
+    private CallGraph callGraph;
+    private LoopInvariants loopInvariants;
+    private final boolean captureAnalysis;
+    private final boolean strengthReduction;
+    private final boolean cse;
+    private final boolean switchDispatch;
+    private final boolean frameReuse;
+    private final boolean singleClass;
+    private final boolean profileGenerate;
+    private final String programId;
+    private final Profile profile;
+    // cold IF bodies of the method being generated, with the state to generate them in
+    private final List<ColdCode> coldCode = new ArrayList<>();
+    // first occurrences of common subexpressions, stored to the local when evaluated
+    private final Map<Expression, Integer> commonValues = new IdentityHashMap<>();
+    private boolean inStraightLine;
+    private final Set<Declaration> capturedVariables = new HashSet<>();
+    // uncaptured variables for the whole method, others while a loop runs
+    private final Map<Declaration, Integer> localVariables = new IdentityHashMap<>();
+    private final Map<Expression, Integer> hoistedValues = new IdentityHashMap<>();
+    private final Map<Integer, Integer> hoistedInstances = new HashMap<>();
+    private int nextLocal;
+    private final Set<Declaration> ropeVariables = new HashSet<>();
+    private final Map<StatementCall, ProcDec> tailCallTargets = new IdentityHashMap<>();
+    private final Map<Block, Label> restartLabels = new IdentityHashMap<>();
+    // with single-class, the arrays of the enclosing procedures' variables a procedure takes
+    private final Map<ProcDec, List<VarDec>> environments = new IdentityHashMap<>();
+    // and the locals holding the arrays of the method being generated
+    private final Map<Declaration, Integer> boxedVariables = new IdentityHashMap<>();
+    private ProcDec currentProcedure;
 
     public CodeGenVisitor(String className, String packageName, String sourceFileName) {
+        this(className, packageName, sourceFileName, new CompilerOptions());
+    }
+
+    public CodeGenVisitor(String className, String packageName, String sourceFileName, CompilerOptions options) {
         super();
+        this.singleClass = options.isEnabled(SINGLE_CLASS, null);
+        // procedures have no instances to hold constant fields in
+        this.staticConstants = options.isEnabled(STATIC_CONSTANTS, CompilerOptions.OptLevel.O1) || singleClass;
+        this.conditionJumps = options.isEnabled(CONDITION_JUMPS, CompilerOptions.OptLevel.O1);
+        this.indyConcat = options.isEnabled(INDY_CONCAT, CompilerOptions.OptLevel.O1);
+        this.stringIntrinsics = options.isEnabled(STRING_INTRINSICS, CompilerOptions.OptLevel.O1);
+        this.ropeStrings = options.isEnabled(ROPE_STRINGS, CompilerOptions.OptLevel.O2);
+        this.tailCalls = options.isEnabled(TAIL_CALLS, CompilerOptions.OptLevel.O1);
+        this.licm = options.isEnabled(LICM, CompilerOptions.OptLevel.O2);
+        this.scalarReplacement = options.isEnabled(SCALAR_REPLACEMENT, CompilerOptions.OptLevel.O2);
+        this.captureAnalysis = options.isEnabled(CAPTURE_ANALYSIS, CompilerOptions.OptLevel.O1);
+        this.strengthReduction = options.isEnabled(STRENGTH_REDUCTION, CompilerOptions.OptLevel.O1);
+        this.cse = options.isEnabled(CSE, CompilerOptions.OptLevel.O2);
+        this.frameReuse = options.isEnabled(FRAME_REUSE, null) && !singleClass;
+        this.profileGenerate = options.isEnabled(Profile.GENERATE, null);
+        this.programId = options.getProgramId();
+        // counts are kept per IF statement
+        this.switchDispatch = options.isEnabled(SWITCH_DISPATCH, CompilerOptions.OptLevel.O1) && !profileGenerate;
+        this.profile = options.isEnabled(HOT_COLD_LAYOUT, CompilerOptions.OptLevel.O1) && !profileGenerate
+                ? options.getProgramProfile() : null;
         this.packageName = packageName;
         this.className = className;
         this.sourceFileName = sourceFileName;
@@ -39,7 +216,10 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
     @Override
     public Object visitBlock(Block block, Object arg) throws PLPException {
         ClassWriter classWriter = (ClassWriter) arg;
-        MethodVisitor methodVisitor = classWriter.visitMethod(ACC_PUBLIC, "run", "()V", null, null);
+        ProcDec procDec = currentProcedure;
+        MethodVisitor methodVisitor = singleClass && procDec != null
+                ? classWriter.visitMethod(ACC_PRIVATE, methodName(procDec), methodDescriptor(procDec), null, null)
+                : classWriter.visitMethod(ACC_PUBLIC, "run", "()V", null, null);
 
         for (ConstDec constDec : block.constDecs) {
             constDec.visit(this, new ClassAndMethodWriter(classWriter, methodVisitor));
@@ -47,27 +227,198 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
         for (VarDec varDec : block.varDecs) {
             varDec.visit(this, arg);
         }
-        for (ProcDec procDec : block.procedureDecs) {
-            procDec.visit(this, CLASS_NAME);
+        if (generateNestedProcedures) {
+            for (ProcDec nested : block.procedureDecs) {
+                nested.visit(this, classWriter);
+            }
         }
 
         methodVisitor.visitCode();
+        int firstLocal = FIRST_FREE_LOCAL;
+        boxedVariables.clear();
+        if (singleClass && procDec != null) {
+            // the parameters, moved clear of the scratch local
+            List<VarDec> environment = environments.get(procDec);
+            firstLocal = Math.max(FIRST_FREE_LOCAL, 1 + environment.size());
+            for (int i = 0; i < environment.size(); i++) {
+                methodVisitor.visitVarInsn(ALOAD, 1 + i);
+                methodVisitor.visitVarInsn(ASTORE, firstLocal);
+                boxedVariables.put(environment.get(i), firstLocal++);
+            }
+        }
+        Label restart = restartLabels.get(block);
+        if (restart != null) {
+            methodVisitor.visitLabel(restart);
+        }
+        if (frameReuse && classNameList.size() > 1) {
+            // the instance may have run before
+            resetVariables(block, methodVisitor);
+        }
+        nextLocal = firstLocal;
+        localVariables.clear();
+        for (VarDec varDec : block.varDecs) {
+            if (isLocal(varDec)) {
+                // a new activation starts with the field defaults
+                localVariables.put(varDec, nextLocal);
+                methodVisitor.visitInsn(varDec.getType() == Type.STRING ? ACONST_NULL : ICONST_0);
+                methodVisitor.visitVarInsn(varDec.getType() == Type.STRING ? ASTORE : ISTORE, nextLocal++);
+            } else if (singleClass && procDec != null && varDec.getType() != null) {
+                methodVisitor.visitInsn(ICONST_1);
+                if (varDec.getType() == Type.STRING) {
+                    String descriptor = fieldType(varDec);
+                    methodVisitor.visitTypeInsn(ANEWARRAY, descriptor.substring(1, descriptor.length() - 1));
+                } else {
+                    methodVisitor.visitIntInsn(NEWARRAY, varDec.getType() == Type.BOOLEAN ? T_BOOLEAN : T_INT);
+                }
+                methodVisitor.visitVarInsn(ASTORE, nextLocal);
+                boxedVariables.put(varDec, nextLocal++);
+            }
+        }
 
         //add instructions from statement to method
         block.statement.visit(this, methodVisitor);
 
         methodVisitor.visitInsn(RETURN);
+        while (!coldCode.isEmpty()) {
+            visitColdCode(coldCode.remove(0), methodVisitor);
+        }
 
         methodVisitor.visitMaxs(0, 0);
         methodVisitor.visitEnd();
+
+        if (frameReuse) {
+            for (ProcDec nested : block.procedureDecs) {
+                visitFrameAccessors(nested, classWriter);
+            }
+        }
         return null;
 
     }
 
+    // the simple name its class would have, which cannot be run or main
+    private static String methodName(ProcDec procDec) {
+        String className = procDec.getJvmType();
+        return className.substring(className.lastIndexOf('/') + 1);
+    }
+
+    private String methodDescriptor(ProcDec procDec) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (VarDec varDec : environments.get(procDec)) {
+            descriptor.append('[').append(fieldType(varDec));
+        }
+        return descriptor.append(")V").toString();
+    }
+
+    /**
+     * Generates the fields of the enclosing instance that hold the instances of procDec, and the
+     * methods that calls get them from: p$frame() for a non-recursive procedure, p$push() and p$pop()
+     * around each activation of a recursive one.
+     */
+    private void visitFrameAccessors(ProcDec procDec, ClassWriter classWriter) {
+        String owner = procDec.getParentClassName();
+        String name = String.valueOf(procDec.ident.getText());
+        String type = procDec.getJvmType();
+        String init = "(L" + owner + ";)V";
+        if (!callGraph.getInfo(procDec).isRecursive()) {
+            classWriter.visitField(ACC_PUBLIC, name + "$frame", "L" + type + ";", null, null).visitEnd();
+            MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, name + "$frame", "()L" + type + ";", null, null);
+            mv.visitCode();
+            Label done = new Label();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, owner, name + "$frame", "L" + type + ";");
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNONNULL, done);
+            mv.visitInsn(POP);
+            mv.visitTypeInsn(NEW, type);
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, type, "<init>", init, false);
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitInsn(SWAP);
+            mv.visitFieldInsn(PUTFIELD, owner, name + "$frame", "L" + type + ";");
+            mv.visitLabel(done);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            return;
+        }
+        classWriter.visitField(ACC_PUBLIC, name + "$frames", "[Ljava/lang/Runnable;", null, null).visitEnd();
+        classWriter.visitField(ACC_PUBLIC, name + "$depth", "I", null, null).visitEnd();
+
+        // int d = p$depth++; Runnable[] frames = p$frames;
+        // if (frames == null || d >= frames.length) p$frames = frames = PLPRuntime.frames(frames, d);
+        // p f = (p) frames[d]; if (f == null) frames[d] = f = new p(this); return f;
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, name + "$push", "()L" + type + ";", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, owner, name + "$depth", "I");
+        mv.visitVarInsn(ISTORE, 1);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IADD);
+        mv.visitFieldInsn(PUTFIELD, owner, name + "$depth", "I");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, owner, name + "$frames", "[Ljava/lang/Runnable;");
+        mv.visitVarInsn(ASTORE, 2);
+        Label grow = new Label();
+        Label fits = new Label();
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitJumpInsn(IFNULL, grow);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitInsn(ARRAYLENGTH);
+        mv.visitJumpInsn(IF_ICMPLT, fits);
+        mv.visitLabel(grow);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitMethodInsn(INVOKESTATIC, PLPRuntime.CLASS_NAME, "frames", "([Ljava/lang/Runnable;I)[Ljava/lang/Runnable;", false);
+        mv.visitVarInsn(ASTORE, 2);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitFieldInsn(PUTFIELD, owner, name + "$frames", "[Ljava/lang/Runnable;");
+        mv.visitLabel(fits);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(AALOAD);
+        mv.visitTypeInsn(CHECKCAST, type);
+        mv.visitInsn(DUP);
+        Label done = new Label();
+        mv.visitJumpInsn(IFNONNULL, done);
+        mv.visitInsn(POP);
+        mv.visitTypeInsn(NEW, type);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, type, "<init>", init, false);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitInsn(SWAP);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(SWAP);
+        mv.visitInsn(AASTORE);
+        mv.visitLabel(done);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = classWriter.visitMethod(ACC_PUBLIC, name + "$pop", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(GETFIELD, owner, name + "$depth", "I");
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(ISUB);
+        mv.visitFieldInsn(PUTFIELD, owner, name + "$depth", "I");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
     @Override
     public Object visitProgram(Program program, Object arg) throws PLPException {
         //create a classWriter and visit it
-        classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classWriter = new GeneratedClassWriter(CLASS_NAME);
         //Hint:  if you get failures in the visitMaxs, try creating a ClassWriter with 0
         // instead of ClassWriter.COMPUTE_FRAMES.  The result will not be a valid classfile,
         // but you will be able to print it so you can see the instructions.  After fixing,
@@ -77,6 +428,7 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
         //Invoke a simple ASTVisitor to visit all procedure declarations and annotate them with their JVM names
         annotateProcedureDec(program.block, CLASS_NAME, "Ledu/ufl/cise/plpfa22/prog");
+        analyze(program);
 
         visitInitBlock(classWriter);
 
@@ -95,6 +447,32 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
         return bytecodeList;
     }
 
+    /**
+     * Generates the class of a single block: the main class for an empty path, otherwise the class of
+     * the last procedure on the path. Classes of the procedures the block declares are not generated.
+     */
+    public CodeGenUtils.GenClass generateClass(Program program, List<ProcDec> path) throws PLPException {
+        if (singleClass && !path.isEmpty()) {
+            throw new IllegalStateException("Procedures have no classes of their own with " + SINGLE_CLASS);
+        }
+        generateNestedProcedures = false;
+        bytecodeList.clear();
+        if (path.isEmpty()) {
+            visitProgram(program, null);
+            return bytecodeList.get(0);
+        }
+        annotateProcedureDec(program.block, CLASS_NAME, "Ledu/ufl/cise/plpfa22/prog");
+        analyze(program);
+        classNameList.clear();
+        classNameList.add(CLASS_NAME);
+        for (ProcDec procDec : path.subList(0, path.size() - 1)) {
+            classNameList.add(procDec.getJvmType());
+        }
+        path.get(path.size() - 1).visit(this, null);
+        classNameList.clear();
+        return bytecodeList.get(0);
+    }
+
     private void annotateProcedureDec(Block block, String cName, String cDesc) {
         for (ProcDec procDec : block.procedureDecs) {
             String ident = String.valueOf(procDec.ident.getText());
@@ -172,19 +550,179 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
     @Override
     public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
-        statementAssign.expression.visit(this, arg);
+        if (cse && !inStraightLine) {
+            visitStraightLine(List.of(statementAssign), (MethodVisitor) arg);
+            return null;
+        }
+        if (ropeVariables.contains(statementAssign.ident.getDec())) {
+            visitRopeValue(statementAssign, (MethodVisitor) arg);
+        } else {
+            statementAssign.expression.visit(this, arg);
+        }
         statementAssign.ident.visit(this, arg);
         return null;
     }
 
+    /**
+     * Generates the PLPString assigned to a rope variable: appends to the variable's own value for
+     * s := s + ..., the other variable's value for s := t when t is a rope too, else the String wrapped.
+     */
+    private void visitRopeValue(StatementAssign statementAssign, MethodVisitor mv) throws PLPException {
+        Expression expression = statementAssign.expression;
+        List<Expression> parts = selfAppend(statementAssign);
+        if (parts != null) {
+            loadVariable((ExpressionIdent) parts.get(0), mv);
+            for (Expression part : parts.subList(1, parts.size())) {
+                part.visit(this, mv);
+                mv.visitMethodInsn(INVOKESTATIC, PLPString.CLASS_NAME, "append", ROPE_APPEND, false);
+            }
+        } else if (expression instanceof ExpressionIdent ident && ropeVariables.contains(ident.getDec())) {
+            loadVariable(ident, mv);
+        } else {
+            expression.visit(this, mv);
+            mv.visitMethodInsn(INVOKESTATIC, PLPString.CLASS_NAME, "of", "(Ljava/lang/String;)" + PLPString.DESCRIPTOR, false);
+        }
+    }
+
+    /** The operands of the + chain assigned by s := s + ..., or null for any other assignment. */
+    private List<Expression> selfAppend(StatementAssign statementAssign) {
+        if (!(statementAssign.expression instanceof ExpressionBinary binary)
+                || binary.e0.getType() != Type.STRING || binary.op.getKind() != Kind.PLUS) {
+            return null;
+        }
+        List<Expression> parts = new ArrayList<>();
+        flattenConcat(binary, parts);
+        return parts.get(0) instanceof ExpressionIdent first && first.getDec() == statementAssign.ident.getDec() ? parts : null;
+    }
+
+    private void analyze(Program program) throws PLPException {
+        findRopeVariables(program.block);
+        findTailCalls(program.block);
+        callGraph = licm || scalarReplacement || captureAnalysis || cse || switchDispatch || frameReuse || singleClass
+                ? CallGraph.build(program) : null;
+        loopInvariants = licm ? new LoopInvariants(callGraph) : null;
+        capturedVariables.clear();
+        if (captureAnalysis || singleClass) {
+            for (ProcDec procDec : callGraph.getProcedures()) {
+                capturedVariables.addAll(callGraph.getInfo(procDec).getReads());
+                capturedVariables.addAll(callGraph.getInfo(procDec).getWrites());
+            }
+        }
+        environments.clear();
+        if (singleClass) {
+            findEnvironments(program.block, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Records for each procedure the variables of the enclosing procedures that it or the procedures it
+     * calls access, in the order they are declared. A caller has the arrays of all of them: its own
+     * variables, or those in its own environment, which includes what its callees access.
+     */
+    private void findEnvironments(Block block, List<VarDec> enclosing) {
+        for (ProcDec procDec : block.procedureDecs) {
+            CallGraph.ProcInfo info = callGraph.getInfo(procDec);
+            List<VarDec> environment = new ArrayList<>();
+            for (VarDec varDec : enclosing) {
+                if (info.getTransitiveReads().contains(varDec) || info.getTransitiveWrites().contains(varDec)) {
+                    environment.add(varDec);
+                }
+            }
+            environments.put(procDec, environment);
+            List<VarDec> nested = new ArrayList<>(enclosing);
+            for (VarDec varDec : procDec.block.varDecs) {
+                if (varDec.getType() != null && capturedVariables.contains(varDec)) {
+                    nested.add(varDec);
+                }
+            }
+            findEnvironments(procDec.block, nested);
+        }
+    }
+
+    private void findRopeVariables(Block block) {
+        ropeVariables.clear();
+        if (ropeStrings) {
+            findRopeVariables(block, ropeVariables);
+        }
+    }
+
+    private void findRopeVariables(Block block, Set<Declaration> variables) {
+        findRopeVariables(block.statement, variables);
+        for (ProcDec procDec : block.procedureDecs) {
+            findRopeVariables(procDec.block, variables);
+        }
+    }
+
+    private void findRopeVariables(Statement statement, Set<Declaration> variables) {
+        if (statement instanceof StatementAssign assign && selfAppend(assign) != null) {
+            variables.add(assign.ident.getDec());
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                findRopeVariables(nested, variables);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            findRopeVariables(statementIf.statement, variables);
+        } else if (statement instanceof StatementWhile statementWhile) {
+            findRopeVariables(statementWhile.statement, variables);
+        }
+    }
+
+    private void findTailCalls(Block block) {
+        tailCallTargets.clear();
+        restartLabels.clear();
+        if (tailCalls) {
+            findTailCalls(block, tailCallTargets, restartLabels);
+        }
+    }
+
+    private static void findTailCalls(Block block, Map<StatementCall, ProcDec> targets, Map<Block, Label> restarts) {
+        for (ProcDec procDec : block.procedureDecs) {
+            if (findTailCalls(procDec.block.statement, procDec, targets)) {
+                restarts.put(procDec.block, new Label());
+            }
+            findTailCalls(procDec.block, targets, restarts);
+        }
+    }
+
+    /**
+     * Records the calls of procDec in tail position of statement: the statement itself, the last
+     * non-empty statement of a block, or the body of an IF. Returns true if there are any.
+     */
+    private static boolean findTailCalls(Statement statement, ProcDec procDec, Map<StatementCall, ProcDec> targets) {
+        if (statement instanceof StatementCall call && call.ident.getDec() == procDec) {
+            targets.put(call, procDec);
+            return true;
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return findTailCalls(statementIf.statement, procDec, targets);
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            for (int i = statementBlock.statements.size() - 1; i >= 0; i--) {
+                Statement last = statementBlock.statements.get(i);
+                if (!(last instanceof StatementEmpty)) {
+                    return findTailCalls(last, procDec, targets);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isLocal(VarDec varDec) {
+        return (captureAnalysis || singleClass) && varDec.getType() != null && !capturedVariables.contains(varDec);
+    }
+
+    private String fieldType(Declaration dec) {
+        return Types.getJvmType(dec.getType(), ropeVariables.contains(dec));
+    }
+
     @Override
     public Object visitVarDec(VarDec varDec, Object arg) throws PLPException {
         Type type = varDec.getType();
         ClassWriter classWriter = (ClassWriter)arg;
 
-        if (type != null)  {
+        if (type != null && !isLocal(varDec) && !(singleClass && varDec.getNest() > 0))  {
             FieldVisitor fieldVisitor = classWriter.visitField(ACC_PUBLIC, String.valueOf(varDec.ident.getText()),
-                    varDec.getJvmType(), null, null);
+                    fieldType(varDec), null, null);
             fieldVisitor.visitEnd();
         }
         return null;
@@ -193,11 +731,51 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
     @Override
     public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
         MethodVisitor methodVisitor = (MethodVisitor)arg;
+        if (profileGenerate) {
+            countProfile(Profile.callKey((ProcDec) statementCall.ident.getDec()), methodVisitor);
+        }
+        ProcDec target = tailCallTargets.get(statementCall);
+        if (target != null) {
+            visitTailCall(target, methodVisitor);
+            return null;
+        }
+        if (!localVariables.isEmpty()) {
+            // the callee accesses the fields, so they must be current before it runs and reread after
+            CallGraph.ProcInfo callee = callGraph.getInfo((ProcDec) statementCall.ident.getDec());
+            for (Declaration dec : localVariables.keySet()) {
+                if (callee.getTransitiveReads().contains(dec) || callee.getTransitiveWrites().contains(dec)) {
+                    storeCachedVariable(dec, methodVisitor);
+                }
+            }
+            visitCall(statementCall, methodVisitor);
+            for (Declaration dec : localVariables.keySet()) {
+                if (callee.getTransitiveWrites().contains(dec)) {
+                    loadCachedVariable(dec, methodVisitor);
+                }
+            }
+            return null;
+        }
+        visitCall(statementCall, methodVisitor);
+        return null;
+    }
+
+    private void visitCall(StatementCall statementCall, MethodVisitor methodVisitor) {
+        if (singleClass) {
+            ProcDec procDec = (ProcDec) statementCall.ident.getDec();
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            for (VarDec varDec : environments.get(procDec)) {
+                methodVisitor.visitVarInsn(ALOAD, boxedVariables.get(varDec));
+            }
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, CLASS_NAME, methodName(procDec), methodDescriptor(procDec), false);
+            return;
+        }
         String parentClassName = statementCall.ident.getDec().getParentClassName();
 
         String newClassName = statementCall.ident.getDec().getClassName();
-        methodVisitor.visitTypeInsn(NEW, newClassName);
-        methodVisitor.visitInsn(DUP);
+        if (!frameReuse) {
+            methodVisitor.visitTypeInsn(NEW, newClassName);
+            methodVisitor.visitInsn(DUP);
+        }
         methodVisitor.visitVarInsn(ALOAD, 0);
 
         if (classNameList.size() > 1) {
@@ -208,11 +786,51 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
                 identNestLevel--;
             }
         }
-        methodVisitor.visitMethodInsn(INVOKESPECIAL, newClassName, "<init>", "(L" + parentClassName + ";)V", false);
+        if (!frameReuse) {
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, newClassName, "<init>", "(L" + parentClassName + ";)V", false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, newClassName, "run", "()V", false);
+            return;
+        }
+        String name = String.valueOf(statementCall.ident.getText());
+        if (callGraph.getInfo((ProcDec) statementCall.ident.getDec()).isRecursive()) {
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, parentClassName, name + "$push", "()L" + newClassName + ";", false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, newClassName, "run", "()V", false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, parentClassName, name + "$pop", "()V", false);
+        } else {
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, parentClassName, name + "$frame", "()L" + newClassName + ";", false);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, newClassName, "run", "()V", false);
+        }
+    }
 
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, newClassName, "run", "()V", false);
+    /**
+     * Generates a tail call of the procedure being generated: its variables get back the values a new
+     * instance would start with, and control goes to the start of run.
+     */
+    private void visitTailCall(ProcDec procDec, MethodVisitor mv) {
+        if (!frameReuse) {
+            // with frame reuse, run resets them after the restart label
+            resetVariables(procDec.block, mv);
+        }
+        mv.visitJumpInsn(GOTO, restartLabels.get(procDec.block));
+    }
 
-        return null;
+    // gives the variable fields of the instance being run the values a new instance starts with
+    private void resetVariables(Block block, MethodVisitor mv) {
+        if (singleClass) {
+            // the method creates new arrays after the restart label
+            return;
+        }
+        String owner = classNameList.get(classNameList.size() - 1);
+        for (VarDec varDec : block.varDecs) {
+            if (varDec.getType() == null || isLocal(varDec)) {
+                // locals are reset at the start of run
+                continue;
+            }
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitInsn(varDec.getType() == Type.STRING ? ACONST_NULL : ICONST_0);
+            mv.visitFieldInsn(PUTFIELD, owner, String.valueOf(varDec.ident.getText()), fieldType(varDec));
+        }
     }
 
     @Override
@@ -223,6 +841,10 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
     @Override
     public Object visitStatementOutput(StatementOutput statementOutput, Object arg) throws PLPException {
         MethodVisitor mv = (MethodVisitor) arg;
+        if (cse && !inStraightLine) {
+            visitStraightLine(List.of(statementOutput), mv);
+            return null;
+        }
         mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
         statementOutput.expression.visit(this, arg);
 
@@ -236,48 +858,648 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
     @Override
     public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
-        for (Statement statement : statementBlock.statements) {
-            statement.visit(this, arg);
+        MethodVisitor mv = (MethodVisitor) arg;
+        List<Statement> statements = statementBlock.statements;
+        List<Statement> straightLine = new ArrayList<>();
+        int i = 0;
+        while (i < statements.size()) {
+            int cases = switchDispatch ? countSwitchCases(statements, i) : 0;
+            Statement statement = statements.get(i);
+            if (cse && cases < MIN_SWITCH_CASES && !(statement instanceof StatementBlock
+                    || statement instanceof StatementIf || statement instanceof StatementWhile)) {
+                straightLine.add(statement);
+                i++;
+                continue;
+            }
+            if (!straightLine.isEmpty()) {
+                visitStraightLine(straightLine, mv);
+                straightLine.clear();
+            }
+            if (cases >= MIN_SWITCH_CASES) {
+                visitSwitch(statements.subList(i, i + cases), mv);
+                i += cases;
+            } else {
+                statement.visit(this, arg);
+                i++;
+            }
+        }
+        if (!straightLine.isEmpty()) {
+            visitStraightLine(straightLine, mv);
         }
         return null;
     }
 
+    /**
+     * Number of IF statements from start on that compare the same variable with distinct literals and
+     * cannot assign it, directly or through calls. At most one of them runs its body.
+     */
+    private int countSwitchCases(List<Statement> statements, int start) {
+        ExpressionIdent first = null;
+        Set<Integer> keys = new HashSet<>();
+        int end = start;
+        while (end < statements.size() && statements.get(end) instanceof StatementIf statementIf) {
+            ExpressionIdent variable = switchVariable(statementIf.expression);
+            if (variable == null || first != null && variable.getDec() != first.getDec()
+                    || !keys.add(switchKey(statementIf.expression)) || mayAssign(statementIf.statement, variable.getDec())) {
+                break;
+            }
+            first = variable;
+            end++;
+        }
+        return end - start;
+    }
+
+    // x of x = k or k = x, for a NUMBER variable x and a literal k
+    private static ExpressionIdent switchVariable(Expression condition) {
+        if (!(condition instanceof ExpressionBinary binary) || binary.op.getKind() != Kind.EQ
+                || binary.e0.getType() != Type.NUMBER) {
+            return null;
+        }
+        if (binary.e0 instanceof ExpressionIdent ident && ident.getDec() instanceof VarDec && binary.e1 instanceof ExpressionNumLit) {
+            return ident;
+        }
+        if (binary.e1 instanceof ExpressionIdent ident && ident.getDec() instanceof VarDec && binary.e0 instanceof ExpressionNumLit) {
+            return ident;
+        }
+        return null;
+    }
+
+    private static int switchKey(Expression condition) {
+        ExpressionBinary binary = (ExpressionBinary) condition;
+        Expression literal = binary.e0 instanceof ExpressionNumLit ? binary.e0 : binary.e1;
+        return literal.getFirstToken().getIntValue();
+    }
+
+    private boolean mayAssign(Statement statement, Declaration dec) {
+        if (statement instanceof StatementAssign assign) {
+            return assign.ident.getDec() == dec;
+        }
+        if (statement instanceof StatementCall call) {
+            return callGraph.getInfo((ProcDec) call.ident.getDec()).getTransitiveWrites().contains(dec);
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                if (mayAssign(nested, dec)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return mayAssign(statementIf.statement, dec);
+        }
+        if (statement instanceof StatementWhile statementWhile) {
+            return mayAssign(statementWhile.statement, dec);
+        }
+        return false;
+    }
+
+    /**
+     * Generates a run of IF statements found by countSwitchCases: the variable is loaded once and a
+     * switch jumps to the body whose literal it equals, which then leaves the run. A tableswitch is
+     * used when its size is reasonable for the range of the literals, as javac decides.
+     */
+    private void visitSwitch(List<Statement> cases, MethodVisitor mv) throws PLPException {
+        int n = cases.size();
+        int[] keys = new int[n];
+        Label[] labels = new Label[n];
+        for (int k = 0; k < n; k++) {
+            keys[k] = switchKey(((StatementIf) cases.get(k)).expression);
+            labels[k] = new Label();
+        }
+        Label end = new Label();
+        switchVariable(((StatementIf) cases.get(0)).expression).visit(this, mv);
+
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(keys[a], keys[b]));
+        int lo = keys[order[0]];
+        int hi = keys[order[n - 1]];
+        long tableCost = 4 + ((long) hi - lo + 1) + 3 * 3;
+        long lookupCost = 3 + 2L * n + 3L * n;
+        if (tableCost <= lookupCost) {
+            Label[] table = new Label[hi - lo + 1];
+            Arrays.fill(table, end);
+            for (int k = 0; k < n; k++) {
+                table[keys[k] - lo] = labels[k];
+            }
+            mv.visitTableSwitchInsn(lo, hi, end, table);
+        } else {
+            int[] sortedKeys = new int[n];
+            Label[] sortedLabels = new Label[n];
+            for (int k = 0; k < n; k++) {
+                sortedKeys[k] = keys[order[k]];
+                sortedLabels[k] = labels[order[k]];
+            }
+            mv.visitLookupSwitchInsn(end, sortedKeys, sortedLabels);
+        }
+        for (int k = 0; k < n; k++) {
+            mv.visitLabel(labels[k]);
+            ((StatementIf) cases.get(k)).statement.visit(this, mv);
+            mv.visitJumpInsn(GOTO, end);
+        }
+        mv.visitLabel(end);
+    }
+
+    /**
+     * Generates statements without control flow of their own, evaluating the expressions that occur in
+     * them more than once with the same value only the first time.
+     */
+    private void visitStraightLine(List<Statement> statements, MethodVisitor mv) throws PLPException {
+        int outerNextLocal = nextLocal;
+        List<Expression> reused = new ArrayList<>();
+        Map<Object, Expression> available = new HashMap<>();
+        for (Statement statement : statements) {
+            if (statement instanceof StatementAssign assign) {
+                findCommonValues(assign.expression, available, reused);
+                killValues(available, Set.of(assign.ident.getDec()));
+            } else if (statement instanceof StatementOutput output) {
+                findCommonValues(output.expression, available, reused);
+            } else if (statement instanceof StatementCall call) {
+                killValues(available, callGraph.getInfo((ProcDec) call.ident.getDec()).getTransitiveWrites());
+            }
+        }
+
+        inStraightLine = true;
+        for (Statement statement : statements) {
+            statement.visit(this, mv);
+        }
+        inStraightLine = false;
+        for (Expression expression : reused) {
+            hoistedValues.remove(expression);
+        }
+        commonValues.clear();
+        nextLocal = outerNextLocal;
+    }
+
+    /**
+     * Walks the expression in evaluation order. An occurrence of a value that is available is loaded
+     * from the local of its first occurrence; the others make their value available.
+     */
+    private void findCommonValues(Expression expression, Map<Object, Expression> available, List<Expression> reused) {
+        if (!(expression instanceof ExpressionBinary binary) || expression.getType() == Type.STRING
+                || hoistedValues.containsKey(expression)) {
+            return;
+        }
+        Object key = valueKey(expression);
+        Expression first = available.get(key);
+        if (first != null) {
+            Integer slot = commonValues.get(first);
+            if (slot == null) {
+                slot = nextLocal++;
+                commonValues.put(first, slot);
+            }
+            hoistedValues.put(expression, slot);
+            reused.add(expression);
+            return;
+        }
+        findCommonValues(binary.e0, available, reused);
+        findCommonValues(binary.e1, available, reused);
+        available.put(key, expression);
+    }
+
+    private static void killValues(Map<Object, Expression> available, Set<? extends Declaration> writes) {
+        available.values().removeIf(expression -> readsAny(expression, writes));
+    }
+
+    private static boolean readsAny(Expression expression, Set<? extends Declaration> variables) {
+        if (expression instanceof ExpressionIdent ident) {
+            return variables.contains(ident.getDec());
+        }
+        return expression instanceof ExpressionBinary binary
+                && (readsAny(binary.e0, variables) || readsAny(binary.e1, variables));
+    }
+
+    // Equal keys have the same operators, constants and declarations in the same places
+    private static Object valueKey(Expression expression) {
+        if (expression instanceof ExpressionBinary binary) {
+            return List.of(binary.op.getKind(), valueKey(binary.e0), valueKey(binary.e1));
+        }
+        if (expression instanceof ExpressionIdent ident) {
+            return ident.getDec();
+        }
+        if (expression instanceof ExpressionNumLit) {
+            return expression.getFirstToken().getIntValue();
+        }
+        if (expression instanceof ExpressionBooleanLit) {
+            return expression.getFirstToken().getBooleanValue();
+        }
+        return List.of(expression.getFirstToken().getStringValue());
+    }
+
     @Override
     public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
         MethodVisitor mv = (MethodVisitor) arg;
-        statementIf.expression.visit(this, arg);
+        if (profileGenerate) {
+            countProfile(Profile.ifKey(statementIf), mv);
+        }
+        if (isCold(statementIf)) {
+            Label cold = new Label();
+            if (conditionJumps) {
+                visitCondition(statementIf.expression, cold, true, mv);
+            } else {
+                statementIf.expression.visit(this, arg);
+                mv.visitJumpInsn(IFNE, cold);
+            }
+            Label join = new Label();
+            mv.visitLabel(join);
+            coldCode.add(new ColdCode(cold, join, statementIf.statement, new IdentityHashMap<>(localVariables),
+                    new IdentityHashMap<>(hoistedValues), new HashMap<>(hoistedInstances), nextLocal));
+            return null;
+        }
         Label exprLabel = new Label();
-        mv.visitJumpInsn(IFEQ, exprLabel);
+        if (conditionJumps) {
+            visitCondition(statementIf.expression, exprLabel, false, mv);
+        } else {
+            statementIf.expression.visit(this, arg);
+            mv.visitJumpInsn(IFEQ, exprLabel);
+        }
+        if (profileGenerate) {
+            countProfile(Profile.ifTakenKey(statementIf), mv);
+        }
         statementIf.statement.visit(this, arg);
         mv.visitLabel(exprLabel);
         return null;
     }
 
+    /** A cold IF body, generated after the end of run in the state its IF statement left. */
+    private record ColdCode(Label start, Label join, Statement statement, Map<Declaration, Integer> localVariables,
+                            Map<Expression, Integer> hoistedValues, Map<Integer, Integer> hoistedInstances, int nextLocal) {
+    }
+
+    private boolean isCold(StatementIf statementIf) {
+        if (profile == null) {
+            return false;
+        }
+        long executions = profile.getExecutions(statementIf);
+        return executions >= MIN_PROFILE_EXECUTIONS && profile.getTaken(statementIf) * COLD_RATIO < executions;
+    }
+
+    private void visitColdCode(ColdCode code, MethodVisitor mv) throws PLPException {
+        localVariables.clear();
+        localVariables.putAll(code.localVariables());
+        hoistedValues.clear();
+        hoistedValues.putAll(code.hoistedValues());
+        hoistedInstances.clear();
+        hoistedInstances.putAll(code.hoistedInstances());
+        nextLocal = code.nextLocal();
+        mv.visitLabel(code.start());
+        code.statement().visit(this, mv);
+        mv.visitJumpInsn(GOTO, code.join());
+    }
+
+    private void countProfile(String key, MethodVisitor mv) {
+        mv.visitLdcInsn(Profile.site(Profile.programKey(programId, key)));
+        mv.visitMethodInsn(INVOKESTATIC, Profile.CLASS_NAME, "count", "(I)V", false);
+    }
+
     @Override
     public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
         MethodVisitor mv = (MethodVisitor) arg;
+        Map<Expression, Integer> outerValues = new IdentityHashMap<>(hoistedValues);
+        Map<Integer, Integer> outerInstances = new HashMap<>(hoistedInstances);
+        Map<Declaration, Integer> outerVariables = new IdentityHashMap<>(localVariables);
+        int outerNextLocal = nextLocal;
+        if (loopInvariants != null) {
+            hoistInvariants(statementWhile, mv);
+        }
+        if (scalarReplacement) {
+            cacheVariables(statementWhile, mv);
+        }
+
+        if (profileGenerate) {
+            countProfile(Profile.whileKey(statementWhile), mv);
+        }
+
         Label label1 = new Label();
         mv.visitJumpInsn(GOTO, label1);
 
         Label label2 = new Label();
         mv.visitLabel(label2);
 
+        if (profileGenerate) {
+            countProfile(Profile.whileTripKey(statementWhile), mv);
+        }
         statementWhile.statement.visit(this, arg);
         mv.visitLabel(label1);
-        statementWhile.expression.visit(this, arg);
-
-        mv.visitJumpInsn(IFNE, label2);
+        if (conditionJumps) {
+            visitCondition(statementWhile.expression, label2, true, mv);
+        } else {
+            statementWhile.expression.visit(this, arg);
+            mv.visitJumpInsn(IFNE, label2);
+        }
 
+        if (scalarReplacement) {
+            Set<Declaration> assigned = Collections.newSetFromMap(new IdentityHashMap<>());
+            collectAssigned(statementWhile.statement, assigned);
+            for (Declaration dec : assigned) {
+                if (localVariables.containsKey(dec) && !outerVariables.containsKey(dec)) {
+                    storeCachedVariable(dec, mv);
+                }
+            }
+        }
+        localVariables.clear();
+        localVariables.putAll(outerVariables);
+        hoistedValues.clear();
+        hoistedValues.putAll(outerValues);
+        hoistedInstances.clear();
+        hoistedInstances.putAll(outerInstances);
+        nextLocal = outerNextLocal;
         return null;
     }
 
+    /**
+     * Stores the enclosing instances the loop reaches through this$ fields, which never change, and
+     * the values of its invariant expressions in locals. Code generated until the loop ends loads them
+     * from there.
+     */
+    private void hoistInvariants(StatementWhile loop, MethodVisitor mv) throws PLPException {
+        int level = classNameList.size() - 1;
+        Set<Integer> levels = new TreeSet<>();
+        if (!singleClass) {
+            collectOuterLevels(loop.expression, level, levels);
+            collectOuterLevels(loop.statement, level, levels);
+        }
+        for (int decLevel : levels) {
+            if (!hoistedInstances.containsKey(decLevel)) {
+                loadInstance(level, decLevel, mv);
+                mv.visitVarInsn(ASTORE, nextLocal);
+                hoistedInstances.put(decLevel, nextLocal++);
+            }
+        }
+
+        Set<Declaration> writes = loopInvariants.getWrites(loop);
+        List<Expression> invariants = new ArrayList<>();
+        collectInvariants(loop.expression, writes, invariants);
+        collectInvariants(loop.statement, writes, invariants);
+        for (Expression invariant : invariants) {
+            invariant.visit(this, mv);
+            mv.visitVarInsn(invariant.getType() == Type.STRING ? ASTORE : ISTORE, nextLocal);
+            hoistedValues.put(invariant, nextLocal++);
+        }
+    }
+
+    /** Loads the variables the loop accesses that are not in locals yet into locals. */
+    private void cacheVariables(StatementWhile loop, MethodVisitor mv) {
+        Set<Declaration> accessed = new LinkedHashSet<>();
+        collectAccessed(loop.expression, accessed);
+        collectAccessed(loop.statement, accessed);
+        for (Declaration dec : accessed) {
+            if (!localVariables.containsKey(dec) && !ropeVariables.contains(dec)) {
+                localVariables.put(dec, nextLocal++);
+                loadCachedVariable(dec, mv);
+            }
+        }
+    }
+
+    private void collectAccessed(Statement statement, Set<Declaration> accessed) {
+        if (statement instanceof StatementAssign assign) {
+            collectAccessed(assign.expression, accessed);
+            accessed.add(assign.ident.getDec());
+        } else if (statement instanceof StatementOutput output) {
+            collectAccessed(output.expression, accessed);
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                collectAccessed(nested, accessed);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            collectAccessed(statementIf.expression, accessed);
+            collectAccessed(statementIf.statement, accessed);
+        } else if (statement instanceof StatementWhile statementWhile) {
+            collectAccessed(statementWhile.expression, accessed);
+            collectAccessed(statementWhile.statement, accessed);
+        }
+    }
+
+    private void collectAccessed(Expression expression, Set<Declaration> accessed) {
+        if (expression instanceof ExpressionIdent ident && ident.getDec() instanceof VarDec) {
+            accessed.add(ident.getDec());
+        } else if (expression instanceof ExpressionBinary binary) {
+            collectAccessed(binary.e0, accessed);
+            collectAccessed(binary.e1, accessed);
+        }
+    }
+
+    private static void collectAssigned(Statement statement, Set<Declaration> assigned) {
+        if (statement instanceof StatementAssign assign) {
+            assigned.add(assign.ident.getDec());
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                collectAssigned(nested, assigned);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            collectAssigned(statementIf.statement, assigned);
+        } else if (statement instanceof StatementWhile statementWhile) {
+            collectAssigned(statementWhile.statement, assigned);
+        }
+    }
+
+    private void loadCachedVariable(Declaration dec, MethodVisitor mv) {
+        getVariable(dec, classNameList.size() - 1, mv);
+        mv.visitVarInsn(dec.getType() == Type.STRING ? ASTORE : ISTORE, localVariables.get(dec));
+    }
+
+    private void storeCachedVariable(Declaration dec, MethodVisitor mv) {
+        mv.visitVarInsn(dec.getType() == Type.STRING ? ALOAD : ILOAD, localVariables.get(dec));
+        putVariable(dec, classNameList.size() - 1, mv);
+    }
+
+    /** Loads the field of a variable or constant, or the element of its array with single-class. */
+    private void getVariable(Declaration dec, int identNestLevel, MethodVisitor mv) {
+        Integer box = boxedVariables.get(dec);
+        if (box != null) {
+            mv.visitVarInsn(ALOAD, box);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(dec.getType() == Type.STRING ? AALOAD : dec.getType() == Type.BOOLEAN ? BALOAD : IALOAD);
+            return;
+        }
+        String name = String.valueOf(dec instanceof ConstDec constDec ? constDec.ident.getText() : ((VarDec) dec).ident.getText());
+        loadInstance(identNestLevel, dec.getNest(), mv);
+        mv.visitFieldInsn(GETFIELD, classNameList.get(dec.getNest()), name, fieldType(dec));
+    }
+
+    /** Stores the value on the stack to the field of a variable, or the element of its array. */
+    private void putVariable(Declaration dec, int identNestLevel, MethodVisitor mv) {
+        Integer box = boxedVariables.get(dec);
+        if (box != null) {
+            mv.visitVarInsn(ALOAD, box);
+            mv.visitInsn(SWAP);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(SWAP);
+            mv.visitInsn(dec.getType() == Type.STRING ? AASTORE : dec.getType() == Type.BOOLEAN ? BASTORE : IASTORE);
+            return;
+        }
+        loadInstance(identNestLevel, dec.getNest(), mv);
+        mv.visitInsn(SWAP);
+        mv.visitFieldInsn(PUTFIELD, classNameList.get(dec.getNest()), String.valueOf(((VarDec) dec).ident.getText()), fieldType(dec));
+    }
+
+    private void collectOuterLevels(Statement statement, int level, Set<Integer> levels) {
+        if (statement instanceof StatementAssign assign) {
+            collectOuterLevel(assign.ident.getDec(), level, levels);
+            collectOuterLevels(assign.expression, level, levels);
+        } else if (statement instanceof StatementOutput output) {
+            collectOuterLevels(output.expression, level, levels);
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                collectOuterLevels(nested, level, levels);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            collectOuterLevels(statementIf.expression, level, levels);
+            collectOuterLevels(statementIf.statement, level, levels);
+        } else if (statement instanceof StatementWhile statementWhile) {
+            collectOuterLevels(statementWhile.expression, level, levels);
+            collectOuterLevels(statementWhile.statement, level, levels);
+        }
+    }
+
+    private void collectOuterLevels(Expression expression, int level, Set<Integer> levels) {
+        if (expression instanceof ExpressionIdent ident && !(staticConstants && ident.getDec() instanceof ConstDec)) {
+            collectOuterLevel(ident.getDec(), level, levels);
+        } else if (expression instanceof ExpressionBinary binary) {
+            collectOuterLevels(binary.e0, level, levels);
+            collectOuterLevels(binary.e1, level, levels);
+        }
+    }
+
+    private static void collectOuterLevel(Declaration dec, int level, Set<Integer> levels) {
+        if (dec.getNest() < level) {
+            levels.add(dec.getNest());
+        }
+    }
+
+    private void collectInvariants(Statement statement, Set<Declaration> writes, List<Expression> invariants) {
+        if (statement instanceof StatementAssign assign) {
+            collectInvariants(assign.expression, writes, invariants);
+        } else if (statement instanceof StatementOutput output) {
+            collectInvariants(output.expression, writes, invariants);
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                collectInvariants(nested, writes, invariants);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            collectInvariants(statementIf.expression, writes, invariants);
+            collectInvariants(statementIf.statement, writes, invariants);
+        } else if (statement instanceof StatementWhile statementWhile) {
+            collectInvariants(statementWhile.expression, writes, invariants);
+            collectInvariants(statementWhile.statement, writes, invariants);
+        }
+    }
+
+    // Only operators are worth a local; the largest invariant subexpressions are taken
+    private void collectInvariants(Expression expression, Set<Declaration> writes, List<Expression> invariants) {
+        if (!(expression instanceof ExpressionBinary binary) || hoistedValues.containsKey(expression)) {
+            return;
+        }
+        if (LoopInvariants.isInvariant(expression, writes)) {
+            invariants.add(expression);
+        } else {
+            collectInvariants(binary.e0, writes, invariants);
+            collectInvariants(binary.e1, writes, invariants);
+        }
+    }
+
+    private boolean loadHoisted(Expression expression, MethodVisitor mv) {
+        Integer slot = hoistedValues.get(expression);
+        if (slot == null) {
+            return false;
+        }
+        mv.visitVarInsn(expression.getType() == Type.STRING ? ALOAD : ILOAD, slot);
+        return true;
+    }
+
+    /**
+     * Generates code that jumps to target if the condition evaluates to jumpIf and falls through
+     * otherwise. Comparisons become a single compare-and-jump, and boolean + and * jump as soon as
+     * one side decides the result when the other side cannot throw.
+     */
+    private void visitCondition(Expression condition, Label target, boolean jumpIf, MethodVisitor mv) throws PLPException {
+        if (loadHoisted(condition, mv)) {
+            mv.visitJumpInsn(jumpIf ? IFNE : IFEQ, target);
+            return;
+        }
+        if (condition instanceof ExpressionBooleanLit) {
+            if (condition.getFirstToken().getBooleanValue() == jumpIf) {
+                mv.visitJumpInsn(GOTO, target);
+            }
+            return;
+        }
+        if (!(condition instanceof ExpressionBinary binary)) {
+            condition.visit(this, mv);
+            mv.visitJumpInsn(jumpIf ? IFNE : IFEQ, target);
+            return;
+        }
+        Kind op = binary.op.getKind();
+        Type argType = binary.e0.getType();
+        if (argType == Type.BOOLEAN && (op == Kind.PLUS || op == Kind.TIMES) && !Effects.canThrow(binary.e1)) {
+            // e0 + e1 is decided by a true e0, e0 * e1 by a false one
+            boolean decidedBy = op == Kind.PLUS;
+            if (decidedBy == jumpIf) {
+                visitCondition(binary.e0, target, jumpIf, mv);
+                visitCondition(binary.e1, target, jumpIf, mv);
+            } else {
+                Label skip = new Label();
+                visitCondition(binary.e0, skip, decidedBy, mv);
+                visitCondition(binary.e1, target, jumpIf, mv);
+                mv.visitLabel(skip);
+            }
+            return;
+        }
+        int compare = switch (op) {
+            case EQ -> IF_ICMPEQ;
+            case NEQ -> IF_ICMPNE;
+            case LT -> IF_ICMPLT;
+            case LE -> IF_ICMPLE;
+            case GT -> IF_ICMPGT;
+            case GE -> IF_ICMPGE;
+            default -> -1;
+        };
+        if (argType != Type.STRING && compare != -1) {
+            binary.e0.visit(this, mv);
+            binary.e1.visit(this, mv);
+            mv.visitJumpInsn(jumpIf ? compare : negate(compare), target);
+        } else if (argType == Type.STRING && (op == Kind.EQ || op == Kind.NEQ)) {
+            binary.e0.visit(this, mv);
+            binary.e1.visit(this, mv);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z", false);
+            mv.visitJumpInsn((op == Kind.EQ) == jumpIf ? IFNE : IFEQ, target);
+        } else {
+            binary.visit(this, mv);
+            mv.visitJumpInsn(jumpIf ? IFNE : IFEQ, target);
+        }
+    }
+
+    // IF_ICMPEQ and IF_ICMPNE, IF_ICMPLT and IF_ICMPGE, IF_ICMPGT and IF_ICMPLE are adjacent pairs
+    private static int negate(int compare) {
+        return (compare - IF_ICMPEQ) % 2 == 0 ? compare + 1 : compare - 1;
+    }
+
     @Override
     public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        MethodVisitor mv = (MethodVisitor) arg;
+        if (loadHoisted(expressionBinary, mv)) {
+            return null;
+        }
+        visitBinary(expressionBinary, mv);
+        Integer slot = commonValues.get(expressionBinary);
+        if (slot != null) {
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ISTORE, slot);
+        }
+        return null;
+    }
+
+    private Object visitBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
         MethodVisitor mv = (MethodVisitor) arg;
         Type argType = expressionBinary.e0.getType();
         Kind op = expressionBinary.op.getKind();
         switch (argType) {
             case NUMBER -> {
+                if (strengthReduction && visitPowerOfTwo(expressionBinary, mv)) {
+                    return null;
+                }
                 expressionBinary.e0.visit(this, arg);
                 expressionBinary.e1.visit(this, arg);
                 switch (op) {
@@ -339,6 +1561,16 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
                 }
             }
             case STRING -> {
+                if (indyConcat && op == Kind.PLUS) {
+                    visitConcat(expressionBinary, mv);
+                    return null;
+                }
+                if (stringIntrinsics && op != Kind.PLUS) {
+                    expressionBinary.e0.visit(this, arg);
+                    expressionBinary.e1.visit(this, arg);
+                    visitStringRelation(op, mv);
+                    return null;
+                }
                 Label start = new Label();
                 Label end = new Label();
                 expressionBinary.e0.visit(this, arg);
@@ -403,6 +1635,148 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
         return null;
     }
 
+    /**
+     * Compares the two strings on the stack with one call.
+     */
+    private static void visitStringRelation(Kind op, MethodVisitor mv) {
+        String relation = switch (op) {
+            case EQ, NEQ -> {
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z", false);
+                if (op == Kind.NEQ) {
+                    mv.visitInsn(ICONST_1);
+                    mv.visitInsn(IXOR);
+                }
+                yield null;
+            }
+            case LT -> "isProperPrefix";
+            case LE -> "isPrefix";
+            case GT -> "hasProperSuffix";
+            case GE -> "hasSuffix";
+            default -> throw new IllegalStateException("code gen bug in visitStringRelation");
+        };
+        if (relation != null) {
+            mv.visitMethodInsn(INVOKESTATIC, PLPRuntime.CLASS_NAME, relation, "(Ljava/lang/String;Ljava/lang/String;)Z", false);
+        }
+    }
+
+    /**
+     * Generates a chain of string + as one invokedynamic. Literals and constants go into the recipe;
+     * the other operands are passed as arguments, checked for null first because concat rejects
+     * null where StringConcatFactory would print "null".
+     */
+    private void visitConcat(ExpressionBinary concat, MethodVisitor mv) throws PLPException {
+        List<Expression> parts = new ArrayList<>();
+        flattenConcat(concat, parts);
+        StringBuilder recipe = new StringBuilder();
+        int args = 0;
+        for (Expression part : parts) {
+            String literal = stringConstant(part);
+            if (literal != null && literal.indexOf('\u0001') < 0 && literal.indexOf('\u0002') < 0) {
+                recipe.append(literal);
+                continue;
+            }
+            if (args == MAX_CONCAT_ARGS) {
+                // the string so far becomes the first argument of the next call
+                mv.visitInvokeDynamicInsn("makeConcatWithConstants", concatDescriptor(args), CONCAT_BOOTSTRAP, recipe.toString());
+                recipe.setLength(0);
+                recipe.append('\u0001');
+                args = 1;
+            }
+            part.visit(this, mv);
+            if (!Effects.isNonNull(part)) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/util/Objects", "requireNonNull", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                mv.visitTypeInsn(CHECKCAST, JAVA_LANG_STRING);
+            }
+            recipe.append('\u0001');
+            args++;
+        }
+        mv.visitInvokeDynamicInsn("makeConcatWithConstants", concatDescriptor(args), CONCAT_BOOTSTRAP, recipe.toString());
+    }
+
+    private void flattenConcat(Expression expression, List<Expression> parts) {
+        if (expression instanceof ExpressionBinary binary && binary.e0.getType() == Type.STRING && binary.op.getKind() == Kind.PLUS
+                && !hoistedValues.containsKey(expression)) {
+            flattenConcat(binary.e0, parts);
+            flattenConcat(binary.e1, parts);
+        } else {
+            parts.add(expression);
+        }
+    }
+
+    private static String stringConstant(Expression expression) {
+        if (expression instanceof ExpressionStringLit) {
+            return expression.getFirstToken().getStringValue();
+        }
+        if (expression instanceof ExpressionIdent ident && ident.getDec() instanceof ConstDec constDec) {
+            return (String) constDec.val;
+        }
+        return null;
+    }
+
+    private static String concatDescriptor(int args) {
+        return "(" + "Ljava/lang/String;".repeat(args) + ")Ljava/lang/String;";
+    }
+
+    /**
+     * Generates x * 2^k as a left shift, and x / 2^k and x % 2^k with shifts and masks that round
+     * toward zero like IDIV and IREM: a negative x is first biased by 2^k - 1. Returns false, having
+     * generated nothing, for any other expression.
+     */
+    private boolean visitPowerOfTwo(ExpressionBinary binary, MethodVisitor mv) throws PLPException {
+        Kind op = binary.op.getKind();
+        Expression x = binary.e0;
+        int k = log2(binary.e1);
+        if (k < 0 && op == Kind.TIMES) {
+            x = binary.e1;
+            k = log2(binary.e0);
+        }
+        if (k < 1 || op != Kind.TIMES && op != Kind.DIV && op != Kind.MOD) {
+            return false;
+        }
+        x.visit(this, mv);
+        switch (op) {
+            case TIMES -> {
+                mv.visitIntInsn(BIPUSH, k);
+                mv.visitInsn(ISHL);
+            }
+            case DIV -> {
+                visitRoundingBias(k, mv);
+                mv.visitIntInsn(BIPUSH, k);
+                mv.visitInsn(ISHR);
+            }
+            default -> {
+                // x - ((x + bias) & -2^k)
+                mv.visitInsn(DUP);
+                visitRoundingBias(k, mv);
+                mv.visitLdcInsn(-(1 << k));
+                mv.visitInsn(IAND);
+                mv.visitInsn(ISUB);
+            }
+        }
+        return true;
+    }
+
+    // x  ->  x + (2^k - 1 if x is negative, else 0)
+    private static void visitRoundingBias(int k, MethodVisitor mv) {
+        mv.visitInsn(DUP);
+        mv.visitIntInsn(BIPUSH, 31);
+        mv.visitInsn(ISHR);
+        mv.visitIntInsn(BIPUSH, 32 - k);
+        mv.visitInsn(IUSHR);
+        mv.visitInsn(IADD);
+    }
+
+    // k for a literal 2^k, else -1
+    private static int log2(Expression expression) {
+        if (expression instanceof ExpressionNumLit) {
+            int value = expression.getFirstToken().getIntValue();
+            if (value > 0 && (value & (value - 1)) == 0) {
+                return Integer.numberOfTrailingZeros(value);
+            }
+        }
+        return -1;
+    }
+
     private void visitExpBinaryOp(MethodVisitor mv, int opcode) {
         Label labelNumEqFalseBr = new Label();
         mv.visitJumpInsn(opcode, labelNumEqFalseBr);
@@ -418,24 +1792,44 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
     public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) throws PLPException {
         LogHelper.printOutput("VisitExpIdent:" + expressionIdent.getDec().getType());
         MethodVisitor methodVisitor = (MethodVisitor) arg;
-        methodVisitor.visitVarInsn(ALOAD, 0);
-        String name;
-        if (expressionIdent.getDec() instanceof ConstDec) {
-            name = String.valueOf(((ConstDec) expressionIdent.getDec()).ident.getText());
-        } else {
-            name = String.valueOf(((VarDec) expressionIdent.getDec()).ident.getText());
-            LogHelper.printOutput("ExpressionIdent Name:" + name);
+        if (staticConstants && expressionIdent.getDec() instanceof ConstDec constDec) {
+            methodVisitor.visitLdcInsn(constDec.val);
+            return null;
+        }
+        loadVariable(expressionIdent, methodVisitor);
+        if (ropeVariables.contains(expressionIdent.getDec())) {
+            methodVisitor.visitMethodInsn(INVOKESTATIC, PLPString.CLASS_NAME, "flatten", "(" + PLPString.DESCRIPTOR + ")Ljava/lang/String;", false);
         }
-        int identNestLevel = expressionIdent.getNest();
-        int decNestLevel = expressionIdent.getDec().getNest();
+        return null;
+    }
+
+    /** Loads the field of a variable or constant, a PLPString for a rope variable. */
+    private void loadVariable(ExpressionIdent expressionIdent, MethodVisitor methodVisitor) {
+        Integer slot = localVariables.get(expressionIdent.getDec());
+        if (slot != null) {
+            methodVisitor.visitVarInsn(expressionIdent.getType() == Type.STRING ? ALOAD : ILOAD, slot);
+            return;
+        }
+        getVariable(expressionIdent.getDec(), expressionIdent.getNest(), methodVisitor);
+    }
 
+    /** Loads the instance of the block at decNestLevel, from this or a local holding it. */
+    private void loadInstance(int identNestLevel, int decNestLevel, MethodVisitor methodVisitor) {
+        if (singleClass) {
+            // only main block variables are fields
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            return;
+        }
+        Integer slot = hoistedInstances.get(decNestLevel);
+        if (slot != null && identNestLevel > decNestLevel) {
+            methodVisitor.visitVarInsn(ALOAD, slot);
+            return;
+        }
+        methodVisitor.visitVarInsn(ALOAD, 0);
         while (identNestLevel > decNestLevel) {
             methodVisitor.visitFieldInsn(GETFIELD, classNameList.get(identNestLevel), "this$" + (identNestLevel - 1), "L" + classNameList.get(identNestLevel - 1) + ";");
             identNestLevel--;
         }
-
-        methodVisitor.visitFieldInsn(GETFIELD, classNameList.get(identNestLevel), name, expressionIdent.getDec().getJvmType());
-        return null;
     }
 
     @Override
@@ -461,7 +1855,16 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
     @Override
     public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
-        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        if (singleClass) {
+            ProcDec enclosing = currentProcedure;
+            currentProcedure = procDec;
+            classNameList.add(CLASS_NAME);
+            procDec.block.visit(this, arg);
+            classNameList.remove(classNameList.size() - 1);
+            currentProcedure = enclosing;
+            return null;
+        }
+        ClassWriter classWriter = new GeneratedClassWriter(CLASS_NAME);
         classWriter.visit(V18, ACC_PUBLIC | ACC_SUPER, procDec.getJvmType(), null, "java/lang/Object", new String[]{"java/lang/Runnable"});
 
         String parentDesc = "L" + classNameList.get(classNameList.size() - 1) + ';';
@@ -519,6 +1922,18 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
 
         LogHelper.printOutput("Constdec ident" + Arrays.toString(constDec.ident.getText()) + " classWriter:"+classWriter);
 
+        if (singleClass) {
+            // constants of different procedures may share a name, and every use is a literal
+            return null;
+        }
+        if (staticConstants) {
+            // ConstantValue attribute, initialized when the class is loaded
+            FieldVisitor fieldVisitor = classWriter.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL,
+                    String.valueOf(constDec.ident.getText()), constDec.getJvmType(), null, constDec.val);
+            fieldVisitor.visitEnd();
+            return null;
+        }
+
         FieldVisitor fieldVisitor = classWriter.visitField(ACC_PUBLIC, String.valueOf(constDec.ident.getText()),
                 constDec.getJvmType(), null, null);
         fieldVisitor.visitEnd();
@@ -544,25 +1959,12 @@ public class CodeGenVisitor implements ASTVisitor, Opcodes {
         LogHelper.printOutput("visitIdent:" + Arrays.toString(ident.getText()) + " nest:"+ident.getNest() + "dec nest:"+ident.getDec().getNest());
         MethodVisitor methodVisitor = (MethodVisitor) arg;
 
-        String name = String.valueOf(((VarDec) ident.getDec()).ident.getText());
-        String jvmType = ident.getDec().getJvmType();
-
-        methodVisitor.visitVarInsn(ALOAD, 0);
-
-        int identNestLevel = ident.getNest();
-        int decNestLevel = ident.getDec().getNest();
-
-
-        while (identNestLevel > decNestLevel) {
-            methodVisitor.visitFieldInsn(GETFIELD, classNameList.get(identNestLevel), "this$" + (identNestLevel - 1), "L" + classNameList.get(identNestLevel - 1) + ";");
-            identNestLevel--;
+        Integer slot = localVariables.get(ident.getDec());
+        if (slot != null) {
+            methodVisitor.visitVarInsn(ident.getDec().getType() == Type.STRING ? ASTORE : ISTORE, slot);
+            return null;
         }
-
-        methodVisitor.visitInsn(SWAP);
-
-        LogHelper.printOutput("Ident Name:" + name);
-
-        methodVisitor.visitFieldInsn(PUTFIELD, classNameList.get(identNestLevel), name, jvmType);
+        putVariable(ident.getDec(), ident.getNest(), methodVisitor);
         return null;
     }
 
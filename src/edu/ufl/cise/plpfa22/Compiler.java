@@ -0,0 +1,72 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.ASTVisitor;
+import edu.ufl.cise.plpfa22.ast.Program;
+import edu.ufl.cise.plpfa22.ir.IrBackend;
+import edu.ufl.cise.plpfa22.ir.IrBuilder;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.IrModule;
+import edu.ufl.cise.plpfa22.opt.PassManager;
+
+import java.util.List;
+
+/**
+ * Runs the whole pipeline on a source program: lexing and parsing, scope and type checking, the AST
+ * passes the options enable, code generation and the bytecode passes. With -fir-backend code is
+ * generated through the IR, after the IR passes.
+ */
+public class Compiler {
+
+    public static final String IR_BACKEND = "ir-backend";
+
+    private final CompilerOptions options;
+    private final PassManager passManager;
+
+    public Compiler(CompilerOptions options) {
+        this(options, PassManager.standard(options));
+    }
+
+    public Compiler(CompilerOptions options, PassManager passManager) {
+        this.options = options;
+        this.passManager = passManager;
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    public PassManager getPassManager() {
+        return passManager;
+    }
+
+    public Program check(String input) throws PLPException {
+        options.setProgramId(Profile.programId(input));
+        Program program = passManager.time("parse",
+                () -> (Program) CompilerComponentFactory.getParser(CompilerComponentFactory.getLexer(input)).parse());
+        passManager.time("scope", () -> program.visit(CompilerComponentFactory.getScopeVisitor(), null));
+        passManager.time("types", () -> program.visit(CompilerComponentFactory.getTypeInferenceVisitor(), null));
+        return program;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<CodeGenUtils.GenClass> compile(String input, String className, String packageName) throws PLPException {
+        Program program = passManager.runAstPasses(check(input));
+        if (options.isEnabled(IR_BACKEND, null)) {
+            if (options.isEnabled(Profile.GENERATE, null)) {
+                throw new IllegalArgumentException("-f" + Profile.GENERATE + " needs the JVM backend");
+            }
+            if (options.isEnabled(CodeGenVisitor.SINGLE_CLASS, null)) {
+                throw new IllegalArgumentException("-f" + CodeGenVisitor.SINGLE_CLASS + " needs the JVM backend");
+            }
+            IrModule module = passManager.time("lower", () -> IrBuilder.build(program, className, packageName));
+            passManager.runIrPasses(module);
+            for (IrFunction function : module.getFunctions()) {
+                function.verify();
+            }
+            return passManager.runMethodPasses(passManager.time("codegen", () -> IrBackend.generate(module, options)));
+        }
+        ASTVisitor codeGenVisitor = CompilerComponentFactory.getCodeGenVisitor(className, packageName, "", options);
+        return passManager.runMethodPasses(
+                passManager.time("codegen", () -> (List<CodeGenUtils.GenClass>) program.visit(codeGenVisitor, null)));
+    }
+}
@@ -6,7 +6,11 @@ package edu.ufl.cise.plpfa22;
 
 import edu.ufl.cise.plpfa22.ast.ASTVisitor;
 import edu.ufl.cise.plpfa22.ast.AstVisitorImpl;
+import edu.ufl.cise.plpfa22.ast.ParallelTypeChecker;
 import edu.ufl.cise.plpfa22.ast.TypeChecker;
+import edu.ufl.cise.plpfa22.ir.IrCodeGenVisitor;
+
+import java.util.concurrent.ForkJoinPool;
 
 public class CompilerComponentFactory {
 
@@ -22,11 +26,31 @@ public class CompilerComponentFactory {
 		return new AstVisitorImpl();
 	}
 
+	public static ASTVisitor getScopeVisitor(ForkJoinPool pool) {
+		return new AstVisitorImpl(pool);
+	}
+
     public static ASTVisitor getTypeInferenceVisitor() {
 		return new TypeChecker();
 	}
 
+	public static ASTVisitor getTypeInferenceVisitor(ForkJoinPool pool) {
+		return new ParallelTypeChecker(pool);
+	}
+
 	public static ASTVisitor getCodeGenVisitor(String className, String packageName, String s) {
 		return new CodeGenVisitor(className, packageName, s);
 	}
+
+	public static ASTVisitor getCodeGenVisitor(String className, String packageName, String s, CompilerOptions options) {
+		return new CodeGenVisitor(className, packageName, s, options);
+	}
+
+	public static Compiler getCompiler(CompilerOptions options) {
+		return new Compiler(options);
+	}
+
+	public static ASTVisitor getIrCodeGenVisitor(String className, String packageName, String s) {
+		return new IrCodeGenVisitor(className, packageName, s);
+	}
 }
@@ -0,0 +1,158 @@
+package edu.ufl.cise.plpfa22;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options of a compilation: an optimization level, and features or passes switched on or off by name.
+ *
+ * Command-line style arguments are accepted by {@link #parse}: -O0, -O1 and -O2 set the level, -fname
+ * enables a feature and -fno-name disables it regardless of the level. -fname=n sets the numeric
+ * parameter name, which tunes a feature without switching it on or off.
+ */
+public class CompilerOptions {
+
+    public enum OptLevel {
+        /** No optimization, for the fastest compiles. */
+        O0,
+        /** Optimizations that are cheap to run and always pay off. */
+        O1,
+        /** Everything, for code that runs long enough to repay the compile time. */
+        O2
+    }
+
+    private OptLevel level = OptLevel.O0;
+    private final Set<String> enabled = new LinkedHashSet<>();
+    private final Set<String> disabled = new LinkedHashSet<>();
+    private final Map<String, Integer> params = new LinkedHashMap<>();
+    private Profile profile;
+    private String programId;
+
+    public CompilerOptions() {
+    }
+
+    public CompilerOptions(OptLevel level) {
+        this.level = level;
+    }
+
+    public static CompilerOptions parse(String... args) {
+        CompilerOptions options = new CompilerOptions();
+        for (String arg : args) {
+            if (arg.matches("-O[0-2]")) {
+                options.level = OptLevel.valueOf(arg.substring(1));
+            } else if (arg.matches("-f[^=]+=-?[0-9]+")) {
+                int eq = arg.indexOf('=');
+                try {
+                    options.setParam(arg.substring(2, eq), Integer.parseInt(arg.substring(eq + 1)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Compiler option value out of range " + arg);
+                }
+            } else if (arg.startsWith("-fno-") && arg.length() > 5) {
+                options.disable(arg.substring(5));
+            } else if (arg.startsWith("-f") && arg.length() > 2) {
+                options.enable(arg.substring(2));
+            } else {
+                throw new IllegalArgumentException("Unknown compiler option " + arg);
+            }
+        }
+        return options;
+    }
+
+    public OptLevel getLevel() {
+        return level;
+    }
+
+    public CompilerOptions setLevel(OptLevel level) {
+        this.level = level;
+        return this;
+    }
+
+    public CompilerOptions enable(String name) {
+        disabled.remove(name);
+        enabled.add(name);
+        return this;
+    }
+
+    public CompilerOptions disable(String name) {
+        enabled.remove(name);
+        disabled.add(name);
+        return this;
+    }
+
+    /**
+     * True if the named feature was enabled explicitly, or is on by default from minLevel and was not
+     * disabled. A null minLevel means the feature is only on when enabled explicitly.
+     */
+    public boolean isEnabled(String name, OptLevel minLevel) {
+        if (disabled.contains(name)) {
+            return false;
+        }
+        if (enabled.contains(name)) {
+            return true;
+        }
+        return minLevel != null && level.compareTo(minLevel) >= 0;
+    }
+
+    public CompilerOptions setParam(String name, int value) {
+        params.put(name, value);
+        return this;
+    }
+
+    /** Value of the named parameter, or defaultValue if it was not set. */
+    public int getParam(String name, int defaultValue) {
+        return params.getOrDefault(name, defaultValue);
+    }
+
+    /** Uses the execution counts of an earlier run of the program to guide optimization. */
+    public CompilerOptions setProfile(Profile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /** The profile to optimize for, or null. */
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /** Identifies the program being compiled in profile keys. Set by {@link Compiler#check}. */
+    public CompilerOptions setProgramId(String programId) {
+        this.programId = programId;
+        return this;
+    }
+
+    /** The {@link Profile#programId} of the program being compiled, or null if it is not known. */
+    public String getProgramId() {
+        return programId;
+    }
+
+    /** The counts of the program being compiled in the profile to optimize for, or null. */
+    public Profile getProgramProfile() {
+        return profile == null ? null : profile.forProgram(programId);
+    }
+
+    public Set<String> getEnabled() {
+        return Collections.unmodifiableSet(enabled);
+    }
+
+    public Set<String> getDisabled() {
+        return Collections.unmodifiableSet(disabled);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("-").append(level);
+        for (String name : enabled) {
+            sb.append(" -f").append(name);
+        }
+        for (String name : disabled) {
+            sb.append(" -fno-").append(name);
+        }
+        for (Map.Entry<String, Integer> param : params.entrySet()) {
+            sb.append(" -f").append(param.getKey()).append('=').append(param.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package edu.ufl.cise.plpfa22;
+
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A ClassWriter computing frames for the classes of one program. Where two types meet in a local, ASM
+ * loads them to find their common superclass, but the program's classes are still being generated.
+ * They all extend Object directly, so that is the common superclass of any of them and another type.
+ */
+public class GeneratedClassWriter extends ClassWriter {
+
+    private final String mainClassName;
+
+    /** mainClassName is the class of the main block, e.g. edu/ufl/cise/plpfa22/prog. */
+    public GeneratedClassWriter(String mainClassName) {
+        super(ClassWriter.COMPUTE_FRAMES);
+        this.mainClassName = mainClassName;
+    }
+
+    /** The class of the main block of the program that the class named className belongs to. */
+    public static String mainClassName(String className) {
+        int dollar = className.indexOf('$', className.lastIndexOf('/') + 1);
+        return dollar < 0 ? className : className.substring(0, dollar);
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        if (isGenerated(type1) || isGenerated(type2)) {
+            return "java/lang/Object";
+        }
+        return super.getCommonSuperClass(type1, type2);
+    }
+
+    private boolean isGenerated(String type) {
+        return type.equals(mainClassName) || type.startsWith(mainClassName + "$");
+    }
+}
@@ -0,0 +1,51 @@
+package edu.ufl.cise.plpfa22;
+
+import java.util.Arrays;
+
+/**
+ * Runtime support called from generated code. The string relational operators each compile into one
+ * call to a method here instead of a sequence of String calls and a scratch local.
+ *
+ * For strings, a < b holds when a is a proper prefix of b and a > b when b is a proper suffix of a;
+ * <= and >= also allow equal strings. The methods are small enough for the JIT to inline, and throw
+ * NullPointerException for a null operand like the String methods they replace.
+ *
+ * With frame reuse, the pool of instances of a recursive procedure grows through {@link #frames}.
+ */
+public class PLPRuntime {
+
+    public static final String CLASS_NAME = "edu/ufl/cise/plpfa22/PLPRuntime";
+
+    private static final int MIN_FRAMES = 8;
+
+    private PLPRuntime() {
+    }
+
+    /** a < b */
+    public static boolean isProperPrefix(String a, String b) {
+        return b.startsWith(a) && b.length() != a.length();
+    }
+
+    /** a <= b */
+    public static boolean isPrefix(String a, String b) {
+        return b.startsWith(a);
+    }
+
+    /** a > b */
+    public static boolean hasProperSuffix(String a, String b) {
+        return a.endsWith(b) && a.length() != b.length();
+    }
+
+    /** a >= b */
+    public static boolean hasSuffix(String a, String b) {
+        return a.endsWith(b);
+    }
+
+    /** The pool, or a larger copy of it, with room for an instance at index depth. */
+    public static Runnable[] frames(Runnable[] frames, int depth) {
+        if (frames == null) {
+            frames = new Runnable[MIN_FRAMES];
+        }
+        return depth < frames.length ? frames : Arrays.copyOf(frames, 2 * depth);
+    }
+}
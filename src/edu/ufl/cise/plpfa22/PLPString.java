@@ -0,0 +1,60 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * String value of a variable that the program appends to, used instead of java.lang.String so that
+ * s := s + t does not copy s.
+ *
+ * A PLPString is a prefix of a StringBuilder. Appending to the value that ends at the builder's current
+ * length appends to the builder in place and returns a longer prefix of it; the shorter values sharing
+ * the builder are unaffected. Appending to any other value copies it into a new builder first, so a
+ * chain of appends to one variable is amortized O(1) per character whatever else holds its old values.
+ * The characters are turned into a String only when the value is read, and that String is kept.
+ *
+ * Generated code is single threaded, and so is this class.
+ */
+public final class PLPString {
+
+    public static final String CLASS_NAME = "edu/ufl/cise/plpfa22/PLPString";
+    public static final String DESCRIPTOR = "L" + CLASS_NAME + ";";
+
+    private final StringBuilder chars;
+    private final int length;
+    private String flat;
+
+    private PLPString(StringBuilder chars, int length, String flat) {
+        this.chars = chars;
+        this.length = length;
+        this.flat = flat;
+    }
+
+    /** The value of s, or null for null. */
+    public static PLPString of(String s) {
+        return s == null ? null : new PLPString(null, s.length(), s);
+    }
+
+    /**
+     * The value of s + tail. Throws NullPointerException if either is null, as String.concat does.
+     */
+    public static PLPString append(PLPString s, String tail) {
+        StringBuilder chars = s.chars;
+        int length = s.length + tail.length();
+        if (chars == null || chars.length() != s.length) {
+            chars = new StringBuilder(Math.max(16, 2 * length)).append(s.toString());
+        }
+        chars.append(tail);
+        return new PLPString(chars, length, null);
+    }
+
+    /** The characters of s as a String, or null for null. */
+    public static String flatten(PLPString s) {
+        return s == null ? null : s.toString();
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flat = chars.substring(0, length);
+        }
+        return flat;
+    }
+}
@@ -130,12 +130,14 @@ public class Parser implements IParser {
                 statement = new StatementOutput(startToken, expression);
             }
             case KW_IF -> {
+                // its own location, which a nested IF does not share with the enclosing one
+                IToken ifToken = token;
                 consume();
                 Expression expression = handleExpression(startToken);
                 match(IToken.Kind.KW_THEN);
                 consume();
                 Statement ifStatement = handleStatement(startToken);
-                statement = new StatementIf(startToken, expression, ifStatement);
+                statement = new StatementIf(ifToken, expression, ifStatement);
             }
             case KW_WHILE -> {
                 IToken token1 = token;
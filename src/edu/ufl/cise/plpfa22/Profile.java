@@ -0,0 +1,223 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.ProcDec;
+import edu.ufl.cise.plpfa22.ast.StatementIf;
+import edu.ufl.cise.plpfa22.ast.StatementWhile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Execution counts of a program: how often each procedure was called, each IF statement ran and
+ * took its body, and each WHILE loop was entered and ran its body. Counts are kept under the source
+ * location of the node, so they carry over to a new compilation of the same source, and under the
+ * {@link #programId} of the source, so programs sharing a JVM or a profile file keep theirs apart.
+ *
+ * Code compiled with -fprofile-generate counts into the recorded profile of this JVM through
+ * {@link #count}. Each counted site gets an index into an array of counters when it is compiled, so
+ * instrumented code has to run in the JVM that compiled it. Counting is an unsynchronized increment,
+ * and programs run on several threads at once may lose counts. If the system property plpfa22.profile
+ * names a file, the recorded profile is added to that file when the JVM exits. A profile given to
+ * {@link CompilerOptions#setProfile} guides inlining, loop unrolling and the placement of rarely taken
+ * IF bodies.
+ */
+public final class Profile {
+
+    public static final String CLASS_NAME = "edu/ufl/cise/plpfa22/Profile";
+
+    /** Instrument the generated code to count into the recorded profile. */
+    public static final String GENERATE = "profile-generate";
+
+    public static final String FILE_PROPERTY = "plpfa22.profile";
+
+    private static final int MIN_SITES = 64;
+
+    // the index of each site compiled in this JVM, and the counts by index
+    private static final Map<String, Integer> sites = new HashMap<>();
+    private static volatile long[] counters = new long[MIN_SITES];
+
+    static {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Path path = Path.of(file);
+                    Profile profile = Files.exists(path) ? read(path) : new Profile();
+                    profile.merge(recorded()).write(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+    }
+
+    private final Map<String, Long> counts = new TreeMap<>();
+
+    /** The index of the counter of the key, for instrumented code to pass to {@link #count}. */
+    public static int site(String key) {
+        synchronized (sites) {
+            Integer site = sites.get(key);
+            if (site == null) {
+                site = sites.size();
+                sites.put(key, site);
+                if (site == counters.length) {
+                    counters = Arrays.copyOf(counters, 2 * site);
+                }
+            }
+            return site;
+        }
+    }
+
+    /** Adds one to the counter of a site. Called from instrumented code. */
+    public static void count(int site) {
+        counters[site]++;
+    }
+
+    /** A copy of the counts recorded so far by instrumented code in this JVM. */
+    public static Profile recorded() {
+        Profile profile = new Profile();
+        synchronized (sites) {
+            long[] counts = counters;
+            sites.forEach((key, site) -> {
+                if (counts[site] != 0) {
+                    profile.add(key, counts[site]);
+                }
+            });
+        }
+        return profile;
+    }
+
+    public static void clearRecorded() {
+        synchronized (sites) {
+            Arrays.fill(counters, 0);
+        }
+    }
+
+    /** Identifies the program compiled from the source, as a checksum of the source text. */
+    public static String programId(String source) {
+        CRC32 crc = new CRC32();
+        crc.update(source.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * The key of a count of the program, e.g. 1c291ca3 call 4:11. Without a programId, as for code
+     * generated outside {@link Compiler}, the key is left as is.
+     */
+    public static String programKey(String programId, String key) {
+        return programId == null ? key : programId + " " + key;
+    }
+
+    // declarations share the first token of their block, so a procedure goes by its name
+    public static String callKey(ProcDec procDec) {
+        return "call " + location(procDec.ident);
+    }
+
+    public static String ifKey(StatementIf statementIf) {
+        return "if " + location(statementIf.getFirstToken());
+    }
+
+    public static String ifTakenKey(StatementIf statementIf) {
+        return "if-taken " + location(statementIf.getFirstToken());
+    }
+
+    public static String whileKey(StatementWhile statementWhile) {
+        return "while " + location(statementWhile.getFirstToken());
+    }
+
+    public static String whileTripKey(StatementWhile statementWhile) {
+        return "while-trip " + location(statementWhile.getFirstToken());
+    }
+
+    private static String location(IToken token) {
+        IToken.SourceLocation location = token.getSourceLocation();
+        return location.line() + ":" + location.column();
+    }
+
+    public long getCount(String key) {
+        return counts.getOrDefault(key, 0L);
+    }
+
+    public long getCalls(ProcDec procDec) {
+        return getCount(callKey(procDec));
+    }
+
+    /** Times the condition of the IF statement was evaluated. */
+    public long getExecutions(StatementIf statementIf) {
+        return getCount(ifKey(statementIf));
+    }
+
+    /** Times the body of the IF statement ran. */
+    public long getTaken(StatementIf statementIf) {
+        return getCount(ifTakenKey(statementIf));
+    }
+
+    /** Times the WHILE loop was entered. */
+    public long getEntries(StatementWhile statementWhile) {
+        return getCount(whileKey(statementWhile));
+    }
+
+    /** Times the body of the WHILE loop ran, over all entries. */
+    public long getTrips(StatementWhile statementWhile) {
+        return getCount(whileTripKey(statementWhile));
+    }
+
+    /** The counts of one program, under keys without its id. */
+    public Profile forProgram(String programId) {
+        if (programId == null) {
+            return this;
+        }
+        String prefix = programId + " ";
+        Profile profile = new Profile();
+        counts.forEach((key, count) -> {
+            if (key.startsWith(prefix)) {
+                profile.add(key.substring(prefix.length()), count);
+            }
+        });
+        return profile;
+    }
+
+    public Profile add(String key, long count) {
+        counts.merge(key, count, Long::sum);
+        return this;
+    }
+
+    /** Adds the counts of the other profile to this one. */
+    public Profile merge(Profile other) {
+        other.counts.forEach(this::add);
+        return this;
+    }
+
+    /** Writes the counts as lines of the key, a tab and the count. */
+    public void write(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        counts.forEach((key, count) -> lines.add(key + "\t" + count));
+        Files.write(path, lines);
+    }
+
+    public static Profile read(Path path) throws IOException {
+        Profile profile = new Profile();
+        for (String line : Files.readAllLines(path)) {
+            int tab = line.lastIndexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            try {
+                profile.add(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed profile line: " + line, e);
+            }
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.Declaration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the declarations visible at some point of the scope check.
+ * Snapshots are chained to their enclosing snapshot, so taking one only copies the
+ * entries of the scopes entered since the enclosing snapshot was taken.
+ */
+public final class ScopeSnapshot {
+
+    public static final ScopeSnapshot EMPTY = new ScopeSnapshot(null, Collections.emptyMap(), 0);
+
+    private final ScopeSnapshot enclosing;
+    private final Map<String, Declaration> declarations;
+    private final int depth;
+
+    ScopeSnapshot(ScopeSnapshot enclosing, Map<String, Declaration> declarations, int depth) {
+        this.enclosing = enclosing;
+        this.declarations = Collections.unmodifiableMap(new HashMap<>(declarations));
+        this.depth = depth;
+    }
+
+    public Declaration lookup(String ident) {
+        for (ScopeSnapshot snapshot = this; snapshot != null; snapshot = snapshot.enclosing) {
+            Declaration declaration = snapshot.declarations.get(ident);
+            if (declaration != null) {
+                return declaration;
+            }
+        }
+        return null;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -9,8 +9,19 @@ public class SymbolTable {
     private int currentScope = 0;
     private Stack<Integer> stack = new Stack<>();
     private HashMap<String, ArrayList<IdentInfo>> map = new HashMap<>();
+    private final ScopeSnapshot enclosing;
 
     public SymbolTable() {
+        this(ScopeSnapshot.EMPTY);
+    }
+
+    /**
+     * Creates a table whose outermost scope is the given snapshot. Lookups that miss the
+     * scopes entered on this table fall back to the snapshot.
+     */
+    public SymbolTable(ScopeSnapshot enclosing) {
+        this.enclosing = enclosing;
+        currentScope = enclosing.getDepth();
         stack.push(currentScope);
     }
 
@@ -54,7 +65,11 @@ public class SymbolTable {
 
 
     public Declaration lookup(String ident) {
+        Declaration declaration = lookupLocal(ident);
+        return declaration != null ? declaration : enclosing.lookup(ident);
+    }
 
+    private Declaration lookupLocal(String ident) {
         if (!map.containsKey(ident)) {
             return null;
         }
@@ -67,6 +82,21 @@ public class SymbolTable {
         return null;
     }
 
+    /**
+     * Returns an immutable view of everything currently visible, to be used as the
+     * enclosing scope of procedure bodies checked on other threads.
+     */
+    public ScopeSnapshot snapshot() {
+        HashMap<String, Declaration> visible = new HashMap<>();
+        for (String ident : map.keySet()) {
+            Declaration declaration = lookupLocal(ident);
+            if (declaration != null) {
+                visible.put(ident, declaration);
+            }
+        }
+        return new ScopeSnapshot(enclosing, visible, currentScope);
+    }
+
     public void clearProcVariables() {
         for (Map.Entry<String, ArrayList<IdentInfo>> entry : map.entrySet()) {
             ArrayList<IdentInfo> list = entry.getValue();
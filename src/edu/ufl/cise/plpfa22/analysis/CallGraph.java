@@ -0,0 +1,316 @@
+package edu.ufl.cise.plpfa22.analysis;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Call graph of a scope-checked program, built from its StatementCall nodes.
+ *
+ * Procedures are grouped into strongly connected components and classified as leaf, non-recursive or
+ * recursive. For every procedure the graph also records the variables declared outside it that it reads
+ * and writes, both in its own statement and through the procedures it calls.
+ */
+public class CallGraph {
+
+    public enum Kind {LEAF, NON_RECURSIVE, RECURSIVE}
+
+    public static class ProcInfo {
+        private final ProcDec procDec;
+        private final Set<ProcDec> callees = new LinkedHashSet<>();
+        private final Set<ProcDec> callers = new LinkedHashSet<>();
+        private final Set<VarDec> reads = new LinkedHashSet<>();
+        private final Set<VarDec> writes = new LinkedHashSet<>();
+        private final Set<VarDec> transitiveReads = new LinkedHashSet<>();
+        private final Set<VarDec> transitiveWrites = new LinkedHashSet<>();
+        private int callSites;
+        private int component;
+        private Kind kind;
+
+        ProcInfo(ProcDec procDec) {
+            this.procDec = procDec;
+        }
+
+        public ProcDec getProcDec() {
+            return procDec;
+        }
+
+        public Set<ProcDec> getCallees() {
+            return Collections.unmodifiableSet(callees);
+        }
+
+        public Set<ProcDec> getCallers() {
+            return Collections.unmodifiableSet(callers);
+        }
+
+        /** Variables declared outside the procedure that its own statement reads. */
+        public Set<VarDec> getReads() {
+            return Collections.unmodifiableSet(reads);
+        }
+
+        /** Variables declared outside the procedure that its own statement assigns or inputs. */
+        public Set<VarDec> getWrites() {
+            return Collections.unmodifiableSet(writes);
+        }
+
+        /** Variables declared outside the procedure that it or any procedure it calls may read. */
+        public Set<VarDec> getTransitiveReads() {
+            return Collections.unmodifiableSet(transitiveReads);
+        }
+
+        /** Variables declared outside the procedure that it or any procedure it calls may write. */
+        public Set<VarDec> getTransitiveWrites() {
+            return Collections.unmodifiableSet(transitiveWrites);
+        }
+
+        /** Number of CALL statements naming this procedure. */
+        public int getCallSites() {
+            return callSites;
+        }
+
+        public int getComponent() {
+            return component;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public boolean isRecursive() {
+            return kind == Kind.RECURSIVE;
+        }
+    }
+
+    private final Map<ProcDec, ProcInfo> infos = new IdentityHashMap<>();
+    private final Set<ProcDec> mainCallees = new LinkedHashSet<>();
+    private final List<List<ProcDec>> components = new ArrayList<>();
+    private final Set<ProcDec> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private CallGraph() {
+    }
+
+    public static CallGraph build(Program program) throws PLPException {
+        CallGraph graph = new CallGraph();
+        program.visit(graph.new Builder(), null);
+        graph.findComponents();
+        graph.classify();
+        graph.propagateAccesses();
+        graph.findReachable();
+        return graph;
+    }
+
+    public ProcInfo getInfo(ProcDec procDec) {
+        return infos.get(procDec);
+    }
+
+    public Kind getKind(ProcDec procDec) {
+        return infos.get(procDec).kind;
+    }
+
+    public Set<ProcDec> getProcedures() {
+        return Collections.unmodifiableSet(infos.keySet());
+    }
+
+    /** Procedures called directly from the statement of the main block. */
+    public Set<ProcDec> getMainCallees() {
+        return Collections.unmodifiableSet(mainCallees);
+    }
+
+    /** Strongly connected components, callees before callers. */
+    public List<List<ProcDec>> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    /** True if some chain of calls starting in the main block reaches the procedure. */
+    public boolean isReachable(ProcDec procDec) {
+        return reachable.contains(procDec);
+    }
+
+    private class Builder extends AstTraversalVisitor {
+        private final Deque<ProcInfo> current = new ArrayDeque<>();
+
+        @Override
+        public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+            ProcInfo info = infos.computeIfAbsent(procDec, ProcInfo::new);
+            current.push(info);
+            procDec.block.visit(this, arg);
+            current.pop();
+            return null;
+        }
+
+        @Override
+        public Object visitStatementCall(StatementCall statementCall, Object arg) {
+            ProcDec callee = (ProcDec) statementCall.ident.getDec();
+            ProcInfo calleeInfo = infos.computeIfAbsent(callee, ProcInfo::new);
+            calleeInfo.callSites++;
+            if (current.isEmpty()) {
+                mainCallees.add(callee);
+            } else {
+                current.peek().callees.add(callee);
+                calleeInfo.callers.add(current.peek().procDec);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
+            write(statementAssign.ident.getDec());
+            statementAssign.expression.visit(this, arg);
+            return null;
+        }
+
+        @Override
+        public Object visitStatementInput(StatementInput statementInput, Object arg) {
+            write(statementInput.ident.getDec());
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+            ProcInfo info = current.peek();
+            if (info != null && expressionIdent.getDec() instanceof VarDec varDec && isOuter(varDec, info.procDec)) {
+                info.reads.add(varDec);
+            }
+            return null;
+        }
+
+        private void write(Declaration declaration) {
+            ProcInfo info = current.peek();
+            if (info != null && declaration instanceof VarDec varDec && isOuter(varDec, info.procDec)) {
+                info.writes.add(varDec);
+            }
+        }
+    }
+
+    // Declarations in a procedure body have nest procDec.getNest() + 1
+    private static boolean isOuter(Declaration declaration, ProcDec procDec) {
+        return declaration.getNest() <= procDec.getNest();
+    }
+
+    // Tarjan's algorithm, iterative so that long call chains do not overflow the stack
+    private void findComponents() {
+        Map<ProcDec, Integer> index = new IdentityHashMap<>();
+        Map<ProcDec, Integer> lowLink = new IdentityHashMap<>();
+        Set<ProcDec> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ProcDec> stack = new ArrayDeque<>();
+        int nextIndex = 0;
+
+        for (ProcDec root : infos.keySet()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            Deque<ProcDec> work = new ArrayDeque<>();
+            Deque<Iterator<ProcDec>> iterators = new ArrayDeque<>();
+            index.put(root, nextIndex);
+            lowLink.put(root, nextIndex++);
+            stack.push(root);
+            onStack.add(root);
+            work.push(root);
+            iterators.push(infos.get(root).callees.iterator());
+
+            while (!work.isEmpty()) {
+                ProcDec node = work.peek();
+                Iterator<ProcDec> edges = iterators.peek();
+                if (edges.hasNext()) {
+                    ProcDec callee = edges.next();
+                    if (!index.containsKey(callee)) {
+                        index.put(callee, nextIndex);
+                        lowLink.put(callee, nextIndex++);
+                        stack.push(callee);
+                        onStack.add(callee);
+                        work.push(callee);
+                        iterators.push(infos.get(callee).callees.iterator());
+                    } else if (onStack.contains(callee)) {
+                        lowLink.put(node, Math.min(lowLink.get(node), index.get(callee)));
+                    }
+                    continue;
+                }
+                work.pop();
+                iterators.pop();
+                if (!work.isEmpty()) {
+                    ProcDec parent = work.peek();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(node)));
+                }
+                if (lowLink.get(node).equals(index.get(node))) {
+                    List<ProcDec> component = new ArrayList<>();
+                    ProcDec member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        infos.get(member).component = components.size();
+                        component.add(member);
+                    } while (member != node);
+                    components.add(component);
+                }
+            }
+        }
+    }
+
+    private void classify() {
+        for (List<ProcDec> component : components) {
+            for (ProcDec procDec : component) {
+                ProcInfo info = infos.get(procDec);
+                if (component.size() > 1 || info.callees.contains(procDec)) {
+                    info.kind = Kind.RECURSIVE;
+                } else if (info.callees.isEmpty()) {
+                    info.kind = Kind.LEAF;
+                } else {
+                    info.kind = Kind.NON_RECURSIVE;
+                }
+            }
+        }
+    }
+
+    // Components come callees first, so one pass suffices except inside a component
+    private void propagateAccesses() {
+        for (List<ProcDec> component : components) {
+            for (ProcDec procDec : component) {
+                ProcInfo info = infos.get(procDec);
+                info.transitiveReads.addAll(info.reads);
+                info.transitiveWrites.addAll(info.writes);
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (ProcDec procDec : component) {
+                    ProcInfo info = infos.get(procDec);
+                    for (ProcDec callee : info.callees) {
+                        ProcInfo calleeInfo = infos.get(callee);
+                        changed |= addOuter(info.transitiveReads, calleeInfo.transitiveReads, procDec);
+                        changed |= addOuter(info.transitiveWrites, calleeInfo.transitiveWrites, procDec);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean addOuter(Set<VarDec> target, Set<VarDec> source, ProcDec procDec) {
+        boolean changed = false;
+        for (VarDec varDec : source) {
+            if (isOuter(varDec, procDec)) {
+                changed |= target.add(varDec);
+            }
+        }
+        return changed;
+    }
+
+    private void findReachable() {
+        Deque<ProcDec> work = new ArrayDeque<>(mainCallees);
+        while (!work.isEmpty()) {
+            ProcDec procDec = work.pop();
+            if (reachable.add(procDec)) {
+                work.addAll(infos.get(procDec).callees);
+            }
+        }
+    }
+}
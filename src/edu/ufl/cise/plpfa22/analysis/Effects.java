@@ -0,0 +1,53 @@
+package edu.ufl.cise.plpfa22.analysis;
+
+import edu.ufl.cise.plpfa22.IToken.Kind;
+import edu.ufl.cise.plpfa22.ast.ConstDec;
+import edu.ufl.cise.plpfa22.ast.Expression;
+import edu.ufl.cise.plpfa22.ast.ExpressionBinary;
+import edu.ufl.cise.plpfa22.ast.ExpressionIdent;
+import edu.ufl.cise.plpfa22.ast.ExpressionNumLit;
+import edu.ufl.cise.plpfa22.ast.ExpressionStringLit;
+
+/**
+ * What evaluating an expression may do besides producing its value. Expressions never write
+ * variables, so the only effect is an exception: integer division by zero, or a string operation on
+ * a variable that was never assigned and is still null.
+ */
+public class Effects {
+
+    private Effects() {
+    }
+
+    /**
+     * True if evaluating the expression may throw. Division is safe only by a non-zero literal; a
+     * string operation is safe when the strings it calls methods on, or passes to concat, startsWith or
+     * endsWith, are literals, constants or results of concatenation.
+     */
+    public static boolean canThrow(Expression expression) {
+        if (!(expression instanceof ExpressionBinary binary)) {
+            return false;
+        }
+        if (canThrow(binary.e0) || canThrow(binary.e1)) {
+            return true;
+        }
+        Kind kind = binary.op.getKind();
+        return switch (binary.e0.getType()) {
+            case NUMBER -> (kind == Kind.DIV || kind == Kind.MOD)
+                    && !(binary.e1 instanceof ExpressionNumLit divisor && divisor.getFirstToken().getIntValue() != 0);
+            // equals accepts null, the other methods do not
+            case STRING -> kind == Kind.EQ || kind == Kind.NEQ
+                    ? !isNonNull(binary.e0)
+                    : !isNonNull(binary.e0) || !isNonNull(binary.e1);
+            default -> false;
+        };
+    }
+
+    /**
+     * True if the expression is a string that cannot be null.
+     */
+    public static boolean isNonNull(Expression expression) {
+        return expression instanceof ExpressionStringLit
+                || expression instanceof ExpressionIdent ident && ident.getDec() instanceof ConstDec
+                || expression instanceof ExpressionBinary binary && binary.op.getKind() == Kind.PLUS;
+    }
+}
@@ -0,0 +1,68 @@
+package edu.ufl.cise.plpfa22.analysis;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Which expressions of a WHILE loop have the same value on every iteration.
+ *
+ * A loop writes the variables its statements assign or input, and the variables declared outside the
+ * procedures it calls that those procedures may write, directly or through further calls. An expression
+ * is invariant if it reads none of them.
+ */
+public class LoopInvariants {
+
+    private final CallGraph callGraph;
+
+    public LoopInvariants(CallGraph callGraph) {
+        this.callGraph = callGraph;
+    }
+
+    /** Variables that executing the body of the loop may assign. */
+    public Set<Declaration> getWrites(StatementWhile loop) throws PLPException {
+        Set<Declaration> writes = Collections.newSetFromMap(new IdentityHashMap<>());
+        loop.statement.visit(new AstTraversalVisitor() {
+            @Override
+            public Object visitStatementAssign(StatementAssign statementAssign, Object arg) {
+                writes.add(statementAssign.ident.getDec());
+                return null;
+            }
+
+            @Override
+            public Object visitStatementInput(StatementInput statementInput, Object arg) {
+                writes.add(statementInput.ident.getDec());
+                return null;
+            }
+
+            @Override
+            public Object visitStatementCall(StatementCall statementCall, Object arg) {
+                writes.addAll(callGraph.getInfo((ProcDec) statementCall.ident.getDec()).getTransitiveWrites());
+                return null;
+            }
+        }, null);
+        return writes;
+    }
+
+    /**
+     * True if the expression reads none of the given variables, so that it can be evaluated once
+     * before a loop with those writes. Expressions that may throw are not invariant: the loop might
+     * not execute them at all.
+     */
+    public static boolean isInvariant(Expression expression, Set<Declaration> writes) {
+        return !Effects.canThrow(expression) && readsNone(expression, writes);
+    }
+
+    private static boolean readsNone(Expression expression, Set<Declaration> writes) {
+        if (expression instanceof ExpressionIdent ident) {
+            return !writes.contains(ident.getDec());
+        }
+        if (expression instanceof ExpressionBinary binary) {
+            return readsNone(binary.e0, writes) && readsNone(binary.e1, writes);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.ufl.cise.plpfa22.ast;
+
+import edu.ufl.cise.plpfa22.PLPException;
+
+/**
+ * Visitor that walks every node of the tree and does nothing else. Analyses extend it and
+ * override only the nodes they are interested in, calling super to keep walking.
+ */
+public class AstTraversalVisitor implements ASTVisitor {
+
+    @Override
+    public Object visitBlock(Block block, Object arg) throws PLPException {
+        for (ConstDec dec : block.constDecs) {
+            dec.visit(this, arg);
+        }
+        for (VarDec dec : block.varDecs) {
+            dec.visit(this, arg);
+        }
+        for (ProcDec dec : block.procedureDecs) {
+            dec.visit(this, arg);
+        }
+        block.statement.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitProgram(Program program, Object arg) throws PLPException {
+        program.block.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
+        statementAssign.ident.visit(this, arg);
+        statementAssign.expression.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitVarDec(VarDec varDec, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
+        statementCall.ident.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitStatementInput(StatementInput statementInput, Object arg) throws PLPException {
+        statementInput.ident.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitStatementOutput(StatementOutput statementOutput, Object arg) throws PLPException {
+        statementOutput.expression.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        for (Statement statement : statementBlock.statements) {
+            statement.visit(this, arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+        statementIf.expression.visit(this, arg);
+        statementIf.statement.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+        statementWhile.expression.visit(this, arg);
+        statementWhile.statement.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        expressionBinary.e0.visit(this, arg);
+        expressionBinary.e1.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionNumLit(ExpressionNumLit expressionNumLit, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionStringLit(ExpressionStringLit expressionStringLit, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionBooleanLit(ExpressionBooleanLit expressionBooleanLit, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+        procDec.block.visit(this, arg);
+        return null;
+    }
+
+    @Override
+    public Object visitConstDec(ConstDec constDec, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitStatementEmpty(StatementEmpty statementEmpty, Object arg) throws PLPException {
+        return null;
+    }
+
+    @Override
+    public Object visitIdent(Ident ident, Object arg) throws PLPException {
+        return null;
+    }
+}
@@ -2,10 +2,54 @@ package edu.ufl.cise.plpfa22.ast;
 
 import edu.ufl.cise.plpfa22.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class AstVisitorImpl implements ASTVisitor {
-    private final SymbolTable symbolTable = new SymbolTable();
+    // Below this many sibling procedures the bodies are checked on the calling thread
+    private static final int PARALLEL_THRESHOLD = 2;
+
+    private final SymbolTable symbolTable;
+    private final ForkJoinPool pool;
+    // Set by checkBlock, which leaves the bodies of nested procedures to the caller
+    private boolean shallow = false;
+    private ScopeSnapshot blockScope;
+
+    public AstVisitorImpl() {
+        this(null, new SymbolTable());
+    }
+
+    /**
+     * Scope checker that checks the bodies of sibling procedures on the given pool. Each body
+     * is checked against a snapshot of its enclosing scope taken after the declarations of the
+     * enclosing block have been entered.
+     */
+    public AstVisitorImpl(ForkJoinPool pool) {
+        this(pool, new SymbolTable());
+    }
+
+    private AstVisitorImpl(ForkJoinPool pool, SymbolTable symbolTable) {
+        this.pool = pool;
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Checks the declarations and statement of a single block against its enclosing scope without
+     * visiting the bodies of the procedures it declares. Returns the scope those bodies are checked in.
+     */
+    public static ScopeSnapshot checkBlock(Block block, ScopeSnapshot enclosing, boolean procedureBody) throws PLPException {
+        AstVisitorImpl visitor = new AstVisitorImpl(null, new SymbolTable(enclosing));
+        visitor.shallow = true;
+        if (procedureBody) {
+            visitor.symbolTable.enterScope();
+        }
+        block.visit(visitor, null);
+        return visitor.blockScope;
+    }
 
     @Override
     public Object visitBlock(Block block, Object arg) throws PLPException {
@@ -23,6 +67,15 @@ public class AstVisitorImpl implements ASTVisitor {
                 throw new ScopeException();
             }
         }
+        if (shallow) {
+            blockScope = symbolTable.snapshot();
+            block.statement.visit(this, arg);
+            return null;
+        }
+        if (pool != null && block.procedureDecs.size() >= PARALLEL_THRESHOLD) {
+            visitProceduresInParallel(block, arg);
+            return null;
+        }
         for (ProcDec dec : block.procedureDecs) {
             dec.visit(this, arg);
         }
@@ -31,16 +84,103 @@ public class AstVisitorImpl implements ASTVisitor {
         return null;
     }
 
+    private void visitProceduresInParallel(Block block, Object arg) throws PLPException {
+        ScopeSnapshot snapshot = symbolTable.snapshot();
+        List<ProcedureTask> tasks = new ArrayList<>();
+        for (ProcDec dec : block.procedureDecs) {
+            ProcedureTask task = new ProcedureTask(pool, snapshot, dec, arg);
+            task.fork();
+            tasks.add(task);
+        }
+        PLPException statementError = null;
+        try {
+            block.statement.visit(this, arg);
+        } catch (PLPException e) {
+            statementError = e;
+        }
+        // Report errors in the order the sequential checker would find them
+        PLPException error = null;
+        for (ProcedureTask task : tasks) {
+            PLPException taskError = task.join();
+            if (error == null) {
+                error = taskError;
+            }
+        }
+        if (error == null) {
+            error = statementError;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static class ProcedureTask extends RecursiveTask<PLPException> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ForkJoinPool pool;
+        private final transient ScopeSnapshot snapshot;
+        private final transient ProcDec procDec;
+        private final transient Object arg;
+
+        ProcedureTask(ForkJoinPool pool, ScopeSnapshot snapshot, ProcDec procDec, Object arg) {
+            this.pool = pool;
+            this.snapshot = snapshot;
+            this.procDec = procDec;
+            this.arg = arg;
+        }
+
+        @Override
+        protected PLPException compute() {
+            try {
+                procDec.visit(new AstVisitorImpl(pool, new SymbolTable(snapshot)), arg);
+                return null;
+            } catch (PLPException e) {
+                return e;
+            }
+        }
+    }
+
     private void showOutput(Object text) {
         LogHelper.printOutput(text);
     }
 
     @Override
     public Object visitProgram(Program program, Object arg) throws PLPException {
+        if (pool != null && !ForkJoinTask.inForkJoinPool()) {
+            PLPException error = pool.invoke(new ProgramTask(this, program, arg));
+            if (error != null) {
+                throw error;
+            }
+            return null;
+        }
         program.block.visit(this, arg);
         return null;
     }
 
+    private static class ProgramTask extends RecursiveTask<PLPException> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient AstVisitorImpl visitor;
+        private final transient Program program;
+        private final transient Object arg;
+
+        ProgramTask(AstVisitorImpl visitor, Program program, Object arg) {
+            this.visitor = visitor;
+            this.program = program;
+            this.arg = arg;
+        }
+
+        @Override
+        protected PLPException compute() {
+            try {
+                program.block.visit(visitor, arg);
+                return null;
+            } catch (PLPException e) {
+                return e;
+            }
+        }
+    }
+
     @Override
     public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
         showOutput("statementAssign = " + Arrays.toString(statementAssign.ident.getText()));
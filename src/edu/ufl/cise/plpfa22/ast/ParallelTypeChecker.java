@@ -0,0 +1,352 @@
+package edu.ufl.cise.plpfa22.ast;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.TypeCheckException;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Type checker that infers the types of each procedure body on a ForkJoinPool.
+ *
+ * The program is split into regions, one per block, each owning the declarations it makes.
+ * Inference runs in rounds: every region is checked against an immutable snapshot of the
+ * declaration types taken at the start of the round. Writes to declarations owned by the
+ * region go straight to the AST, writes to any other declaration are kept as proposals and
+ * merged in the order the sequential checker visits the blocks, so the result does not
+ * depend on scheduling. Rounds repeat until nothing changes, then a final round runs with
+ * the same strict checks the sequential checker applies after its first traversal.
+ *
+ * With a {@link RegionCache}, regions whose inputs match an earlier check reuse its result instead
+ * of running inference again. Without a pool the regions are checked on the calling thread.
+ */
+public class ParallelTypeChecker extends TypeChecker {
+
+    private final ForkJoinPool pool;
+    private final RegionCache cache;
+
+    public ParallelTypeChecker(ForkJoinPool pool) {
+        this(pool, null);
+    }
+
+    public ParallelTypeChecker(ForkJoinPool pool, RegionCache cache) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    @Override
+    public Object visitProgram(Program program, Object arg) throws PLPException {
+        List<Block> regions = new ArrayList<>();
+        Map<Declaration, Block> owners = new IdentityHashMap<>();
+        collectRegions(program.block, regions, owners);
+
+        boolean strict = false;
+        while (true) {
+            Map<Declaration, Type> snapshot = snapshotTypes(owners);
+            List<RegionResult> results = checkRegions(regions, owners, snapshot, strict, arg);
+            boolean changed = merge(results);
+            if (!changed) {
+                if (strict) {
+                    return null;
+                }
+                strict = true;
+            }
+        }
+    }
+
+    // Regions are listed in the order the sequential checker completes them: nested procedure
+    // bodies before the statement of the block that declares them
+    static void collectRegions(Block block, List<Block> regions, Map<Declaration, Block> owners) {
+        for (ConstDec dec : block.constDecs) {
+            owners.put(dec, block);
+        }
+        for (VarDec dec : block.varDecs) {
+            owners.put(dec, block);
+        }
+        for (ProcDec dec : block.procedureDecs) {
+            owners.put(dec, block);
+        }
+        for (ProcDec dec : block.procedureDecs) {
+            collectRegions(dec.block, regions, owners);
+        }
+        regions.add(block);
+    }
+
+    private static Map<Declaration, Type> snapshotTypes(Map<Declaration, Block> owners) {
+        Map<Declaration, Type> snapshot = new IdentityHashMap<>();
+        for (Declaration declaration : owners.keySet()) {
+            snapshot.put(declaration, declaration.getType());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private List<RegionResult> checkRegions(List<Block> regions, Map<Declaration, Block> owners,
+                                            Map<Declaration, Type> snapshot, boolean strict, Object arg) {
+        List<RegionTask> tasks = new ArrayList<>();
+        for (Block region : regions) {
+            tasks.add(new RegionTask(new RegionChecker(region, owners, snapshot, strict, cache), arg));
+        }
+        if (pool == null || tasks.size() == 1) {
+            List<RegionResult> results = new ArrayList<>();
+            for (RegionTask task : tasks) {
+                results.add(task.compute());
+            }
+            return results;
+        }
+        return pool.invoke(new RecursiveTask<List<RegionResult>>() {
+            @Override
+            protected List<RegionResult> compute() {
+                invokeAll(tasks);
+                List<RegionResult> results = new ArrayList<>();
+                for (RegionTask task : tasks) {
+                    results.add(task.join());
+                }
+                return results;
+            }
+        });
+    }
+
+    private static boolean merge(List<RegionResult> results) throws PLPException {
+        for (RegionResult result : results) {
+            if (result.error() != null) {
+                throw result.error();
+            }
+        }
+        boolean changed = false;
+        for (RegionResult result : results) {
+            changed |= result.changed();
+            for (Map.Entry<Declaration, Type> proposal : result.proposals().entrySet()) {
+                Declaration declaration = proposal.getKey();
+                Type type = proposal.getValue();
+                if (declaration.getType() == null) {
+                    declaration.setType(type);
+                    changed = true;
+                } else if (declaration.getType() != type) {
+                    throw new TypeCheckException("Type mismatch: Expected:" + declaration.getType() + " but found " + type);
+                }
+            }
+        }
+        return changed;
+    }
+
+    record RegionResult(PLPException error, Map<Declaration, Type> proposals, boolean changed) {
+    }
+
+    private static class RegionTask extends RecursiveTask<RegionResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RegionChecker checker;
+        private final transient Object arg;
+
+        RegionTask(RegionChecker checker, Object arg) {
+            this.checker = checker;
+            this.arg = arg;
+        }
+
+        @Override
+        protected RegionResult compute() {
+            return checker.check(arg);
+        }
+    }
+
+    /**
+     * Checks a single block without descending into the procedures it declares.
+     */
+    static class RegionChecker extends TypeChecker {
+        private final Block region;
+        private final Map<Declaration, Block> owners;
+        private final Map<Declaration, Type> snapshot;
+        private final Map<Declaration, Type> proposals = new LinkedHashMap<>();
+        private final RegionCache cache;
+
+        RegionChecker(Block region, Map<Declaration, Block> owners, Map<Declaration, Type> snapshot, boolean strict,
+                      RegionCache cache) {
+            this.region = region;
+            this.owners = owners;
+            this.snapshot = snapshot;
+            this.isTreeTraversedOnce = strict;
+            this.cache = cache;
+        }
+
+        RegionResult check(Object arg) {
+            if (cache == null) {
+                return infer(arg);
+            }
+            try {
+                RegionWalker walker = new RegionWalker(region, owners).walk();
+                String key = cacheKey(walker);
+                RegionCache.Entry entry = cache.get(key);
+                if (entry != null) {
+                    return replay(walker, entry);
+                }
+                RegionResult result = infer(arg);
+                cache.put(key, record(walker, result));
+                return result;
+            } catch (PLPException e) {
+                return new RegionResult(e, proposals, false);
+            }
+        }
+
+        private RegionResult infer(Object arg) {
+            try {
+                int typedBefore = countTyped();
+                region.visit(this, arg);
+                return new RegionResult(null, proposals, countTyped() != typedBefore);
+            } catch (PLPException e) {
+                return new RegionResult(e, proposals, false);
+            }
+        }
+
+        private String cacheKey(RegionWalker walker) {
+            StringBuilder key = new StringBuilder(walker.getFingerprint()).append('|').append(isTreeTraversedOnce);
+            for (ASTNode node : walker.getOwned()) {
+                key.append(' ').append(typeOfNode(node));
+            }
+            key.append('|');
+            for (Declaration declaration : walker.getForeign()) {
+                key.append(' ').append(declaration.getClass().getSimpleName()).append(declaration.getNest())
+                        .append(':').append(snapshot.get(declaration));
+            }
+            return key.toString();
+        }
+
+        private static Type typeOfNode(ASTNode node) {
+            return node instanceof Declaration declaration ? declaration.getType() : ((Expression) node).getType();
+        }
+
+        private RegionCache.Entry record(RegionWalker walker, RegionResult result) {
+            List<Type> types = new ArrayList<>();
+            for (ASTNode node : walker.getOwned()) {
+                types.add(typeOfNode(node));
+            }
+            List<Type> proposed = new ArrayList<>();
+            for (Declaration declaration : walker.getForeign()) {
+                proposed.add(result.proposals().get(declaration));
+            }
+            return new RegionCache.Entry(types, proposed, result.changed(), result.error());
+        }
+
+        private RegionResult replay(RegionWalker walker, RegionCache.Entry entry) {
+            List<ASTNode> owned = walker.getOwned();
+            for (int i = 0; i < owned.size(); i++) {
+                Type type = entry.types().get(i);
+                if (type == null) {
+                    continue;
+                }
+                if (owned.get(i) instanceof Declaration declaration) {
+                    declaration.setType(type);
+                } else {
+                    ((Expression) owned.get(i)).setType(type);
+                }
+            }
+            List<Declaration> foreign = walker.getForeign();
+            for (int i = 0; i < foreign.size(); i++) {
+                if (entry.proposals().get(i) != null) {
+                    proposals.put(foreign.get(i), entry.proposals().get(i));
+                }
+            }
+            return new RegionResult(entry.error(), proposals, entry.changed());
+        }
+
+        private int countTyped() throws PLPException {
+            TypedNodeCounter counter = new TypedNodeCounter();
+            region.visit(counter, null);
+            return counter.count;
+        }
+
+        private boolean isOwned(Declaration declaration) {
+            return owners.get(declaration) == region;
+        }
+
+        @Override
+        Type typeOf(Declaration declaration) {
+            if (isOwned(declaration)) {
+                return declaration.getType();
+            }
+            Type proposed = proposals.get(declaration);
+            return proposed != null ? proposed : snapshot.get(declaration);
+        }
+
+        @Override
+        void setTypeOf(Declaration declaration, Type type) {
+            if (isOwned(declaration)) {
+                declaration.setType(type);
+            } else {
+                proposals.put(declaration, type);
+            }
+        }
+
+        @Override
+        public Object visitProcedure(ProcDec procDec, Object arg) {
+            if (procDec.getType() == null) {
+                procDec.setType(Type.PROCEDURE);
+            }
+            return procDec.getType();
+        }
+    }
+
+    private static class TypedNodeCounter extends AstTraversalVisitor {
+        int count;
+
+        private void count(Type type) {
+            if (type != null) {
+                count++;
+            }
+        }
+
+        @Override
+        public Object visitProcedure(ProcDec procDec, Object arg) {
+            count(procDec.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitConstDec(ConstDec constDec, Object arg) {
+            count(constDec.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitVarDec(VarDec varDec, Object arg) {
+            count(varDec.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+            count(expressionBinary.getType());
+            return super.visitExpressionBinary(expressionBinary, arg);
+        }
+
+        @Override
+        public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+            count(expressionIdent.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionNumLit(ExpressionNumLit expressionNumLit, Object arg) {
+            count(expressionNumLit.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionStringLit(ExpressionStringLit expressionStringLit, Object arg) {
+            count(expressionStringLit.getType());
+            return null;
+        }
+
+        @Override
+        public Object visitExpressionBooleanLit(ExpressionBooleanLit expressionBooleanLit, Object arg) {
+            count(expressionBooleanLit.getType());
+            return null;
+        }
+    }
+}
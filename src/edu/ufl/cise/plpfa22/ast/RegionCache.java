@@ -0,0 +1,25 @@
+package edu.ufl.cise.plpfa22.ast;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+import java.util.List;
+
+/**
+ * Memo of region type inference results, used by {@link ParallelTypeChecker} to skip blocks whose
+ * text and inputs are unchanged since an earlier check, possibly of an earlier version of the program.
+ *
+ * Keys describe the region text, the types its nodes start the round with, and the kind, nest and type
+ * of every declaration it references from enclosing blocks. Entries hold the types of the region's own
+ * nodes after the round and the types proposed for each referenced declaration, both listed in the
+ * order {@link RegionWalker} visits them.
+ */
+public interface RegionCache {
+
+    Entry get(String key);
+
+    void put(String key, Entry entry);
+
+    record Entry(List<Type> types, List<Type> proposals, boolean changed, PLPException error) {
+    }
+}
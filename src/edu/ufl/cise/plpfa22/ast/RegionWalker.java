@@ -0,0 +1,169 @@
+package edu.ufl.cise.plpfa22.ast;
+
+import edu.ufl.cise.plpfa22.PLPException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lists the nodes of a single block in a fixed order, without descending into the bodies of the
+ * procedures it declares: the declarations and expressions the block owns, the declarations it
+ * references from enclosing blocks, and a fingerprint of its text.
+ */
+public class RegionWalker extends AstTraversalVisitor {
+
+    private final Block region;
+    private final Map<Declaration, Block> owners;
+    private final List<ASTNode> owned = new ArrayList<>();
+    private final List<Declaration> foreign = new ArrayList<>();
+    private final Set<Declaration> seenForeign = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final StringBuilder fingerprint = new StringBuilder();
+
+    public RegionWalker(Block region, Map<Declaration, Block> owners) {
+        this.region = region;
+        this.owners = owners;
+    }
+
+    public RegionWalker walk() throws PLPException {
+        region.visit(this, null);
+        return this;
+    }
+
+    public List<ASTNode> getOwned() {
+        return owned;
+    }
+
+    public List<Declaration> getForeign() {
+        return foreign;
+    }
+
+    public String getFingerprint() {
+        return fingerprint.toString();
+    }
+
+    private void reference(Declaration declaration, String name) {
+        fingerprint.append(name).append(' ');
+        if (declaration != null && owners.get(declaration) != region && seenForeign.add(declaration)) {
+            foreign.add(declaration);
+        }
+    }
+
+    @Override
+    public Object visitConstDec(ConstDec constDec, Object arg) {
+        owned.add(constDec);
+        fingerprint.append("CONST ").append(String.valueOf(constDec.ident.getText())).append('=')
+                .append(constDec.val instanceof String ? "\"" + constDec.val + "\"" : constDec.val).append(';');
+        return null;
+    }
+
+    @Override
+    public Object visitVarDec(VarDec varDec, Object arg) {
+        owned.add(varDec);
+        fingerprint.append("VAR ").append(String.valueOf(varDec.ident.getText())).append(';');
+        return null;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) {
+        owned.add(procDec);
+        fingerprint.append("PROCEDURE ").append(String.valueOf(procDec.ident.getText())).append(';');
+        return null;
+    }
+
+    @Override
+    public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
+        fingerprint.append("ASSIGN ");
+        return super.visitStatementAssign(statementAssign, arg);
+    }
+
+    @Override
+    public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
+        fingerprint.append("CALL ");
+        return super.visitStatementCall(statementCall, arg);
+    }
+
+    @Override
+    public Object visitStatementInput(StatementInput statementInput, Object arg) throws PLPException {
+        fingerprint.append("INPUT ");
+        return super.visitStatementInput(statementInput, arg);
+    }
+
+    @Override
+    public Object visitStatementOutput(StatementOutput statementOutput, Object arg) throws PLPException {
+        fingerprint.append("OUTPUT ");
+        return super.visitStatementOutput(statementOutput, arg);
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        fingerprint.append("BEGIN ");
+        super.visitStatementBlock(statementBlock, arg);
+        fingerprint.append("END ");
+        return null;
+    }
+
+    @Override
+    public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+        fingerprint.append("IF ");
+        return super.visitStatementIf(statementIf, arg);
+    }
+
+    @Override
+    public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+        fingerprint.append("WHILE ");
+        return super.visitStatementWhile(statementWhile, arg);
+    }
+
+    @Override
+    public Object visitStatementEmpty(StatementEmpty statementEmpty, Object arg) {
+        fingerprint.append("EMPTY ");
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        owned.add(expressionBinary);
+        fingerprint.append('(').append(expressionBinary.op.getKind()).append(' ');
+        super.visitExpressionBinary(expressionBinary, arg);
+        fingerprint.append(") ");
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+        owned.add(expressionIdent);
+        reference(expressionIdent.getDec(), String.valueOf(expressionIdent.firstToken.getText()));
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionNumLit(ExpressionNumLit expressionNumLit, Object arg) {
+        owned.add(expressionNumLit);
+        fingerprint.append(expressionNumLit.firstToken.getText()).append(' ');
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionStringLit(ExpressionStringLit expressionStringLit, Object arg) {
+        owned.add(expressionStringLit);
+        fingerprint.append(expressionStringLit.firstToken.getText()).append(' ');
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionBooleanLit(ExpressionBooleanLit expressionBooleanLit, Object arg) {
+        owned.add(expressionBooleanLit);
+        fingerprint.append(expressionBooleanLit.firstToken.getText()).append(' ');
+        return null;
+    }
+
+    @Override
+    public Object visitIdent(Ident ident, Object arg) {
+        reference(ident.getDec(), String.valueOf(ident.getText()));
+        return null;
+    }
+}
@@ -9,7 +9,7 @@ import static edu.ufl.cise.plpfa22.ast.Types.Type;
 
 
 public class TypeChecker implements ASTVisitor {
-    private boolean isTreeTraversedOnce = false;
+    boolean isTreeTraversedOnce = false;
     private boolean isAnyChangesMade = false;
     private int loopCount = 0;
 
@@ -45,7 +45,7 @@ public class TypeChecker implements ASTVisitor {
     public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
         Types.Type expressionType = (Type) statementAssign.expression.visit(this, arg);
         Declaration identDec = statementAssign.ident.getDec();
-        Types.Type identType = identDec.getType();
+        Types.Type identType = typeOf(identDec);
 
         if (identType != null && expressionType != null && identType != expressionType) {
             throw new TypeCheckException("Type mismatch: Expected:" + identType + " but found " + expressionType);
@@ -62,7 +62,7 @@ public class TypeChecker implements ASTVisitor {
         // Type can be inferred from the RHS or LHS. If RHS type unknown, infer from LHS (if known).
         // If LHS type unknown, infer from RHS (if known).
         if (expressionType != null && identType == null) {
-            identDec.setType(expressionType);
+            setTypeOf(identDec, expressionType);
             isAnyChangesMade = true;
         } else if (identType != null && expressionType == null) {
             statementAssign.expression.setType(identType);
@@ -70,7 +70,7 @@ public class TypeChecker implements ASTVisitor {
         } else {
             isAnyChangesMade = false;
         }
-        printOutput("Typechecker visitStatementAssign identType:" + identDec.getType() + " expression type:" + statementAssign.expression.getType());
+        printOutput("Typechecker visitStatementAssign identType:" + typeOf(identDec) + " expression type:" + statementAssign.expression.getType());
         return statementAssign.expression.getType();
     }
 
@@ -81,7 +81,7 @@ public class TypeChecker implements ASTVisitor {
 
     @Override
     public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
-        Types.Type type = statementCall.ident.getDec().getType();
+        Types.Type type = typeOf(statementCall.ident.getDec());
         if (isTreeTraversedOnce && type != Types.Type.PROCEDURE) {
             throw new TypeCheckException("Expected PROCEDURE type but found " + type);
         }
@@ -97,7 +97,7 @@ public class TypeChecker implements ASTVisitor {
 
     @Override
     public Object visitStatementInput(StatementInput statementInput, Object arg) throws PLPException {
-        Types.Type type = statementInput.ident.dec.getType();
+        Types.Type type = typeOf(statementInput.ident.dec);
         printOutput("TypeChecker - visitStatementInput: Type:" + type);
         if (statementInput.ident.getDec() instanceof ConstDec) {
             throw new TypeCheckException("StatementInput type cannot contain CONST");
@@ -123,7 +123,7 @@ public class TypeChecker implements ASTVisitor {
         if (statementOutput.expression instanceof ExpressionIdent) {
             Declaration declaration = ((ExpressionIdent) statementOutput.expression).getDec();
 
-            Types.Type type = declaration.getType();
+            Types.Type type = typeOf(declaration);
             printOutput("Typechecker - visitStatementOutput type:" + type);
             if (isTreeTraversedOnce && !isStatementOutputType(type)) {
                 throw new TypeCheckException("StatementOutput type should be Number, String or Boolean");
@@ -212,12 +212,12 @@ public class TypeChecker implements ASTVisitor {
         if (type1 == null && type2 != null) {
             leftExpr.setType(type2);
             if (leftExpr instanceof ExpressionIdent) {
-                ((ExpressionIdent) leftExpr).getDec().setType(type2);
+                setTypeOf(((ExpressionIdent) leftExpr).getDec(), type2);
             }
         } else if (type1 != null && type2 == null) {
             rightExpr.setType(type1);
             if (rightExpr instanceof ExpressionIdent) {
-                ((ExpressionIdent) rightExpr).getDec().setType(type1);
+                setTypeOf(((ExpressionIdent) rightExpr).getDec(), type1);
             }
         }
 
@@ -261,7 +261,7 @@ public class TypeChecker implements ASTVisitor {
 
     private void setExpressionType(Type type, Expression expression, ExpressionBinary expressionBinary) {
         if (expression instanceof ExpressionIdent) {
-            ((ExpressionIdent) expression).getDec().setType(type);
+            setTypeOf(((ExpressionIdent) expression).getDec(), type);
             expression.setType(type);
         } else if (expression instanceof ExpressionBinary) {
             Expression e0 = ((ExpressionBinary) expression).e0;
@@ -281,7 +281,7 @@ public class TypeChecker implements ASTVisitor {
     @Override
     public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) throws PLPException {
         Declaration declaration = expressionIdent.getDec();
-        Type declarationType = declaration.getType();
+        Type declarationType = typeOf(declaration);
         Type identType = expressionIdent.getType();
         isAnyChangesMade = declarationType == null || identType == null;
 
@@ -289,10 +289,10 @@ public class TypeChecker implements ASTVisitor {
             expressionIdent.setType(declarationType);
         }
         else if (declarationType == null) {
-            declaration.setType(identType);
+            setTypeOf(declaration, identType);
         }
 
-        return expressionIdent.getDec().getType();
+        return typeOf(expressionIdent.getDec());
     }
 
     @Override
@@ -362,4 +362,14 @@ public class TypeChecker implements ASTVisitor {
     public Object visitIdent(Ident ident, Object arg) throws PLPException {
         return null;
     }
+
+    // All reads and writes of declaration types go through these two, so that the parallel
+    // checker can redirect declarations owned by other procedures
+    Type typeOf(Declaration declaration) {
+        return declaration.getType();
+    }
+
+    void setTypeOf(Declaration declaration, Type type) {
+        declaration.setType(type);
+    }
 }
@@ -17,4 +17,12 @@ public class Types {
 		};
 	}
 
+	/**
+	 * The JVM type of a variable of the given type. With ropes, a string is held as a PLPString, which
+	 * appends without copying.
+	 */
+	public static String getJvmType(Type type, boolean ropes) {
+		return ropes && type == Type.STRING ? "Ledu/ufl/cise/plpfa22/PLPString;" : getJvmType(type);
+	}
+
 }
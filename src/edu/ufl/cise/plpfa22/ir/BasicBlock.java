@@ -0,0 +1,93 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Straight-line sequence of instructions: phis first, then the body, then a terminator.
+ */
+public class BasicBlock {
+
+    final int index;
+    final List<Phi> phis = new ArrayList<>();
+    final List<Instruction> instructions = new ArrayList<>();
+    final List<BasicBlock> predecessors = new ArrayList<>();
+    Terminator terminator;
+
+    BasicBlock(int index) {
+        this.index = index;
+    }
+
+    public String getName() {
+        return "b" + index;
+    }
+
+    public List<Phi> getPhis() {
+        return Collections.unmodifiableList(phis);
+    }
+
+    /**
+     * Instructions between the phis and the terminator.
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public List<BasicBlock> getPredecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+    public List<BasicBlock> getSuccessors() {
+        return terminator == null ? List.of() : terminator.getSuccessors();
+    }
+
+    public Terminator getTerminator() {
+        return terminator;
+    }
+
+    public <T extends Instruction> T append(T instruction) {
+        instruction.block = this;
+        instructions.add(instruction);
+        return instruction;
+    }
+
+    public void insert(int index, Instruction instruction) {
+        instruction.block = this;
+        instructions.add(index, instruction);
+    }
+
+    public Phi addPhi(Phi phi) {
+        phi.block = this;
+        phis.add(phi);
+        return phi;
+    }
+
+    public void removePhi(Phi phi) {
+        phis.remove(phi);
+    }
+
+    /**
+     * Ends the block, adding it to the predecessors of the blocks the terminator goes to.
+     */
+    public void terminate(Terminator terminator) {
+        terminator.block = this;
+        this.terminator = terminator;
+        for (BasicBlock successor : terminator.getSuccessors()) {
+            successor.predecessors.add(this);
+        }
+    }
+
+    /**
+     * Replaces the terminator without changing the predecessors of any block; edges that go away
+     * must be removed with {@link IrFunction#removeEdge}.
+     */
+    public void replaceTerminator(Terminator terminator) {
+        terminator.block = this;
+        this.terminator = terminator;
+    }
+
+    public boolean isTerminated() {
+        return terminator != null;
+    }
+}
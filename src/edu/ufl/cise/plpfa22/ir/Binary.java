@@ -0,0 +1,87 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import edu.ufl.cise.plpfa22.IToken.Kind;
+
+/**
+ * Binary operation. Both operands have the operand type; comparisons produce a boolean.
+ *
+ * On booleans ADD and MUL are the PL/0 OR and AND, false orders before true. On strings ADD is
+ * concatenation and the relations are prefix and suffix tests: a < b if b starts with a and
+ * differs from it, a > b if a ends with b and differs from it.
+ */
+public class Binary extends Instruction {
+
+    public enum Op {
+        ADD, SUB, MUL, DIV, MOD, EQ, NE, LT, LE, GT, GE;
+
+        public boolean isComparison() {
+            return ordinal() >= EQ.ordinal();
+        }
+
+        public static Op of(Kind kind) {
+            return switch (kind) {
+                case PLUS -> ADD;
+                case MINUS -> SUB;
+                case TIMES -> MUL;
+                case DIV -> DIV;
+                case MOD -> MOD;
+                case EQ -> EQ;
+                case NEQ -> NE;
+                case LT -> LT;
+                case LE -> LE;
+                case GT -> GT;
+                case GE -> GE;
+                default -> throw new IllegalArgumentException("not a binary operator: " + kind);
+            };
+        }
+    }
+
+    private final Op op;
+    private final IrType operandType;
+
+    public Binary(Op op, IrType operandType, Value left, Value right) {
+        super(op.isComparison() ? IrType.BOOLEAN : operandType, left, right);
+        this.op = op;
+        this.operandType = operandType;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public IrType getOperandType() {
+        return operandType;
+    }
+
+    public Value getLeft() {
+        return operands.get(0);
+    }
+
+    public Value getRight() {
+        return operands.get(1);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return switch (operandType) {
+            // division by zero
+            case INT -> op == Op.DIV || op == Op.MOD;
+            case BOOLEAN -> false;
+            // equals accepts a null argument, concat, startsWith and endsWith do not
+            case STRING -> op == Op.EQ || op == Op.NE
+                    ? !isNonNull(getLeft())
+                    : !isNonNull(getLeft()) || !isNonNull(getRight());
+        };
+    }
+
+    // a string that cannot be null: a literal or a concatenation
+    private static boolean isNonNull(Value value) {
+        return value instanceof Constant constant && constant.getValue() != null
+                || value instanceof Binary binary && binary.operandType == IrType.STRING && binary.op == Op.ADD;
+    }
+
+    @Override
+    String describe() {
+        return op.name().toLowerCase() + " " + operandType.name().toLowerCase() + " " + operandList();
+    }
+}
@@ -0,0 +1,50 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.List;
+
+/**
+ * Goes to one of two blocks depending on a boolean value.
+ */
+public class Branch extends Terminator {
+
+    private BasicBlock ifTrue;
+    private BasicBlock ifFalse;
+
+    public Branch(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+        super(condition);
+        this.ifTrue = ifTrue;
+        this.ifFalse = ifFalse;
+    }
+
+    public Value getCondition() {
+        return operands.get(0);
+    }
+
+    public BasicBlock getIfTrue() {
+        return ifTrue;
+    }
+
+    public BasicBlock getIfFalse() {
+        return ifFalse;
+    }
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return List.of(ifTrue, ifFalse);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+        if (ifTrue == from) {
+            ifTrue = to;
+        }
+        if (ifFalse == from) {
+            ifFalse = to;
+        }
+    }
+
+    @Override
+    String describe() {
+        return "branch " + getCondition() + ", " + ifTrue.getName() + ", " + ifFalse.getName();
+    }
+}
@@ -0,0 +1,28 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * Runs a procedure on a new instance of its class. Any field may change.
+ */
+public class Call extends Instruction {
+
+    private final CallTarget target;
+
+    public Call(CallTarget target) {
+        super(null);
+        this.target = target;
+    }
+
+    public CallTarget getTarget() {
+        return target;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    String describe() {
+        return "call " + target;
+    }
+}
@@ -0,0 +1,12 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * Class of a called procedure, and the depth of the instance it is created with as enclosing instance.
+ */
+public record CallTarget(String className, String parentClassName, int parentDepth) {
+
+    @Override
+    public String toString() {
+        return className.substring(className.lastIndexOf('/') + 1);
+    }
+}
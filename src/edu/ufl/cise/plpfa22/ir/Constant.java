@@ -0,0 +1,80 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.Objects;
+
+/**
+ * Compile-time constant. The value is an Integer, Boolean or String; a null string is the
+ * value of a string variable that was never assigned.
+ */
+public class Constant extends Value {
+
+    private final Object value;
+
+    private Constant(IrType type, Object value) {
+        super(type);
+        this.value = value;
+    }
+
+    public static Constant of(int value) {
+        return new Constant(IrType.INT, value);
+    }
+
+    public static Constant of(boolean value) {
+        return new Constant(IrType.BOOLEAN, value);
+    }
+
+    public static Constant of(String value) {
+        return new Constant(IrType.STRING, value);
+    }
+
+    public static Constant of(Object value) {
+        if (value instanceof Integer i) {
+            return of(i.intValue());
+        }
+        if (value instanceof Boolean b) {
+            return of(b.booleanValue());
+        }
+        return of((String) value);
+    }
+
+    /**
+     * Initial value of a variable of the given type, as in a fresh JVM field.
+     */
+    public static Constant defaultValue(IrType type) {
+        return switch (type) {
+            case INT -> of(0);
+            case BOOLEAN -> of(false);
+            case STRING -> new Constant(IrType.STRING, null);
+        };
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public int intValue() {
+        return (Integer) value;
+    }
+
+    public boolean booleanValue() {
+        return (Boolean) value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Constant other && type == other.type && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, value);
+    }
+
+    @Override
+    public String toString() {
+        if (type == IrType.STRING && value != null) {
+            return '"' + ((String) value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+        }
+        return String.valueOf(value);
+    }
+}
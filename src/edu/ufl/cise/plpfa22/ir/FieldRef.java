@@ -0,0 +1,13 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * Field of the instance of a procedure class. The instance is found by following the chain of
+ * enclosing instances from the current function up to the given depth.
+ */
+public record FieldRef(String owner, String name, IrType type, int depth) {
+
+    @Override
+    public String toString() {
+        return owner.substring(owner.lastIndexOf('/') + 1) + "." + name;
+    }
+}
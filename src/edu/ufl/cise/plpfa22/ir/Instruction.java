@@ -0,0 +1,57 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instruction of a basic block. Instructions with a type define a value; the others only have an effect.
+ */
+public abstract class Instruction extends Value {
+
+    final List<Value> operands = new ArrayList<>();
+    BasicBlock block;
+
+    protected Instruction(IrType type, Value... operands) {
+        super(type);
+        Collections.addAll(this.operands, operands);
+    }
+
+    public List<Value> getOperands() {
+        return Collections.unmodifiableList(operands);
+    }
+
+    public Value getOperand(int index) {
+        return operands.get(index);
+    }
+
+    public void setOperand(int index, Value value) {
+        operands.set(index, value);
+    }
+
+    public BasicBlock getBlock() {
+        return block;
+    }
+
+    /**
+     * True if the instruction does anything besides computing its value, including throwing an exception.
+     * Such instructions may not be removed or reordered with other side effects.
+     */
+    public abstract boolean hasSideEffects();
+
+    /**
+     * Text of the instruction without the defined value, for {@link IrFunction#toString()}.
+     */
+    abstract String describe();
+
+    String operandList() {
+        StringBuilder sb = new StringBuilder();
+        for (Value operand : operands) {
+            if (!sb.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append(operand);
+        }
+        return sb.toString();
+    }
+}
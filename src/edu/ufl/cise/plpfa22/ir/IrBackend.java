@@ -0,0 +1,383 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import edu.ufl.cise.plpfa22.CodeGenUtils;
+import edu.ufl.cise.plpfa22.CodeGenVisitor;
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.PLPRuntime;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates classes from the IR with the same layout as {@link edu.ufl.cise.plpfa22.CodeGenVisitor}:
+ * one Runnable class per block, a field per typed variable and constant, a this$N field holding
+ * the enclosing instance, and a static main method in the main class.
+ *
+ * SSA values live in JVM locals. Phis are resolved with copies on the incoming edges, which go
+ * through the operand stack so that phis reading each other see the values from before the edge.
+ */
+public class IrBackend implements Opcodes {
+
+    private static final String JAVA_LANG_STRING = "java/lang/String";
+
+    public static List<CodeGenUtils.GenClass> generate(IrModule module) {
+        return generate(module, new CompilerOptions());
+    }
+
+    public static List<CodeGenUtils.GenClass> generate(IrModule module, CompilerOptions options) {
+        List<CodeGenUtils.GenClass> classes = new ArrayList<>();
+        for (IrFunction function : module.getFunctions()) {
+            classes.add(new CodeGenUtils.GenClass(function.getClassName(), new IrBackend(function, options).generateClass()));
+        }
+        return classes;
+    }
+
+    private final IrFunction function;
+    private final boolean staticConstants;
+    private final boolean stringIntrinsics;
+    private final Map<Value, Integer> slots = new HashMap<>();
+    private final Map<BasicBlock, Label> labels = new HashMap<>();
+    private MethodVisitor mv;
+
+    private IrBackend(IrFunction function, CompilerOptions options) {
+        this.function = function;
+        this.staticConstants = options.isEnabled(CodeGenVisitor.STATIC_CONSTANTS, CompilerOptions.OptLevel.O1);
+        this.stringIntrinsics = options.isEnabled(CodeGenVisitor.STRING_INTRINSICS, CompilerOptions.OptLevel.O1);
+    }
+
+    private byte[] generateClass() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        String className = function.getClassName();
+        classWriter.visit(V18, ACC_PUBLIC | ACC_SUPER, className, null, "java/lang/Object", new String[]{"java/lang/Runnable"});
+
+        for (IrFunction.FieldDecl field : function.getFields()) {
+            boolean isStatic = staticConstants && field.constantValue() != null;
+            FieldVisitor fieldVisitor = classWriter.visitField(isStatic ? ACC_PUBLIC | ACC_STATIC | ACC_FINAL : ACC_PUBLIC,
+                    field.name(), field.type().getDescriptor(), null, isStatic ? field.constantValue() : null);
+            fieldVisitor.visitEnd();
+        }
+        if (function.getParentClassName() == null) {
+            generateInit(classWriter, null);
+            generateMain(classWriter);
+        } else {
+            String parentDesc = "L" + function.getParentClassName() + ";";
+            FieldVisitor fieldVisitor = classWriter.visitField(ACC_PUBLIC, "this$" + (function.getDepth() - 1), parentDesc, null, null);
+            fieldVisitor.visitEnd();
+            generateInit(classWriter, parentDesc);
+        }
+
+        mv = classWriter.visitMethod(ACC_PUBLIC, "run", "()V", null, null);
+        mv.visitCode();
+        for (IrFunction.FieldDecl field : function.getFields()) {
+            if (field.constantValue() != null && !staticConstants) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitLdcInsn(field.constantValue());
+                mv.visitFieldInsn(PUTFIELD, className, field.name(), field.type().getDescriptor());
+            }
+        }
+        generateBody();
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private void generateInit(ClassWriter classWriter, String parentDesc) {
+        MethodVisitor init = classWriter.visitMethod(ACC_PUBLIC, "<init>", parentDesc == null ? "()V" : "(" + parentDesc + ")V", null, null);
+        init.visitCode();
+        if (parentDesc != null) {
+            init.visitVarInsn(ALOAD, 0);
+            init.visitVarInsn(ALOAD, 1);
+            init.visitFieldInsn(PUTFIELD, function.getClassName(), "this$" + (function.getDepth() - 1), parentDesc);
+        }
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    private void generateMain(ClassWriter classWriter) {
+        MethodVisitor main = classWriter.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        main.visitCode();
+        main.visitTypeInsn(NEW, function.getClassName());
+        main.visitInsn(DUP);
+        main.visitMethodInsn(INVOKESPECIAL, function.getClassName(), "<init>", "()V", false);
+        main.visitMethodInsn(INVOKEVIRTUAL, function.getClassName(), "run", "()V", false);
+        main.visitInsn(RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+    }
+
+    private void generateBody() {
+        Set<Value> used = new HashSet<>();
+        for (BasicBlock block : function.getBlocks()) {
+            labels.put(block, new Label());
+            List<Instruction> all = new ArrayList<>(block.getPhis());
+            all.addAll(block.getInstructions());
+            all.add(block.getTerminator());
+            for (Instruction instruction : all) {
+                used.addAll(instruction.getOperands());
+            }
+        }
+        int nextSlot = 1;
+        for (BasicBlock block : function.getBlocks()) {
+            for (Phi phi : block.getPhis()) {
+                slots.put(phi, nextSlot++);
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.getType() != null && used.contains(instruction)) {
+                    slots.put(instruction, nextSlot++);
+                }
+            }
+        }
+
+        List<BasicBlock> blocks = function.getBlocks();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            mv.visitLabel(labels.get(block));
+            for (Instruction instruction : block.getInstructions()) {
+                generate(instruction);
+                if (instruction.getType() != null) {
+                    if (slots.containsKey(instruction)) {
+                        mv.visitVarInsn(storeOpcode(instruction.getType()), slots.get(instruction));
+                    } else {
+                        mv.visitInsn(POP);
+                    }
+                }
+            }
+            generateTerminator(block, next);
+        }
+    }
+
+    private void generateTerminator(BasicBlock block, BasicBlock next) {
+        Terminator terminator = block.getTerminator();
+        if (terminator instanceof Return) {
+            mv.visitInsn(RETURN);
+        } else if (terminator instanceof Jump jump) {
+            copyPhis(block, jump.getTarget());
+            if (jump.getTarget() != next) {
+                mv.visitJumpInsn(GOTO, labels.get(jump.getTarget()));
+            }
+        } else if (terminator instanceof Branch branch) {
+            load(branch.getCondition());
+            BasicBlock ifTrue = branch.getIfTrue();
+            BasicBlock ifFalse = branch.getIfFalse();
+            if (ifFalse.getPhis().isEmpty()) {
+                mv.visitJumpInsn(IFEQ, labels.get(ifFalse));
+                copyPhis(block, ifTrue);
+                if (ifTrue != next) {
+                    mv.visitJumpInsn(GOTO, labels.get(ifTrue));
+                }
+            } else {
+                Label falseEdge = new Label();
+                mv.visitJumpInsn(IFEQ, falseEdge);
+                copyPhis(block, ifTrue);
+                mv.visitJumpInsn(GOTO, labels.get(ifTrue));
+                mv.visitLabel(falseEdge);
+                copyPhis(block, ifFalse);
+                if (ifFalse != next) {
+                    mv.visitJumpInsn(GOTO, labels.get(ifFalse));
+                }
+            }
+        }
+    }
+
+    private void copyPhis(BasicBlock from, BasicBlock to) {
+        List<Phi> phis = to.getPhis();
+        for (Phi phi : phis) {
+            load(phi.getIncoming(from));
+        }
+        for (int i = phis.size() - 1; i >= 0; i--) {
+            mv.visitVarInsn(storeOpcode(phis.get(i).getType()), slots.get(phis.get(i)));
+        }
+    }
+
+    private void generate(Instruction instruction) {
+        if (instruction instanceof Binary binary) {
+            generateBinary(binary);
+        } else if (instruction instanceof LoadField loadField) {
+            FieldRef field = loadField.getField();
+            loadInstance(field.depth());
+            mv.visitFieldInsn(GETFIELD, field.owner(), field.name(), field.type().getDescriptor());
+        } else if (instruction instanceof StoreField storeField) {
+            FieldRef field = storeField.getField();
+            loadInstance(field.depth());
+            load(storeField.getValue());
+            mv.visitFieldInsn(PUTFIELD, field.owner(), field.name(), field.type().getDescriptor());
+        } else if (instruction instanceof Call call) {
+            CallTarget target = call.getTarget();
+            mv.visitTypeInsn(NEW, target.className());
+            mv.visitInsn(DUP);
+            loadInstance(target.parentDepth());
+            mv.visitMethodInsn(INVOKESPECIAL, target.className(), "<init>", "(L" + target.parentClassName() + ";)V", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, target.className(), "run", "()V", false);
+        } else if (instruction instanceof Print print) {
+            mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            load(print.getValue());
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(" + print.getValue().getType().getDescriptor() + ")V", false);
+        } else {
+            throw new IllegalStateException("unexpected instruction " + instruction.describe());
+        }
+    }
+
+    // Pushes the instance of the class at the given depth by following this$N fields
+    private void loadInstance(int depth) {
+        List<String> enclosing = function.getEnclosingClasses();
+        mv.visitVarInsn(ALOAD, 0);
+        for (int level = function.getDepth(); level > depth; level--) {
+            mv.visitFieldInsn(GETFIELD, enclosing.get(level), "this$" + (level - 1), "L" + enclosing.get(level - 1) + ";");
+        }
+    }
+
+    private void generateBinary(Binary binary) {
+        Value left = binary.getLeft();
+        Value right = binary.getRight();
+        switch (binary.getOperandType()) {
+            case INT, BOOLEAN -> {
+                load(left);
+                load(right);
+                switch (binary.getOp()) {
+                    case ADD -> mv.visitInsn(binary.getOperandType() == IrType.INT ? IADD : IOR);
+                    case SUB -> mv.visitInsn(ISUB);
+                    case MUL -> mv.visitInsn(binary.getOperandType() == IrType.INT ? IMUL : IAND);
+                    case DIV -> mv.visitInsn(IDIV);
+                    case MOD -> mv.visitInsn(IREM);
+                    case EQ -> compare(IF_ICMPNE);
+                    case NE -> compare(IF_ICMPEQ);
+                    case LT -> compare(IF_ICMPGE);
+                    case LE -> compare(IF_ICMPGT);
+                    case GT -> compare(IF_ICMPLE);
+                    case GE -> compare(IF_ICMPLT);
+                }
+            }
+            case STRING -> {
+                switch (binary.getOp()) {
+                    case ADD -> {
+                        load(left);
+                        load(right);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, JAVA_LANG_STRING, "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+                    }
+                    case EQ -> stringEquals(left, right);
+                    case NE -> {
+                        stringEquals(left, right);
+                        not();
+                    }
+                    case LT, LE, GT, GE -> {
+                        if (stringIntrinsics) {
+                            stringRelation(binary.getOp(), left, right);
+                        } else {
+                            stringTests(binary.getOp(), left, right);
+                        }
+                    }
+                    default -> throw new IllegalStateException("unexpected string operator " + binary.getOp());
+                }
+            }
+        }
+    }
+
+    private void stringTests(Binary.Op op, Value left, Value right) {
+        switch (op) {
+            case LT -> {
+                stringTest(right, "startsWith", left);
+                stringEquals(right, left);
+                not();
+                mv.visitInsn(IAND);
+            }
+            case LE -> stringTest(right, "startsWith", left);
+            case GT -> {
+                stringTest(left, "endsWith", right);
+                stringEquals(left, right);
+                not();
+                mv.visitInsn(IAND);
+            }
+            case GE -> stringTest(left, "endsWith", right);
+            default -> throw new IllegalStateException("unexpected string operator " + op);
+        }
+    }
+
+    private void stringRelation(Binary.Op op, Value left, Value right) {
+        load(left);
+        load(right);
+        String relation = switch (op) {
+            case LT -> "isProperPrefix";
+            case LE -> "isPrefix";
+            case GT -> "hasProperSuffix";
+            case GE -> "hasSuffix";
+            default -> throw new IllegalStateException("unexpected string operator " + op);
+        };
+        mv.visitMethodInsn(INVOKESTATIC, PLPRuntime.CLASS_NAME, relation, "(Ljava/lang/String;Ljava/lang/String;)Z", false);
+    }
+
+    private void compare(int falseOpcode) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        mv.visitJumpInsn(falseOpcode, isFalse);
+        mv.visitInsn(ICONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitInsn(ICONST_0);
+        mv.visitLabel(end);
+    }
+
+    private void not() {
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IXOR);
+    }
+
+    private void stringEquals(Value receiver, Value argument) {
+        load(receiver);
+        load(argument);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z", false);
+    }
+
+    private void stringTest(Value receiver, String method, Value argument) {
+        load(receiver);
+        load(argument);
+        mv.visitMethodInsn(INVOKEVIRTUAL, JAVA_LANG_STRING, method, "(Ljava/lang/String;)Z", false);
+    }
+
+    private void load(Value value) {
+        if (value instanceof Constant constant) {
+            Object v = constant.getValue();
+            if (v == null) {
+                mv.visitInsn(ACONST_NULL);
+            } else if (v instanceof Boolean b) {
+                mv.visitInsn(b ? ICONST_1 : ICONST_0);
+            } else if (v instanceof Integer i) {
+                pushInt(i);
+            } else {
+                mv.visitLdcInsn(v);
+            }
+            return;
+        }
+        mv.visitVarInsn(value.getType() == IrType.STRING ? ALOAD : ILOAD, slots.get(value));
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static int storeOpcode(IrType type) {
+        return type == IrType.STRING ? ASTORE : ISTORE;
+    }
+}
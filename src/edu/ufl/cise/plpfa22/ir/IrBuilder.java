@@ -0,0 +1,349 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lowers a checked program to SSA form.
+ *
+ * Variables declared by a block and not used by the procedures nested in it become SSA values;
+ * the others, and variables of enclosing blocks, are read and written through their fields.
+ * Constants are used as values. SSA is built while lowering, following Braun et al., "Simple and
+ * Efficient Construction of Static Single Assignment Form": blocks whose predecessors are not all
+ * known yet get placeholder phis that are completed when the block is sealed.
+ */
+public class IrBuilder implements ASTVisitor {
+
+    private final String mainClassName;
+    private final IrModule module = new IrModule();
+    private final Set<VarDec> captured = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<String> enclosingClasses = new ArrayList<>();
+
+    private IrFunction function;
+    private BasicBlock current;
+    private Set<VarDec> promoted;
+    private final Map<VarDec, Map<BasicBlock, Value>> currentDef = new IdentityHashMap<>();
+    private final Set<BasicBlock> sealed = new HashSet<>();
+    private final Map<BasicBlock, Map<VarDec, Phi>> incompletePhis = new HashMap<>();
+
+    private IrBuilder(String mainClassName) {
+        this.mainClassName = mainClassName;
+    }
+
+    public static IrModule build(Program program, String className, String packageName) throws PLPException {
+        IrBuilder builder = new IrBuilder(packageName + "/" + className);
+        program.visit(builder, null);
+        return builder.module;
+    }
+
+    @Override
+    public Object visitProgram(Program program, Object arg) throws PLPException {
+        program.visit(new CaptureFinder(), null);
+        module.getFunctions().add(null);
+        enclosingClasses.add(mainClassName);
+        IrFunction main = lowerBlock(program.block, mainClassName, null);
+        module.getFunctions().set(0, main);
+        return module;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+        String parentClassName = enclosingClasses.get(enclosingClasses.size() - 1);
+        String className = parentClassName + "$" + String.valueOf(procDec.ident.getText());
+        enclosingClasses.add(className);
+        module.getFunctions().add(lowerBlock(procDec.block, className, parentClassName));
+        return null;
+    }
+
+    private IrFunction lowerBlock(Block block, String className, String parentClassName) throws PLPException {
+        for (ProcDec procDec : block.procedureDecs) {
+            procDec.visit(this, null);
+        }
+
+        IrFunction saved = function;
+        BasicBlock savedCurrent = current;
+        Set<VarDec> savedPromoted = promoted;
+
+        function = new IrFunction(className, parentClassName, enclosingClasses);
+        promoted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ConstDec constDec : block.constDecs) {
+            function.getFields().add(new IrFunction.FieldDecl(String.valueOf(constDec.ident.getText()),
+                    IrType.of(constDec.getType()), constDec.val));
+        }
+        for (VarDec varDec : block.varDecs) {
+            if (varDec.getType() != null) {
+                function.getFields().add(new IrFunction.FieldDecl(String.valueOf(varDec.ident.getText()),
+                        IrType.of(varDec.getType()), null));
+                if (!captured.contains(varDec)) {
+                    promoted.add(varDec);
+                }
+            }
+        }
+
+        current = function.newBlock();
+        seal(current);
+        block.statement.visit(this, null);
+        current.terminate(new Return());
+        removeTrivialPhis(function);
+        function.renumber();
+
+        IrFunction result = function;
+        function = saved;
+        current = savedCurrent;
+        promoted = savedPromoted;
+        enclosingClasses.remove(enclosingClasses.size() - 1);
+        return result;
+    }
+
+    @Override
+    public Object visitBlock(Block block, Object arg) {
+        throw new IllegalStateException("blocks are lowered by lowerBlock");
+    }
+
+    @Override
+    public Object visitConstDec(ConstDec constDec, Object arg) {
+        return null;
+    }
+
+    @Override
+    public Object visitVarDec(VarDec varDec, Object arg) {
+        return null;
+    }
+
+    @Override
+    public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
+        Value value = (Value) statementAssign.expression.visit(this, arg);
+        VarDec varDec = (VarDec) statementAssign.ident.getDec();
+        if (promoted.contains(varDec)) {
+            writeVariable(varDec, current, value);
+        } else {
+            current.append(new StoreField(fieldOf(varDec), value));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitStatementCall(StatementCall statementCall, Object arg) {
+        ProcDec procDec = (ProcDec) statementCall.ident.getDec();
+        String parentClassName = enclosingClasses.get(procDec.getNest());
+        String className = parentClassName + "$" + String.valueOf(procDec.ident.getText());
+        current.append(new Call(new CallTarget(className, parentClassName, procDec.getNest())));
+        return null;
+    }
+
+    @Override
+    public Object visitStatementInput(StatementInput statementInput, Object arg) {
+        return null;
+    }
+
+    @Override
+    public Object visitStatementOutput(StatementOutput statementOutput, Object arg) throws PLPException {
+        current.append(new Print((Value) statementOutput.expression.visit(this, arg)));
+        return null;
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        for (Statement statement : statementBlock.statements) {
+            statement.visit(this, arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+        Value condition = (Value) statementIf.expression.visit(this, arg);
+        BasicBlock then = function.newBlock();
+        BasicBlock join = function.newBlock();
+        current.terminate(new Branch(condition, then, join));
+        seal(then);
+        current = then;
+        statementIf.statement.visit(this, arg);
+        current.terminate(new Jump(join));
+        seal(join);
+        current = join;
+        return null;
+    }
+
+    @Override
+    public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+        BasicBlock header = function.newBlock();
+        current.terminate(new Jump(header));
+        current = header;
+        Value condition = (Value) statementWhile.expression.visit(this, arg);
+        BasicBlock body = function.newBlock();
+        BasicBlock exit = function.newBlock();
+        current.terminate(new Branch(condition, body, exit));
+        seal(body);
+        current = body;
+        statementWhile.statement.visit(this, arg);
+        current.terminate(new Jump(header));
+        seal(header);
+        seal(exit);
+        current = exit;
+        return null;
+    }
+
+    @Override
+    public Object visitStatementEmpty(StatementEmpty statementEmpty, Object arg) {
+        return null;
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        Value left = (Value) expressionBinary.e0.visit(this, arg);
+        Value right = (Value) expressionBinary.e1.visit(this, arg);
+        return current.append(new Binary(Binary.Op.of(expressionBinary.op.getKind()), IrType.of(expressionBinary.e0.getType()),
+                left, right));
+    }
+
+    @Override
+    public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+        Declaration dec = expressionIdent.getDec();
+        if (dec instanceof ConstDec constDec) {
+            return Constant.of(constDec.val);
+        }
+        VarDec varDec = (VarDec) dec;
+        if (promoted.contains(varDec)) {
+            return readVariable(varDec, current);
+        }
+        return current.append(new LoadField(fieldOf(varDec)));
+    }
+
+    @Override
+    public Object visitExpressionNumLit(ExpressionNumLit expressionNumLit, Object arg) {
+        return Constant.of(expressionNumLit.getFirstToken().getIntValue());
+    }
+
+    @Override
+    public Object visitExpressionStringLit(ExpressionStringLit expressionStringLit, Object arg) {
+        return Constant.of(expressionStringLit.getFirstToken().getStringValue());
+    }
+
+    @Override
+    public Object visitExpressionBooleanLit(ExpressionBooleanLit expressionBooleanLit, Object arg) {
+        return Constant.of(expressionBooleanLit.getFirstToken().getBooleanValue());
+    }
+
+    @Override
+    public Object visitIdent(Ident ident, Object arg) {
+        return null;
+    }
+
+    private FieldRef fieldOf(VarDec varDec) {
+        int depth = varDec.getNest();
+        return new FieldRef(enclosingClasses.get(depth), String.valueOf(varDec.ident.getText()),
+                IrType.of(varDec.getType()), depth);
+    }
+
+    private void writeVariable(VarDec varDec, BasicBlock block, Value value) {
+        currentDef.computeIfAbsent(varDec, v -> new HashMap<>()).put(block, value);
+    }
+
+    private Value readVariable(VarDec varDec, BasicBlock block) {
+        Map<BasicBlock, Value> defs = currentDef.get(varDec);
+        if (defs != null && defs.containsKey(block)) {
+            return defs.get(block);
+        }
+        Value value;
+        if (!sealed.contains(block)) {
+            Phi phi = block.addPhi(new Phi(IrType.of(varDec.getType())));
+            incompletePhis.computeIfAbsent(block, b -> new HashMap<>()).put(varDec, phi);
+            value = phi;
+        } else if (block.predecessors.isEmpty()) {
+            value = Constant.defaultValue(IrType.of(varDec.getType()));
+        } else if (block.predecessors.size() == 1) {
+            value = readVariable(varDec, block.predecessors.get(0));
+        } else {
+            Phi phi = block.addPhi(new Phi(IrType.of(varDec.getType())));
+            writeVariable(varDec, block, phi);
+            addPhiOperands(varDec, phi);
+            value = phi;
+        }
+        writeVariable(varDec, block, value);
+        return value;
+    }
+
+    private void addPhiOperands(VarDec varDec, Phi phi) {
+        for (BasicBlock predecessor : phi.block.predecessors) {
+            phi.addIncoming(readVariable(varDec, predecessor));
+        }
+    }
+
+    private void seal(BasicBlock block) {
+        Map<VarDec, Phi> phis = incompletePhis.remove(block);
+        if (phis != null) {
+            for (Map.Entry<VarDec, Phi> entry : phis.entrySet()) {
+                addPhiOperands(entry.getKey(), entry.getValue());
+            }
+        }
+        sealed.add(block);
+    }
+
+    /**
+     * Removes phis whose operands are all the same value or the phi itself, until none are left.
+     * Returns true if any phi was removed.
+     */
+    public static boolean removeTrivialPhis(IrFunction function) {
+        boolean removed = false;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : function.getBlocks()) {
+                for (Phi phi : new ArrayList<>(block.getPhis())) {
+                    Value same = null;
+                    boolean trivial = true;
+                    for (Value operand : phi.getOperands()) {
+                        if (operand == phi || operand == same || operand.equals(same)) {
+                            continue;
+                        }
+                        if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = operand;
+                    }
+                    if (trivial) {
+                        block.removePhi(phi);
+                        function.replaceAllUses(phi, same != null ? same : Constant.defaultValue(phi.getType()));
+                        changed = true;
+                        removed = true;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Finds the variables used by procedures nested in the block that declares them.
+     */
+    private class CaptureFinder extends AstTraversalVisitor {
+        private void use(Declaration dec, int nest) {
+            if (dec instanceof VarDec varDec && nest > varDec.getNest()) {
+                captured.add(varDec);
+            }
+        }
+
+        @Override
+        public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+            use(expressionIdent.getDec(), expressionIdent.getNest());
+            return null;
+        }
+
+        @Override
+        public Object visitIdent(Ident ident, Object arg) {
+            use(ident.getDec(), ident.getNest());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.AstTraversalVisitor;
+import edu.ufl.cise.plpfa22.ast.Program;
+
+/**
+ * Code generator that goes through the IR: visiting a checked Program lowers it with
+ * {@link IrBuilder} and returns the classes from {@link IrBackend}, in the same form as
+ * {@link edu.ufl.cise.plpfa22.CodeGenVisitor}.
+ */
+public class IrCodeGenVisitor extends AstTraversalVisitor {
+
+    private final String className;
+    private final String packageName;
+    private IrModule module;
+
+    public IrCodeGenVisitor(String className, String packageName, String sourceFileName) {
+        this.className = className;
+        this.packageName = packageName;
+    }
+
+    @Override
+    public Object visitProgram(Program program, Object arg) throws PLPException {
+        module = IrBuilder.build(program, className, packageName);
+        for (IrFunction function : module.getFunctions()) {
+            function.verify();
+        }
+        return IrBackend.generate(module);
+    }
+
+    /**
+     * IR of the last program visited.
+     */
+    public IrModule getModule() {
+        return module;
+    }
+}
@@ -0,0 +1,247 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The run method of one generated class, with the fields the class declares.
+ *
+ * The main block is at depth 0 and a procedure body is one deeper than the block declaring the
+ * procedure. The enclosing classes list the class of every depth up to and including this one.
+ */
+public class IrFunction {
+
+    /**
+     * Field of the class. Constants are stored when run starts, as in the direct code generator.
+     */
+    public record FieldDecl(String name, IrType type, Object constantValue) {
+    }
+
+    private final String className;
+    private final String parentClassName;
+    private final int depth;
+    private final List<String> enclosingClasses;
+    private final List<FieldDecl> fields = new ArrayList<>();
+    final List<BasicBlock> blocks = new ArrayList<>();
+    private int nextBlock = 0;
+
+    public IrFunction(String className, String parentClassName, List<String> enclosingClasses) {
+        this.className = className;
+        this.parentClassName = parentClassName;
+        this.depth = enclosingClasses.size() - 1;
+        this.enclosingClasses = List.copyOf(enclosingClasses);
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Class of the enclosing instance, or null for the main class.
+     */
+    public String getParentClassName() {
+        return parentClassName;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public List<String> getEnclosingClasses() {
+        return enclosingClasses;
+    }
+
+    public List<FieldDecl> getFields() {
+        return fields;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    public BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(nextBlock++);
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Removes a block that has no predecessors, along with its edges to its successors.
+     */
+    public void removeBlock(BasicBlock block) {
+        for (BasicBlock successor : block.getSuccessors()) {
+            removeEdge(block, successor);
+        }
+        blocks.remove(block);
+    }
+
+    /**
+     * Removes a block from the predecessors of another, with the phi operands for that edge.
+     */
+    public void removeEdge(BasicBlock from, BasicBlock to) {
+        int index = to.predecessors.indexOf(from);
+        if (index < 0) {
+            return;
+        }
+        to.predecessors.remove(index);
+        for (Phi phi : to.phis) {
+            phi.operands.remove(index);
+        }
+    }
+
+    /**
+     * Replaces every use of a value in the function.
+     */
+    public void replaceAllUses(Value from, Value to) {
+        for (BasicBlock block : blocks) {
+            for (Phi phi : block.phis) {
+                replaceOperands(phi, from, to);
+            }
+            for (Instruction instruction : block.instructions) {
+                replaceOperands(instruction, from, to);
+            }
+            if (block.terminator != null) {
+                replaceOperands(block.terminator, from, to);
+            }
+        }
+    }
+
+    private static void replaceOperands(Instruction instruction, Value from, Value to) {
+        Collections.replaceAll(instruction.operands, from, to);
+    }
+
+    /**
+     * Replaces values by others, following chains, in every operand of the function.
+     */
+    public void replaceAllUses(Map<Value, Value> replacements) {
+        if (replacements.isEmpty()) {
+            return;
+        }
+        for (BasicBlock block : blocks) {
+            for (Phi phi : block.phis) {
+                replaceOperands(phi, replacements);
+            }
+            for (Instruction instruction : block.instructions) {
+                replaceOperands(instruction, replacements);
+            }
+            if (block.terminator != null) {
+                replaceOperands(block.terminator, replacements);
+            }
+        }
+    }
+
+    private static void replaceOperands(Instruction instruction, Map<Value, Value> replacements) {
+        for (int i = 0; i < instruction.operands.size(); i++) {
+            Value value = instruction.operands.get(i);
+            while (replacements.containsKey(value)) {
+                value = replacements.get(value);
+            }
+            instruction.operands.set(i, value);
+        }
+    }
+
+    /**
+     * Numbers the values and blocks in layout order.
+     */
+    public void renumber() {
+        int id = 0;
+        for (BasicBlock block : blocks) {
+            for (Phi phi : block.phis) {
+                phi.id = id++;
+            }
+            for (Instruction instruction : block.instructions) {
+                if (instruction.type != null) {
+                    instruction.id = id++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the function is well formed SSA: every block is terminated, phis have one operand
+     * per predecessor, edges agree with predecessor lists and every operand is a constant or defined
+     * in the function.
+     */
+    public void verify() {
+        Set<Value> defined = new HashSet<>();
+        for (BasicBlock block : blocks) {
+            defined.addAll(block.phis);
+            defined.addAll(block.instructions);
+        }
+        for (BasicBlock block : blocks) {
+            if (block.terminator == null) {
+                throw new IllegalStateException(className + " " + block.getName() + " is not terminated");
+            }
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (!blocks.contains(successor) || !successor.predecessors.contains(block)) {
+                    throw new IllegalStateException(className + " bad edge " + block.getName() + " -> " + successor.getName());
+                }
+            }
+            for (BasicBlock predecessor : block.predecessors) {
+                if (!predecessor.getSuccessors().contains(block)) {
+                    throw new IllegalStateException(className + " bad predecessor of " + block.getName());
+                }
+            }
+            for (Phi phi : block.phis) {
+                if (phi.operands.size() != block.predecessors.size()) {
+                    throw new IllegalStateException(className + " phi " + phi + " in " + block.getName() + " has wrong arity");
+                }
+            }
+            List<Instruction> all = new ArrayList<>(block.phis);
+            all.addAll(block.instructions);
+            all.add(block.terminator);
+            for (Instruction instruction : all) {
+                for (Value operand : instruction.operands) {
+                    if (!(operand instanceof Constant) && !defined.contains(operand)) {
+                        throw new IllegalStateException(className + " " + block.getName() + " uses undefined value");
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        renumber();
+        StringBuilder sb = new StringBuilder("function ").append(className).append('\n');
+        for (FieldDecl field : fields) {
+            sb.append("  field ").append(field.name()).append(' ').append(field.type().name().toLowerCase());
+            if (field.constantValue() != null) {
+                sb.append(" = ").append(Constant.of(field.constantValue()));
+            }
+            sb.append('\n');
+        }
+        for (BasicBlock block : blocks) {
+            sb.append(block.getName()).append(':');
+            if (!block.predecessors.isEmpty()) {
+                sb.append("  ; preds");
+                for (BasicBlock predecessor : block.predecessors) {
+                    sb.append(' ').append(predecessor.getName());
+                }
+            }
+            sb.append('\n');
+            for (Phi phi : block.phis) {
+                sb.append("  ").append(phi).append(" = ").append(phi.describe()).append('\n');
+            }
+            for (Instruction instruction : block.instructions) {
+                sb.append("  ");
+                if (instruction.type != null) {
+                    sb.append(instruction).append(" = ");
+                }
+                sb.append(instruction.describe()).append('\n');
+            }
+            if (block.terminator != null) {
+                sb.append("  ").append(block.terminator.describe()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
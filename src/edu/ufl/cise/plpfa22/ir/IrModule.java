@@ -0,0 +1,38 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IR of a whole program: the main class first, then the procedure classes, innermost first.
+ */
+public class IrModule {
+
+    private final List<IrFunction> functions = new ArrayList<>();
+
+    public List<IrFunction> getFunctions() {
+        return functions;
+    }
+
+    public IrFunction getMain() {
+        return functions.get(0);
+    }
+
+    public IrFunction getFunction(String className) {
+        for (IrFunction function : functions) {
+            if (function.getClassName().equals(className)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (IrFunction function : functions) {
+            sb.append(function).append('\n');
+        }
+        return sb.toString();
+    }
+}
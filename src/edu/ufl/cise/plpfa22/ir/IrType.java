@@ -0,0 +1,29 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+/**
+ * Types of IR values, with the JVM descriptor each is stored as.
+ */
+public enum IrType {
+    INT("I"), BOOLEAN("Z"), STRING("Ljava/lang/String;");
+
+    private final String descriptor;
+
+    IrType(String descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public static IrType of(Type type) {
+        return switch (type) {
+            case NUMBER -> INT;
+            case BOOLEAN -> BOOLEAN;
+            case STRING -> STRING;
+            case PROCEDURE -> throw new IllegalArgumentException("procedures have no value type");
+        };
+    }
+}
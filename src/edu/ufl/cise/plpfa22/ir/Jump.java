@@ -0,0 +1,33 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.List;
+
+public class Jump extends Terminator {
+
+    private BasicBlock target;
+
+    public Jump(BasicBlock target) {
+        this.target = target;
+    }
+
+    public BasicBlock getTarget() {
+        return target;
+    }
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return List.of(target);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+        if (target == from) {
+            target = to;
+        }
+    }
+
+    @Override
+    String describe() {
+        return "jump " + target.getName();
+    }
+}
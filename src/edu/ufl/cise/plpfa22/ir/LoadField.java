@@ -0,0 +1,29 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * Reads a variable that lives in a field: one declared by an enclosing block, or one that nested
+ * procedures use.
+ */
+public class LoadField extends Instruction {
+
+    private final FieldRef field;
+
+    public LoadField(FieldRef field) {
+        super(field.type());
+        this.field = field;
+    }
+
+    public FieldRef getField() {
+        return field;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return false;
+    }
+
+    @Override
+    String describe() {
+        return "load " + field;
+    }
+}
@@ -0,0 +1,36 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * SSA phi function. Operand i is the value flowing in from predecessor i of the block.
+ */
+public class Phi extends Instruction {
+
+    public Phi(IrType type) {
+        super(type);
+    }
+
+    public void addIncoming(Value value) {
+        operands.add(value);
+    }
+
+    public Value getIncoming(BasicBlock predecessor) {
+        return operands.get(block.predecessors.indexOf(predecessor));
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return false;
+    }
+
+    @Override
+    String describe() {
+        StringBuilder sb = new StringBuilder("phi ");
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('[').append(operands.get(i)).append(", ").append(block.predecessors.get(i).getName()).append(']');
+        }
+        return sb.toString();
+    }
+}
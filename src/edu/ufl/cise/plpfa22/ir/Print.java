@@ -0,0 +1,25 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * Prints a value followed by a line separator to System.out.
+ */
+public class Print extends Instruction {
+
+    public Print(Value value) {
+        super(null, value);
+    }
+
+    public Value getValue() {
+        return operands.get(0);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    String describe() {
+        return "print " + getValue();
+    }
+}
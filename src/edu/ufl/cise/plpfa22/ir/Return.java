@@ -0,0 +1,20 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.List;
+
+public class Return extends Terminator {
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return List.of();
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+    }
+
+    @Override
+    String describe() {
+        return "return";
+    }
+}
@@ -0,0 +1,29 @@
+package edu.ufl.cise.plpfa22.ir;
+
+public class StoreField extends Instruction {
+
+    private final FieldRef field;
+
+    public StoreField(FieldRef field, Value value) {
+        super(null, value);
+        this.field = field;
+    }
+
+    public FieldRef getField() {
+        return field;
+    }
+
+    public Value getValue() {
+        return operands.get(0);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    String describe() {
+        return "store " + field + ", " + getValue();
+    }
+}
@@ -0,0 +1,25 @@
+package edu.ufl.cise.plpfa22.ir;
+
+import java.util.List;
+
+/**
+ * Last instruction of a basic block, which decides where control goes next.
+ */
+public abstract class Terminator extends Instruction {
+
+    protected Terminator(Value... operands) {
+        super(null, operands);
+    }
+
+    public abstract List<BasicBlock> getSuccessors();
+
+    /**
+     * Redirects the edges to a successor to another block. Predecessor lists are not changed.
+     */
+    public abstract void replaceSuccessor(BasicBlock from, BasicBlock to);
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.ufl.cise.plpfa22.ir;
+
+/**
+ * A value in SSA form: defined exactly once, by a constant or an instruction.
+ */
+public abstract class Value {
+
+    final IrType type;
+    int id = -1;
+
+    protected Value(IrType type) {
+        this.type = type;
+    }
+
+    /**
+     * Type of the value, or null for instructions that only have an effect.
+     */
+    public IrType getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "%" + id;
+    }
+}
@@ -0,0 +1,157 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.IToken.Kind;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.analysis.Effects;
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+/**
+ * Simplifies NUMBER arithmetic with a literal operand, bottom up:
+ * <ul>
+ * <li>x + 0, 0 + x, x - 0, x * 1, 1 * x and x / 1 become x;</li>
+ * <li>x * 0, 0 * x and x % 1 become 0, and x - x becomes 0 for a variable x, when x cannot throw;</li>
+ * <li>constants are reassociated, so that (x + 1) - 3 becomes x - 2 and (2 * x) * 4 becomes x * 8.</li>
+ * </ul>
+ * Arithmetic wraps, so reassociation never changes a value. Runs after constant folding, which turns
+ * constants into literals; multiplication and division by powers of two are left to code generation.
+ */
+public class AlgebraicSimplification extends AstRewriter implements AstPass {
+
+    public static final String NAME = "simplify";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        return rewrite(program);
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        Expression rewritten = (Expression) super.visitExpressionBinary(expressionBinary, arg);
+        if (rewritten instanceof ExpressionBinary binary && binary.e0.getType() == Type.NUMBER) {
+            return simplify(binary);
+        }
+        return rewritten;
+    }
+
+    private static Expression simplify(ExpressionBinary binary) {
+        Expression x = binary.e0;
+        Expression y = binary.e1;
+        Integer left = intValue(x);
+        Integer right = intValue(y);
+        switch (binary.op.getKind()) {
+            case PLUS -> {
+                if (right != null) {
+                    return addConstant(x, right, binary);
+                }
+                if (left != null) {
+                    return addConstant(y, left, binary);
+                }
+            }
+            case MINUS -> {
+                if (right != null) {
+                    return addConstant(x, -right, binary);
+                }
+                if (x instanceof ExpressionIdent a && y instanceof ExpressionIdent b && a.getDec() == b.getDec()) {
+                    return literal(0, binary);
+                }
+            }
+            case TIMES -> {
+                if (right != null) {
+                    return multiplyConstant(x, right, binary);
+                }
+                if (left != null) {
+                    return multiplyConstant(y, left, binary);
+                }
+            }
+            case DIV -> {
+                if (right != null && right == 1) {
+                    return x;
+                }
+            }
+            case MOD -> {
+                if (right != null && right == 1 && !Effects.canThrow(x)) {
+                    return literal(0, binary);
+                }
+            }
+            default -> {
+            }
+        }
+        return binary;
+    }
+
+    // x + c, where x may itself add or subtract a constant
+    private static Expression addConstant(Expression x, int c, ExpressionBinary at) {
+        if (x instanceof ExpressionBinary inner && inner.e0.getType() == Type.NUMBER) {
+            Kind kind = inner.op.getKind();
+            Integer innerRight = intValue(inner.e1);
+            Integer innerLeft = intValue(inner.e0);
+            if (kind == Kind.PLUS && innerRight != null) {
+                return addConstant(inner.e0, innerRight + c, at);
+            }
+            if (kind == Kind.PLUS && innerLeft != null) {
+                return addConstant(inner.e1, innerLeft + c, at);
+            }
+            if (kind == Kind.MINUS && innerRight != null) {
+                return addConstant(inner.e0, c - innerRight, at);
+            }
+        }
+        if (c == 0) {
+            return x;
+        }
+        // x + MIN_VALUE and x - MIN_VALUE are the same value
+        return c < 0 && c != Integer.MIN_VALUE ? binary(x, Kind.MINUS, -c, at) : binary(x, Kind.PLUS, c, at);
+    }
+
+    // x * c, where x may itself multiply by a constant
+    private static Expression multiplyConstant(Expression x, int c, ExpressionBinary at) {
+        if (x instanceof ExpressionBinary inner && inner.e0.getType() == Type.NUMBER && inner.op.getKind() == Kind.TIMES) {
+            Integer innerRight = intValue(inner.e1);
+            Integer innerLeft = intValue(inner.e0);
+            if (innerRight != null) {
+                return multiplyConstant(inner.e0, innerRight * c, at);
+            }
+            if (innerLeft != null) {
+                return multiplyConstant(inner.e1, innerLeft * c, at);
+            }
+        }
+        if (c == 1) {
+            return x;
+        }
+        if (c == 0 && !Effects.canThrow(x)) {
+            return literal(0, at);
+        }
+        return binary(x, Kind.TIMES, c, at);
+    }
+
+    private static Expression binary(Expression x, Kind kind, int c, ExpressionBinary at) {
+        String text = switch (kind) {
+            case PLUS -> "+";
+            case MINUS -> "-";
+            default -> "*";
+        };
+        if (at.e0 == x && at.op.getKind() == kind && Integer.valueOf(c).equals(intValue(at.e1))) {
+            return at;
+        }
+        ExpressionBinary binary = new ExpressionBinary(x.getFirstToken(), x,
+                token(kind, text, at.op.getSourceLocation()), literal(c, at));
+        binary.setType(Type.NUMBER);
+        return binary;
+    }
+
+    private static Integer intValue(Expression expression) {
+        return expression instanceof ExpressionNumLit ? (Integer) literalValue(expression) : null;
+    }
+}
@@ -0,0 +1,126 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Deep copies of statements, for passes that duplicate code. Every node of a copy is new, so that
+ * later phases can tell the copies apart. A copy can move the identifiers to another nesting level,
+ * and replace the reads of one variable by other expressions.
+ */
+class AstCopier {
+
+    // -1 keeps the nesting level of every identifier
+    private final int nest;
+    private final Declaration variable;
+    private final Function<ExpressionIdent, Expression> value;
+
+    private AstCopier(int nest, Declaration variable, Function<ExpressionIdent, Expression> value) {
+        this.nest = nest;
+        this.variable = variable;
+        this.value = value;
+    }
+
+    /** Copier that makes the identifiers used at the given nesting level. */
+    static AstCopier atNest(int nest) {
+        return new AstCopier(nest, null, null);
+    }
+
+    /** Copier that replaces each read of the variable by the expression the function returns for it. */
+    static AstCopier substituting(Declaration variable, Function<ExpressionIdent, Expression> value) {
+        return new AstCopier(-1, variable, value);
+    }
+
+    Statement copy(Statement statement) {
+        if (statement instanceof StatementAssign assign) {
+            return new StatementAssign(assign.firstToken, copy(assign.ident), copy(assign.expression));
+        }
+        if (statement instanceof StatementCall call) {
+            return new StatementCall(call.firstToken, copy(call.ident));
+        }
+        if (statement instanceof StatementInput input) {
+            return new StatementInput(input.firstToken, copy(input.ident));
+        }
+        if (statement instanceof StatementOutput output) {
+            return new StatementOutput(output.firstToken, copy(output.expression));
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            List<Statement> statements = new ArrayList<>();
+            for (Statement nested : statementBlock.statements) {
+                statements.add(copy(nested));
+            }
+            return new StatementBlock(statementBlock.firstToken, statements);
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return new StatementIf(statementIf.firstToken, copy(statementIf.expression), copy(statementIf.statement));
+        }
+        if (statement instanceof StatementWhile statementWhile) {
+            return new StatementWhile(statementWhile.firstToken, copy(statementWhile.expression), copy(statementWhile.statement));
+        }
+        return new StatementEmpty(statement.firstToken);
+    }
+
+    Expression copy(Expression expression) {
+        Expression copy;
+        if (expression instanceof ExpressionIdent ident) {
+            if (ident.getDec() == variable) {
+                return value.apply(ident);
+            }
+            ExpressionIdent identCopy = new ExpressionIdent(ident.firstToken);
+            identCopy.setDec(ident.getDec());
+            identCopy.setNest(nest < 0 ? ident.getNest() : nest);
+            copy = identCopy;
+        } else if (expression instanceof ExpressionBinary binary) {
+            copy = new ExpressionBinary(binary.firstToken, copy(binary.e0), binary.op, copy(binary.e1));
+        } else if (expression instanceof ExpressionNumLit) {
+            copy = new ExpressionNumLit(expression.firstToken);
+        } else if (expression instanceof ExpressionBooleanLit) {
+            copy = new ExpressionBooleanLit(expression.firstToken);
+        } else {
+            copy = new ExpressionStringLit(expression.firstToken);
+        }
+        copy.setType(expression.getType());
+        return copy;
+    }
+
+    Ident copy(Ident ident) {
+        Ident copy = new Ident(ident.firstToken);
+        copy.setDec(ident.getDec());
+        copy.setNest(nest < 0 ? ident.getNest() : nest);
+        return copy;
+    }
+
+    /** Statements and expressions in the statement, the nodes a copy of it creates. */
+    static int size(Statement statement) {
+        if (statement instanceof StatementAssign assign) {
+            return 1 + size(assign.expression);
+        }
+        if (statement instanceof StatementOutput output) {
+            return 1 + size(output.expression);
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            int size = 1;
+            for (Statement nested : statementBlock.statements) {
+                size += size(nested);
+            }
+            return size;
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return 1 + size(statementIf.expression) + size(statementIf.statement);
+        }
+        if (statement instanceof StatementWhile statementWhile) {
+            return 1 + size(statementWhile.expression) + size(statementWhile.statement);
+        }
+        return 1;
+    }
+
+    static int size(Expression expression) {
+        if (expression instanceof ExpressionBinary binary) {
+            return 1 + size(binary.e0) + size(binary.e1);
+        }
+        return 1;
+    }
+}
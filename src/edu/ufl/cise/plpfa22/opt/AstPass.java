@@ -0,0 +1,14 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.Program;
+
+/**
+ * Pass over a scope and type checked program. The returned program, which may be the one passed
+ * in, must be checked as well: every identifier resolved and every expression typed.
+ */
+public interface AstPass extends Pass {
+
+    Program run(Program program, CompilerOptions options) throws PLPException;
+}
@@ -0,0 +1,259 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.IToken;
+import edu.ufl.cise.plpfa22.IToken.Kind;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.Token;
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class of passes that transform a checked program. Every visit method returns the node to
+ * use in place of the one visited; by default nodes are rebuilt from their rewritten children, and
+ * returned unchanged when none of the children changed. Subclasses override the nodes they
+ * transform. Returning null from visitConstDec, visitVarDec or visitProcedure removes the declaration.
+ *
+ * Rebuilt nodes carry over the annotations of the originals, so the result is checked. Unchanged
+ * subtrees are shared with the original program, which should not be used afterwards: calls to
+ * rebuilt procedures are redirected to them in place.
+ */
+public class AstRewriter implements ASTVisitor {
+
+    private final Map<ProcDec, ProcDec> rebuiltProcedures = new IdentityHashMap<>();
+
+    public Program rewrite(Program program) throws PLPException {
+        rebuiltProcedures.clear();
+        Program result = (Program) program.visit(this, null);
+        if (!rebuiltProcedures.isEmpty()) {
+            result.visit(new AstTraversalVisitor() {
+                @Override
+                public Object visitStatementCall(StatementCall statementCall, Object arg) {
+                    ProcDec rebuilt = rebuiltProcedures.get(statementCall.ident.getDec());
+                    if (rebuilt != null) {
+                        statementCall.ident.setDec(rebuilt);
+                    }
+                    return null;
+                }
+            }, null);
+        }
+        return result;
+    }
+
+    @Override
+    public Object visitProgram(Program program, Object arg) throws PLPException {
+        Block block = (Block) program.block.visit(this, arg);
+        return block == program.block ? program : new Program(program.firstToken, block);
+    }
+
+    @Override
+    public Object visitBlock(Block block, Object arg) throws PLPException {
+        List<ConstDec> constDecs = rewriteList(block.constDecs, arg);
+        List<VarDec> varDecs = rewriteList(block.varDecs, arg);
+        List<ProcDec> procDecs = rewriteList(block.procedureDecs, arg);
+        Statement statement = (Statement) block.statement.visit(this, arg);
+        if (constDecs == block.constDecs && varDecs == block.varDecs && procDecs == block.procedureDecs
+                && statement == block.statement) {
+            return block;
+        }
+        return new Block(block.firstToken, constDecs, varDecs, procDecs, statement);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ASTNode> List<T> rewriteList(List<T> nodes, Object arg) throws PLPException {
+        List<T> result = new ArrayList<>();
+        boolean changed = false;
+        for (T node : nodes) {
+            T rewritten = (T) node.visit(this, arg);
+            changed |= rewritten != node;
+            if (rewritten != null) {
+                result.add(rewritten);
+            }
+        }
+        return changed ? result : nodes;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+        Block block = (Block) procDec.block.visit(this, arg);
+        if (block == procDec.block) {
+            return procDec;
+        }
+        ProcDec rebuilt = new ProcDec(procDec.firstToken, procDec.ident, block);
+        copyDeclaration(procDec, rebuilt);
+        rebuiltProcedures.put(procDec, rebuilt);
+        return rebuilt;
+    }
+
+    protected static void copyDeclaration(Declaration from, Declaration to) {
+        if (from.getType() != null) {
+            to.setType(from.getType());
+        }
+        to.setNest(from.getNest());
+        if (from.getJvmType() != null) {
+            to.setJvmType(from.getJvmType());
+        }
+        to.setClassName(from.getClassName());
+        to.setClassDec(from.getClassDec());
+        to.setParentClassName(from.getParentClassName());
+    }
+
+    @Override
+    public Object visitConstDec(ConstDec constDec, Object arg) throws PLPException {
+        return constDec;
+    }
+
+    @Override
+    public Object visitVarDec(VarDec varDec, Object arg) throws PLPException {
+        return varDec;
+    }
+
+    @Override
+    public Object visitStatementAssign(StatementAssign statementAssign, Object arg) throws PLPException {
+        Expression expression = (Expression) statementAssign.expression.visit(this, arg);
+        return expression == statementAssign.expression ? statementAssign
+                : new StatementAssign(statementAssign.firstToken, statementAssign.ident, expression);
+    }
+
+    @Override
+    public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
+        return statementCall;
+    }
+
+    @Override
+    public Object visitStatementInput(StatementInput statementInput, Object arg) throws PLPException {
+        return statementInput;
+    }
+
+    @Override
+    public Object visitStatementOutput(StatementOutput statementOutput, Object arg) throws PLPException {
+        Expression expression = (Expression) statementOutput.expression.visit(this, arg);
+        return expression == statementOutput.expression ? statementOutput
+                : new StatementOutput(statementOutput.firstToken, expression);
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        List<Statement> statements = rewriteList(statementBlock.statements, arg);
+        return statements == statementBlock.statements ? statementBlock
+                : new StatementBlock(statementBlock.firstToken, statements);
+    }
+
+    @Override
+    public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+        Expression expression = (Expression) statementIf.expression.visit(this, arg);
+        Statement statement = (Statement) statementIf.statement.visit(this, arg);
+        return expression == statementIf.expression && statement == statementIf.statement ? statementIf
+                : new StatementIf(statementIf.firstToken, expression, statement);
+    }
+
+    @Override
+    public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+        Expression expression = (Expression) statementWhile.expression.visit(this, arg);
+        Statement statement = (Statement) statementWhile.statement.visit(this, arg);
+        return expression == statementWhile.expression && statement == statementWhile.statement ? statementWhile
+                : new StatementWhile(statementWhile.firstToken, expression, statement);
+    }
+
+    @Override
+    public Object visitStatementEmpty(StatementEmpty statementEmpty, Object arg) throws PLPException {
+        return statementEmpty;
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        Expression e0 = (Expression) expressionBinary.e0.visit(this, arg);
+        Expression e1 = (Expression) expressionBinary.e1.visit(this, arg);
+        if (e0 == expressionBinary.e0 && e1 == expressionBinary.e1) {
+            return expressionBinary;
+        }
+        ExpressionBinary rebuilt = new ExpressionBinary(expressionBinary.firstToken, e0, expressionBinary.op, e1);
+        rebuilt.setType(expressionBinary.getType());
+        return rebuilt;
+    }
+
+    @Override
+    public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) throws PLPException {
+        return expressionIdent;
+    }
+
+    @Override
+    public Object visitExpressionNumLit(ExpressionNumLit expressionNumLit, Object arg) throws PLPException {
+        return expressionNumLit;
+    }
+
+    @Override
+    public Object visitExpressionStringLit(ExpressionStringLit expressionStringLit, Object arg) throws PLPException {
+        return expressionStringLit;
+    }
+
+    @Override
+    public Object visitExpressionBooleanLit(ExpressionBooleanLit expressionBooleanLit, Object arg) throws PLPException {
+        return expressionBooleanLit;
+    }
+
+    @Override
+    public Object visitIdent(Ident ident, Object arg) throws PLPException {
+        return ident;
+    }
+
+    /**
+     * Value of a literal expression, or null if the expression is not a literal.
+     */
+    protected static Object literalValue(Expression expression) {
+        if (expression instanceof ExpressionNumLit) {
+            return expression.getFirstToken().getIntValue();
+        }
+        if (expression instanceof ExpressionBooleanLit) {
+            return expression.getFirstToken().getBooleanValue();
+        }
+        if (expression instanceof ExpressionStringLit) {
+            return expression.getFirstToken().getStringValue();
+        }
+        return null;
+    }
+
+    /**
+     * Typed literal for an Integer, Boolean or String value, located at the given node.
+     */
+    protected static Expression literal(Object value, ASTNode at) {
+        IToken.SourceLocation location = at.getFirstToken().getSourceLocation();
+        Expression literal;
+        if (value instanceof Integer i) {
+            literal = new ExpressionNumLit(token(Kind.NUM_LIT, Integer.toString(i), location));
+            literal.setType(Type.NUMBER);
+        } else if (value instanceof Boolean b) {
+            literal = new ExpressionBooleanLit(token(Kind.BOOLEAN_LIT, b ? "TRUE" : "FALSE", location));
+            literal.setType(Type.BOOLEAN);
+        } else {
+            literal = new ExpressionStringLit(token(Kind.STRING_LIT, quote((String) value), location));
+            literal.setType(Type.STRING);
+        }
+        return literal;
+    }
+
+    protected static IToken token(Kind kind, String text, IToken.SourceLocation location) {
+        return new Token(kind, text.toCharArray(), 0, text.length(), location);
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\b' -> sb.append("\\b");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\f' -> sb.append("\\f");
+                case '\r' -> sb.append("\\r");
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                default -> sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,72 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.ir.Binary.Op;
+import edu.ufl.cise.plpfa22.ir.IrType;
+
+/**
+ * Evaluates binary operations on constants exactly as the generated code does at run time.
+ */
+public final class ConstantEvaluator {
+
+    private ConstantEvaluator() {
+    }
+
+    /**
+     * Result of the operation on Integer, Boolean or String operands, or null if it has to be left
+     * to run time: division by zero and string operations on null throw there.
+     */
+    public static Object evaluate(Op op, IrType type, Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        return switch (type) {
+            case INT -> evaluateInt(op, (Integer) left, (Integer) right);
+            case BOOLEAN -> evaluateBoolean(op, (Boolean) left, (Boolean) right);
+            case STRING -> evaluateString(op, (String) left, (String) right);
+        };
+    }
+
+    private static Object evaluateInt(Op op, int a, int b) {
+        return switch (op) {
+            case ADD -> a + b;
+            case SUB -> a - b;
+            case MUL -> a * b;
+            case DIV -> b == 0 ? null : a / b;
+            case MOD -> b == 0 ? null : a % b;
+            case EQ -> a == b;
+            case NE -> a != b;
+            case LT -> a < b;
+            case LE -> a <= b;
+            case GT -> a > b;
+            case GE -> a >= b;
+        };
+    }
+
+    private static Object evaluateBoolean(Op op, boolean a, boolean b) {
+        int order = Boolean.compare(a, b);
+        return switch (op) {
+            case ADD -> a | b;
+            case MUL -> a & b;
+            case EQ -> order == 0;
+            case NE -> order != 0;
+            case LT -> order < 0;
+            case LE -> order <= 0;
+            case GT -> order > 0;
+            case GE -> order >= 0;
+            default -> null;
+        };
+    }
+
+    private static Object evaluateString(Op op, String a, String b) {
+        return switch (op) {
+            case ADD -> a.concat(b);
+            case EQ -> a.equals(b);
+            case NE -> !a.equals(b);
+            case LT -> b.startsWith(a) && !b.equals(a);
+            case LE -> b.startsWith(a);
+            case GT -> a.endsWith(b) && !a.equals(b);
+            case GE -> a.endsWith(b);
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ir.Binary;
+import edu.ufl.cise.plpfa22.ir.IrType;
+
+/**
+ * Replaces uses of CONST declarations by their values and evaluates binary expressions whose
+ * operands are literals, bottom up, so that whole constant expressions become one literal.
+ */
+public class ConstantFolding extends AstRewriter implements AstPass {
+
+    public static final String NAME = "fold";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        return rewrite(program);
+    }
+
+    @Override
+    public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+        if (expressionIdent.getDec() instanceof ConstDec constDec) {
+            return literal(constDec.val, expressionIdent);
+        }
+        return expressionIdent;
+    }
+
+    @Override
+    public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+        Expression rewritten = (Expression) super.visitExpressionBinary(expressionBinary, arg);
+        if (rewritten instanceof ExpressionBinary binary) {
+            Object left = literalValue(binary.e0);
+            Object right = literalValue(binary.e1);
+            if (left != null && right != null) {
+                Object value = ConstantEvaluator.evaluate(Binary.Op.of(binary.op.getKind()), IrType.of(binary.e0.getType()),
+                        left, right);
+                if (value != null) {
+                    return literal(value, binary);
+                }
+            }
+        }
+        return rewritten;
+    }
+}
@@ -0,0 +1,95 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.analysis.CallGraph;
+import edu.ufl.cise.plpfa22.analysis.Effects;
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes code that can never run or does nothing: IF and WHILE statements on a FALSE condition,
+ * IF statements on a TRUE condition are replaced by their body, empty statements are dropped from
+ * BEGIN ... END and IF statements with an empty body are dropped when the condition cannot throw.
+ * Procedures that no chain of calls from the main block reaches are removed, so their classes are
+ * not generated. Runs after constant folding, which turns constant conditions into literals.
+ */
+public class DeadCodeElimination extends AstRewriter implements AstPass {
+
+    public static final String NAME = "dce";
+
+    private CallGraph callGraph;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        callGraph = null;
+        Program result = rewrite(program);
+        // Calls in removed statements no longer count
+        callGraph = CallGraph.build(result);
+        result = rewrite(result);
+        callGraph = null;
+        return result;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+        if (callGraph != null && !callGraph.isReachable(procDec)) {
+            return null;
+        }
+        return super.visitProcedure(procDec, arg);
+    }
+
+    @Override
+    public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+        StatementIf rewritten = (StatementIf) super.visitStatementIf(statementIf, arg);
+        Object condition = literalValue(rewritten.expression);
+        if (Boolean.TRUE.equals(condition)) {
+            return rewritten.statement;
+        }
+        if (Boolean.FALSE.equals(condition)
+                || rewritten.statement instanceof StatementEmpty && !Effects.canThrow(rewritten.expression)) {
+            return new StatementEmpty(rewritten.firstToken);
+        }
+        return rewritten;
+    }
+
+    @Override
+    public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+        StatementWhile rewritten = (StatementWhile) super.visitStatementWhile(statementWhile, arg);
+        if (Boolean.FALSE.equals(literalValue(rewritten.expression))) {
+            return new StatementEmpty(rewritten.firstToken);
+        }
+        return rewritten;
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        StatementBlock rewritten = (StatementBlock) super.visitStatementBlock(statementBlock, arg);
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement : rewritten.statements) {
+            if (!(statement instanceof StatementEmpty)) {
+                statements.add(statement);
+            }
+        }
+        if (statements.isEmpty()) {
+            return new StatementEmpty(rewritten.firstToken);
+        }
+        if (statements.size() == rewritten.statements.size()) {
+            return rewritten;
+        }
+        return new StatementBlock(rewritten.firstToken, statements);
+    }
+}
@@ -0,0 +1,135 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.Profile;
+import edu.ufl.cise.plpfa22.analysis.CallGraph;
+import edu.ufl.cise.plpfa22.ast.*;
+
+/**
+ * Replaces every CALL of a small non-recursive procedure by a copy of its statement, and removes the
+ * procedure, so that no class is generated for it.
+ *
+ * A procedure is inlined if it declares no procedures, its statement uses only declarations from
+ * outside it, which are the same at every call site, and its statement has at most MAX_SIZE nodes.
+ * Calls in the copied statement are inlined in turn. The copy gets the nesting level of the call
+ * site, so variable accesses walk the caller's chain of enclosing instances.
+ *
+ * With a profile, procedures that were never called are not inlined, and those called at least
+ * HOT_CALLS times may have up to HOT_MAX_SIZE nodes. Nothing is inlined in instrumented code, which
+ * counts every call.
+ */
+public class Inlining extends AstRewriter implements AstPass {
+
+    public static final String NAME = "inline";
+
+    // statements and expressions in the body of a procedure that is inlined
+    static final int MAX_SIZE = 12;
+
+    static final int HOT_CALLS = 1000;
+
+    static final int HOT_MAX_SIZE = 48;
+
+    private CallGraph callGraph;
+    private Profile profile;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O2;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        if (options.isEnabled(Profile.GENERATE, null)) {
+            return program;
+        }
+        callGraph = CallGraph.build(program);
+        profile = options.getProgramProfile();
+        Program result = rewrite(program);
+        callGraph = null;
+        profile = null;
+        return result;
+    }
+
+    @Override
+    public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+        if (isInlined(procDec)) {
+            return null;
+        }
+        return super.visitProcedure(procDec, arg);
+    }
+
+    @Override
+    public Object visitStatementCall(StatementCall statementCall, Object arg) throws PLPException {
+        ProcDec procDec = (ProcDec) statementCall.ident.getDec();
+        if (!isInlined(procDec)) {
+            return statementCall;
+        }
+        Statement body = AstCopier.atNest(statementCall.ident.getNest()).copy(procDec.block.statement);
+        return body.visit(this, arg);
+    }
+
+    private boolean isInlined(ProcDec procDec) {
+        int maxSize = MAX_SIZE;
+        if (profile != null) {
+            long calls = profile.getCalls(procDec);
+            if (calls == 0) {
+                return false;
+            }
+            if (calls >= HOT_CALLS) {
+                maxSize = HOT_MAX_SIZE;
+            }
+        }
+        return procDec.block.procedureDecs.isEmpty()
+                && !callGraph.getInfo(procDec).isRecursive()
+                && usesOnlyOuter(procDec.block.statement, procDec.getNest())
+                && AstCopier.size(procDec.block.statement) <= maxSize;
+    }
+
+    // Declarations in a procedure body have nest procDec.getNest() + 1
+    private static boolean usesOnlyOuter(Statement statement, int nest) {
+        if (statement instanceof StatementAssign assign) {
+            return assign.ident.getDec().getNest() <= nest && usesOnlyOuter(assign.expression, nest);
+        }
+        if (statement instanceof StatementCall call) {
+            return call.ident.getDec().getNest() <= nest;
+        }
+        if (statement instanceof StatementInput input) {
+            return input.ident.getDec().getNest() <= nest;
+        }
+        if (statement instanceof StatementOutput output) {
+            return usesOnlyOuter(output.expression, nest);
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                if (!usesOnlyOuter(nested, nest)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return usesOnlyOuter(statementIf.expression, nest) && usesOnlyOuter(statementIf.statement, nest);
+        }
+        if (statement instanceof StatementWhile statementWhile) {
+            return usesOnlyOuter(statementWhile.expression, nest) && usesOnlyOuter(statementWhile.statement, nest);
+        }
+        return true;
+    }
+
+    private static boolean usesOnlyOuter(Expression expression, int nest) {
+        if (expression instanceof ExpressionIdent ident) {
+            return ident.getDec().getNest() <= nest;
+        }
+        if (expression instanceof ExpressionBinary binary) {
+            return usesOnlyOuter(binary.e0, nest) && usesOnlyOuter(binary.e1, nest);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.ir.BasicBlock;
+import edu.ufl.cise.plpfa22.ir.Binary;
+import edu.ufl.cise.plpfa22.ir.Constant;
+import edu.ufl.cise.plpfa22.ir.Instruction;
+import edu.ufl.cise.plpfa22.ir.IrBuilder;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.Value;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Constant propagation on the IR: operations whose operands are constants are replaced by their
+ * result, and phis that only merge one value are removed, until nothing changes. Since variables
+ * local to a block are SSA values, constants assigned to them reach every use they dominate.
+ */
+public class IrConstantFolding implements IrPass {
+
+    @Override
+    public String getName() {
+        return ConstantFolding.NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public boolean run(IrFunction function, CompilerOptions options) {
+        boolean changed = false;
+        boolean folded = true;
+        while (folded) {
+            Map<Value, Value> replacements = new HashMap<>();
+            for (BasicBlock block : function.getBlocks()) {
+                Iterator<Instruction> instructions = block.getInstructions().iterator();
+                while (instructions.hasNext()) {
+                    if (instructions.next() instanceof Binary binary
+                            && binary.getLeft() instanceof Constant left && binary.getRight() instanceof Constant right) {
+                        Object value = ConstantEvaluator.evaluate(binary.getOp(), binary.getOperandType(), left.getValue(),
+                                right.getValue());
+                        if (value != null) {
+                            replacements.put(binary, Constant.of(value));
+                            instructions.remove();
+                        }
+                    }
+                }
+            }
+            function.replaceAllUses(replacements);
+            folded = !replacements.isEmpty() | IrBuilder.removeTrivialPhis(function);
+            changed |= folded;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,118 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.ir.BasicBlock;
+import edu.ufl.cise.plpfa22.ir.Branch;
+import edu.ufl.cise.plpfa22.ir.Constant;
+import edu.ufl.cise.plpfa22.ir.Instruction;
+import edu.ufl.cise.plpfa22.ir.IrBuilder;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.Jump;
+import edu.ufl.cise.plpfa22.ir.Phi;
+import edu.ufl.cise.plpfa22.ir.Value;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dead code elimination on the IR: branches on constants become jumps, blocks that can no longer
+ * be reached are removed, and so are instructions whose values are not used and that have no side
+ * effects.
+ */
+public class IrDeadCodeElimination implements IrPass {
+
+    @Override
+    public String getName() {
+        return DeadCodeElimination.NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public boolean run(IrFunction function, CompilerOptions options) {
+        boolean changed = foldBranches(function);
+        changed |= removeUnreachable(function);
+        if (changed) {
+            IrBuilder.removeTrivialPhis(function);
+        }
+        changed |= removeDeadInstructions(function);
+        return changed;
+    }
+
+    private static boolean foldBranches(IrFunction function) {
+        boolean changed = false;
+        for (BasicBlock block : function.getBlocks()) {
+            if (block.getTerminator() instanceof Branch branch && branch.getCondition() instanceof Constant condition) {
+                BasicBlock taken = condition.booleanValue() ? branch.getIfTrue() : branch.getIfFalse();
+                BasicBlock notTaken = condition.booleanValue() ? branch.getIfFalse() : branch.getIfTrue();
+                function.removeEdge(block, notTaken);
+                block.replaceTerminator(new Jump(taken));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeUnreachable(IrFunction function) {
+        Set<BasicBlock> reached = new HashSet<>();
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        work.push(function.getEntry());
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (reached.add(block)) {
+                work.addAll(block.getSuccessors());
+            }
+        }
+        boolean changed = false;
+        for (BasicBlock block : new ArrayList<>(function.getBlocks())) {
+            if (!reached.contains(block)) {
+                function.removeBlock(block);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Mark and sweep: instructions with side effects are live, and so is everything they use
+    private static boolean removeDeadInstructions(IrFunction function) {
+        Set<Value> live = new HashSet<>();
+        Deque<Instruction> work = new ArrayDeque<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.hasSideEffects()) {
+                    work.push(instruction);
+                }
+            }
+            work.push(block.getTerminator());
+        }
+        while (!work.isEmpty()) {
+            Instruction instruction = work.pop();
+            if (live.add(instruction)) {
+                for (Value operand : instruction.getOperands()) {
+                    if (operand instanceof Instruction used && !live.contains(used)) {
+                        work.push(used);
+                    }
+                }
+            }
+        }
+        boolean changed = false;
+        for (BasicBlock block : function.getBlocks()) {
+            changed |= block.getInstructions().removeIf(instruction -> !live.contains(instruction));
+            for (Phi phi : new ArrayList<>(block.getPhis())) {
+                if (!live.contains(phi)) {
+                    block.removePhi(phi);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+}
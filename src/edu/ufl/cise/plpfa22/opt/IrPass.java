@@ -0,0 +1,15 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+
+/**
+ * Pass over the IR of one function. The function must still verify afterwards.
+ */
+public interface IrPass extends Pass {
+
+    /**
+     * Returns true if the function was changed.
+     */
+    boolean run(IrFunction function, CompilerOptions options);
+}
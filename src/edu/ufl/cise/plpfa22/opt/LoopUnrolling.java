@@ -0,0 +1,245 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.IToken.Kind;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.Profile;
+import edu.ufl.cise.plpfa22.analysis.CallGraph;
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unrolls counted loops: i := a; WHILE i < b DO BEGIN ...; i := i + 1 END with literal a and b (or
+ * i <= b), where nothing else in the body or the procedures it calls reads or writes i except the
+ * body's own expressions, which may read it.
+ *
+ * A loop that runs at most MAX_FULL_TRIPS times is replaced by that many copies of its body, each
+ * reading i as the literal value it has in that iteration. Longer loops get the number of copies set by
+ * the unroll-factor parameter in each iteration, reading i + 0, i + 1, ..., with one increment at the
+ * end, and the iterations left over are unrolled completely after it. Either way the copies of the
+ * body, in the loop and after it, stay within MAX_SIZE nodes. Constant folding and simplification run
+ * again on the result, so the copies specialize on the values of i.
+ *
+ * With a profile, loops that were never entered are left alone, and loops whose bodies ran at least
+ * HOT_TRIPS times are partially unrolled by twice the factor. Nothing is unrolled in instrumented
+ * code, which counts every loop.
+ */
+public class LoopUnrolling extends AstRewriter implements AstPass {
+
+    public static final String NAME = "unroll";
+
+    /** Parameter: copies of the body in each iteration of a partially unrolled loop. */
+    public static final String FACTOR = "unroll-factor";
+
+    static final int DEFAULT_FACTOR = 4;
+
+    static final int MAX_FULL_TRIPS = 8;
+
+    // statements and expressions in the unrolled code
+    static final int MAX_SIZE = 64;
+
+    static final int HOT_TRIPS = 10_000;
+
+    private CallGraph callGraph;
+    private Profile profile;
+    private int factor;
+    private boolean unrolled;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O2;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        if (options.isEnabled(Profile.GENERATE, null)) {
+            return program;
+        }
+        callGraph = CallGraph.build(program);
+        profile = options.getProgramProfile();
+        factor = options.getParam(FACTOR, DEFAULT_FACTOR);
+        unrolled = false;
+        Program result = rewrite(program);
+        callGraph = null;
+        profile = null;
+        if (unrolled) {
+            for (AstPass pass : List.of(new ConstantFolding(), new AlgebraicSimplification())) {
+                if (options.isEnabled(pass.getName(), pass.getMinLevel())) {
+                    result = pass.run(result, options);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Object visitStatementBlock(StatementBlock statementBlock, Object arg) throws PLPException {
+        // inner loops first, so that the size of an outer loop includes their unrolled copies
+        StatementBlock rewritten = (StatementBlock) super.visitStatementBlock(statementBlock, arg);
+        List<Statement> statements = new ArrayList<>(rewritten.statements);
+        boolean changed = false;
+        for (int i = 1; i < statements.size(); i++) {
+            if (statements.get(i - 1) instanceof StatementAssign init && statements.get(i) instanceof StatementWhile loop) {
+                Statement unrolledLoop = unroll(init, loop);
+                if (unrolledLoop != null) {
+                    statements.set(i, unrolledLoop);
+                    changed = true;
+                }
+            }
+        }
+        unrolled |= changed;
+        return changed ? new StatementBlock(rewritten.firstToken, statements) : rewritten;
+    }
+
+    /** The statement to run instead of the loop, or null if the loop is not unrolled. */
+    private Statement unroll(StatementAssign init, StatementWhile loop) {
+        if (!(init.ident.getDec() instanceof VarDec variable) || !(init.expression instanceof ExpressionNumLit)
+                || !(loop.expression instanceof ExpressionBinary condition) || !(loop.statement instanceof StatementBlock body)
+                || body.statements.isEmpty()) {
+            return null;
+        }
+        Kind op = condition.op.getKind();
+        if (!isRead(condition.e0, variable) || !(condition.e1 instanceof ExpressionNumLit) || op != Kind.LT && op != Kind.LE) {
+            return null;
+        }
+        Statement increment = body.statements.get(body.statements.size() - 1);
+        List<Statement> rest = body.statements.subList(0, body.statements.size() - 1);
+        if (!isIncrement(increment, variable)) {
+            return null;
+        }
+        int size = 0;
+        for (Statement statement : rest) {
+            if (!leavesAlone(statement, variable)) {
+                return null;
+            }
+            size += AstCopier.size(statement);
+        }
+        int start = (Integer) literalValue(init.expression);
+        long end = (Integer) literalValue(condition.e1) + (op == Kind.LE ? 1L : 0L);
+        long trips = end - start;
+        // i <= MAX_VALUE does not end
+        if (trips <= 0 || end > Integer.MAX_VALUE || profile != null && profile.getEntries(loop) == 0) {
+            return null;
+        }
+        int factor = profile != null && profile.getTrips(loop) >= HOT_TRIPS ? 2 * this.factor : this.factor;
+
+        List<Statement> statements = new ArrayList<>();
+        if (trips <= MAX_FULL_TRIPS && trips * size <= MAX_SIZE) {
+            appendCopies(rest, variable, start, (int) trips, statements);
+            statements.add(new StatementAssign(init.firstToken, copy(init.ident), literal((int) end, init)));
+            return new StatementBlock(loop.firstToken, statements);
+        }
+        if (factor < 2) {
+            return null;
+        }
+        int mainEnd = (int) (start + trips / factor * factor);
+        // the copies in the loop and those of the iterations left over after it
+        if ((factor + end - mainEnd) * size > MAX_SIZE) {
+            return null;
+        }
+        List<Statement> mainBody = new ArrayList<>();
+        for (int k = 0; k < factor; k++) {
+            int offset = k;
+            AstCopier copier = AstCopier.substituting(variable, read -> plus(read, offset));
+            for (Statement statement : rest) {
+                mainBody.add(copier.copy(statement));
+            }
+        }
+        StatementAssign step = (StatementAssign) increment;
+        mainBody.add(new StatementAssign(step.firstToken, copy(step.ident), plus(condition.e0, factor)));
+        ExpressionBinary mainCondition = new ExpressionBinary(condition.firstToken, plus(condition.e0, 0),
+                token(Kind.LT, "<", condition.op.getSourceLocation()), literal(mainEnd, condition.e1));
+        mainCondition.setType(Type.BOOLEAN);
+        statements.add(new StatementWhile(loop.firstToken, mainCondition, new StatementBlock(body.firstToken, mainBody)));
+        if (mainEnd < end) {
+            appendCopies(rest, variable, mainEnd, (int) (end - mainEnd), statements);
+            statements.add(new StatementAssign(init.firstToken, copy(init.ident), literal((int) end, init)));
+        }
+        return new StatementBlock(loop.firstToken, statements);
+    }
+
+    // copies of the statements for the iterations from start on, reading i as a literal
+    private static void appendCopies(List<Statement> rest, VarDec variable, int start, int trips, List<Statement> statements) {
+        for (int k = 0; k < trips; k++) {
+            int value = start + k;
+            AstCopier copier = AstCopier.substituting(variable, read -> literal(value, read));
+            for (Statement statement : rest) {
+                statements.add(copier.copy(statement));
+            }
+        }
+    }
+
+    // i + offset, or a new read of i for 0
+    private static Expression plus(Expression read, int offset) {
+        ExpressionIdent ident = new ExpressionIdent(read.firstToken);
+        ident.setDec(((ExpressionIdent) read).getDec());
+        ident.setNest(((ExpressionIdent) read).getNest());
+        ident.setType(Type.NUMBER);
+        if (offset == 0) {
+            return ident;
+        }
+        ExpressionBinary sum = new ExpressionBinary(read.firstToken, ident,
+                token(Kind.PLUS, "+", read.firstToken.getSourceLocation()), literal(offset, read));
+        sum.setType(Type.NUMBER);
+        return sum;
+    }
+
+    private static Ident copy(Ident ident) {
+        Ident copy = new Ident(ident.firstToken);
+        copy.setDec(ident.getDec());
+        copy.setNest(ident.getNest());
+        return copy;
+    }
+
+    private static boolean isRead(Expression expression, VarDec variable) {
+        return expression instanceof ExpressionIdent ident && ident.getDec() == variable;
+    }
+
+    // i := i + 1 or i := 1 + i
+    private static boolean isIncrement(Statement statement, VarDec variable) {
+        if (!(statement instanceof StatementAssign assign) || assign.ident.getDec() != variable
+                || !(assign.expression instanceof ExpressionBinary sum) || sum.op.getKind() != Kind.PLUS) {
+            return false;
+        }
+        return isRead(sum.e0, variable) && Integer.valueOf(1).equals(literalValue(sum.e1))
+                || isRead(sum.e1, variable) && Integer.valueOf(1).equals(literalValue(sum.e0));
+    }
+
+    // true if the statement does not assign the variable and calls nothing that reads or writes it
+    private boolean leavesAlone(Statement statement, VarDec variable) {
+        if (statement instanceof StatementAssign assign) {
+            return assign.ident.getDec() != variable;
+        }
+        if (statement instanceof StatementInput input) {
+            return input.ident.getDec() != variable;
+        }
+        if (statement instanceof StatementCall call) {
+            CallGraph.ProcInfo callee = callGraph.getInfo((ProcDec) call.ident.getDec());
+            return !callee.getTransitiveReads().contains(variable) && !callee.getTransitiveWrites().contains(variable);
+        }
+        if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                if (!leavesAlone(nested, variable)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (statement instanceof StatementIf statementIf) {
+            return leavesAlone(statementIf.statement, variable);
+        }
+        if (statement instanceof StatementWhile statementWhile) {
+            return leavesAlone(statementWhile.statement, variable);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,23 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Pass over the bytecode of one generated method. Frames and maximum stack sizes are recomputed
+ * when the class is written back, so the pass need not maintain them.
+ */
+public interface MethodPass extends Pass {
+
+    /**
+     * Returns true if the method was changed.
+     */
+    boolean run(String className, MethodNode method, CompilerOptions options);
+
+    /**
+     * What the pass did since it was created, for the compiler's report. Empty if nothing to say.
+     */
+    default String getReport() {
+        return "";
+    }
+}
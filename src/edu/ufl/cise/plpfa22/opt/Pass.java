@@ -0,0 +1,17 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+
+/**
+ * An optimization pass. Passes are identified by name, which is also the name used to switch them
+ * on or off with -fname and -fno-name.
+ */
+public interface Pass {
+
+    String getName();
+
+    /**
+     * Lowest level the pass runs at by default, or null if it only runs when enabled by name.
+     */
+    OptLevel getMinLevel();
+}
@@ -0,0 +1,200 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CodeGenUtils;
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.GeneratedClassWriter;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.ast.Program;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.IrModule;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered pipeline of AST, IR and bytecode passes. Each pass runs only if the options enable it, and
+ * the time spent in every pass and compiler phase is recorded under its name.
+ */
+public class PassManager {
+
+    @FunctionalInterface
+    public interface Phase<T> {
+        T run() throws PLPException;
+    }
+
+    private final CompilerOptions options;
+    private final List<AstPass> astPasses = new ArrayList<>();
+    private final List<IrPass> irPasses = new ArrayList<>();
+    private final List<MethodPass> methodPasses = new ArrayList<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+
+    public PassManager(CompilerOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Pass manager with the compiler's own passes, in the order they run.
+     */
+    public static PassManager standard(CompilerOptions options) {
+        return new PassManager(options)
+                .add(new ConstantFolding())
+                .add(new AlgebraicSimplification())
+                .add(new Inlining())
+                .add(new LoopUnrolling())
+                .add(new DeadCodeElimination())
+                .add(new Precomputation())
+                .add(new IrConstantFolding())
+                .add(new IrDeadCodeElimination())
+                .add(new PeepholeOptimizer());
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    public PassManager add(AstPass pass) {
+        astPasses.add(pass);
+        return this;
+    }
+
+    public PassManager add(IrPass pass) {
+        irPasses.add(pass);
+        return this;
+    }
+
+    public PassManager add(MethodPass pass) {
+        methodPasses.add(pass);
+        return this;
+    }
+
+    public List<MethodPass> getMethodPasses() {
+        return Collections.unmodifiableList(methodPasses);
+    }
+
+    public boolean isEnabled(Pass pass) {
+        return options.isEnabled(pass.getName(), pass.getMinLevel());
+    }
+
+    /**
+     * Names of the passes that will run, in order: AST passes, IR passes, then bytecode passes.
+     */
+    public List<String> getEnabledPasses() {
+        List<String> names = new ArrayList<>();
+        for (AstPass pass : astPasses) {
+            if (isEnabled(pass)) {
+                names.add(pass.getName());
+            }
+        }
+        for (IrPass pass : irPasses) {
+            if (isEnabled(pass)) {
+                names.add(pass.getName());
+            }
+        }
+        for (MethodPass pass : methodPasses) {
+            if (isEnabled(pass)) {
+                names.add(pass.getName());
+            }
+        }
+        return names;
+    }
+
+    public Program runAstPasses(Program program) throws PLPException {
+        for (AstPass pass : astPasses) {
+            if (isEnabled(pass)) {
+                Program input = program;
+                program = time(pass.getName(), () -> pass.run(input, options));
+            }
+        }
+        return program;
+    }
+
+    public void runIrPasses(IrModule module) throws PLPException {
+        for (IrPass pass : irPasses) {
+            if (isEnabled(pass)) {
+                time(pass.getName(), () -> {
+                    for (IrFunction function : module.getFunctions()) {
+                        pass.run(function, options);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Runs the bytecode passes over every method of the generated classes. Classes no pass changed
+     * are returned as they were.
+     */
+    public List<CodeGenUtils.GenClass> runMethodPasses(List<CodeGenUtils.GenClass> classes) throws PLPException {
+        List<MethodPass> enabled = methodPasses.stream().filter(this::isEnabled).toList();
+        if (enabled.isEmpty()) {
+            return classes;
+        }
+        List<CodeGenUtils.GenClass> result = new ArrayList<>();
+        for (CodeGenUtils.GenClass genClass : classes) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(genClass.byteCode()).accept(classNode, ClassReader.SKIP_FRAMES);
+            boolean changed = false;
+            for (MethodPass pass : enabled) {
+                changed |= time(pass.getName(), () -> {
+                    boolean any = false;
+                    for (MethodNode method : classNode.methods) {
+                        any |= pass.run(genClass.className(), method, options);
+                    }
+                    return any;
+                });
+            }
+            if (changed) {
+                ClassWriter classWriter = new GeneratedClassWriter(GeneratedClassWriter.mainClassName(genClass.className()));
+                classNode.accept(classWriter);
+                result.add(new CodeGenUtils.GenClass(genClass.className(), classWriter.toByteArray()));
+            } else {
+                result.add(genClass);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a phase, adding the time it takes to the total recorded under the name.
+     */
+    public <T> T time(String name, Phase<T> phase) throws PLPException {
+        long start = System.nanoTime();
+        try {
+            return phase.run();
+        } finally {
+            timings.merge(name, System.nanoTime() - start, Long::sum);
+        }
+    }
+
+    /**
+     * Nanoseconds spent in each pass and phase, in the order they first ran.
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            sb.append(String.format("%-24s %10.3f ms%n", timing.getKey(), timing.getValue() / 1e6));
+            total += timing.getValue();
+        }
+        sb.append(String.format("%-24s %10.3f ms%n", "total", total / 1e6));
+        for (MethodPass pass : methodPasses) {
+            String report = pass.getReport();
+            if (isEnabled(pass) && !report.isEmpty()) {
+                sb.append(System.lineSeparator()).append(report);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,627 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Peephole optimizer over generated method bodies. Short instruction sequences are rewritten into
+ * shorter ones until no rule matches:
+ * <ul>
+ * <li>LDC of a small int becomes ICONST, BIPUSH or SIPUSH;</li>
+ * <li>a value pushed before the object of a PUTFIELD and swapped under it is pushed after it, and
+ * an update of a field computed from its old value loads the object once and DUPs it;</li>
+ * <li>a boolean materialized with ICONST_1/ICONST_0 only to be tested by IFEQ or IFNE becomes one
+ * conditional jump, as do tests of a constant or of a negation;</li>
+ * <li>jumps to jumps are threaded, conditional jumps over a GOTO are inverted, and GOTOs to the next
+ * instruction and code that no jump reaches are removed;</li>
+ * <li>a local that is stored and loaded right away, and loaded nowhere else, stays on the stack.</li>
+ * </ul>
+ * The sizes of the methods before and after are kept for the report.
+ */
+public class PeepholeOptimizer implements MethodPass, Opcodes {
+
+    public static final String NAME = "peephole";
+
+    private static final String BOOLEAN_NOT_CLASS = "edu/ufl/cise/plpfa22/BooleanNotOp";
+
+    public record MethodStats(int before, int after) {
+        public int removed() {
+            return before - after;
+        }
+    }
+
+    private final Map<String, MethodStats> stats = new LinkedHashMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O1;
+    }
+
+    @Override
+    public boolean run(String className, MethodNode method, CompilerOptions options) {
+        int before = countInstructions(method.instructions);
+        boolean changed = false;
+        Rewriter rewriter = new Rewriter(method);
+        while (rewriter.sweep()) {
+            changed = true;
+        }
+        int after = countInstructions(method.instructions);
+        String name = className.substring(className.lastIndexOf('/') + 1) + "." + method.name;
+        stats.merge(name, new MethodStats(before, after),
+                (old, added) -> new MethodStats(old.before + added.before, old.after + added.after));
+        return changed;
+    }
+
+    /**
+     * Instruction counts before and after, by class and method name.
+     */
+    public Map<String, MethodStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public String getReport() {
+        if (stats.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(String.format("%-32s %8s %8s %8s%n", NAME, "before", "after", "removed"));
+        int before = 0;
+        int after = 0;
+        for (Map.Entry<String, MethodStats> entry : stats.entrySet()) {
+            MethodStats methodStats = entry.getValue();
+            sb.append(String.format("%-32s %8d %8d %8d%n", entry.getKey(), methodStats.before, methodStats.after, methodStats.removed()));
+            before += methodStats.before;
+            after += methodStats.after;
+        }
+        sb.append(String.format("%-32s %8d %8d %8d%n", "total", before, after, before - after));
+        return sb.toString();
+    }
+
+    static int countInstructions(InsnList instructions) {
+        int count = 0;
+        for (AbstractInsnNode insn : instructions) {
+            if (insn.getOpcode() >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class Rewriter {
+        private final MethodNode method;
+        private final InsnList insns;
+        private final Map<LabelNode, Integer> references = new HashMap<>();
+        private final Map<Integer, Integer> loads = new HashMap<>();
+        private final Set<Integer> namedLocals = new HashSet<>();
+
+        Rewriter(MethodNode method) {
+            this.method = method;
+            this.insns = method.instructions;
+            if (method.localVariables != null) {
+                for (LocalVariableNode local : method.localVariables) {
+                    namedLocals.add(local.index);
+                }
+            }
+        }
+
+        boolean sweep() {
+            countUses();
+            boolean changed = false;
+            AbstractInsnNode insn = insns.getFirst();
+            while (insn != null) {
+                AbstractInsnNode resume = rewrite(insn);
+                if (resume != null) {
+                    changed = true;
+                    insn = resume;
+                } else {
+                    insn = insn.getNext();
+                }
+            }
+            return changed;
+        }
+
+        // Returns the node to continue from if a rule matched at insn, null otherwise
+        private AbstractInsnNode rewrite(AbstractInsnNode insn) {
+            AbstractInsnNode resume;
+            if ((resume = smallConstant(insn)) != null
+                    || (resume = redundantPair(insn)) != null
+                    || (resume = fieldUpdate(insn)) != null
+                    || (resume = pushAfterObject(insn)) != null
+                    || (resume = materializedBoolean(insn)) != null
+                    || (resume = constantBranch(insn)) != null
+                    || (resume = negatedBranch(insn)) != null
+                    || (resume = jumpOverGoto(insn)) != null
+                    || (resume = threadJump(insn)) != null
+                    || (resume = gotoNext(insn)) != null
+                    || (resume = unreachable(insn)) != null
+                    || (resume = storeLoad(insn)) != null) {
+                return resume;
+            }
+            return null;
+        }
+
+        private void countUses() {
+            references.clear();
+            loads.clear();
+            for (AbstractInsnNode insn : insns) {
+                if (insn instanceof JumpInsnNode jump) {
+                    reference(jump.label, 1);
+                } else if (insn instanceof TableSwitchInsnNode tableSwitch) {
+                    reference(tableSwitch.dflt, 1);
+                    tableSwitch.labels.forEach(label -> reference(label, 1));
+                } else if (insn instanceof LookupSwitchInsnNode lookupSwitch) {
+                    reference(lookupSwitch.dflt, 1);
+                    lookupSwitch.labels.forEach(label -> reference(label, 1));
+                } else if (isLoad(insn) || insn.getOpcode() == IINC) {
+                    loads.merge(localIndex(insn), 1, Integer::sum);
+                }
+            }
+            for (TryCatchBlockNode tryCatch : method.tryCatchBlocks) {
+                reference(tryCatch.start, 1);
+                reference(tryCatch.end, 1);
+                reference(tryCatch.handler, 1);
+            }
+        }
+
+        private void reference(LabelNode label, int delta) {
+            references.merge(label, delta, Integer::sum);
+        }
+
+        private boolean isReferenced(AbstractInsnNode node) {
+            return node instanceof LabelNode label && references.getOrDefault(label, 0) > 0;
+        }
+
+        // Next instruction or jump target, skipping line numbers, frames and labels nothing jumps to
+        private AbstractInsnNode next(AbstractInsnNode node) {
+            if (node == null) {
+                return null;
+            }
+            AbstractInsnNode next = node.getNext();
+            while (next != null && next.getOpcode() < 0 && !isReferenced(next)) {
+                next = next.getNext();
+            }
+            return next;
+        }
+
+        private void remove(AbstractInsnNode node) {
+            if (node instanceof JumpInsnNode jump) {
+                reference(jump.label, -1);
+            } else if (isLoad(node) || node.getOpcode() == IINC) {
+                loads.merge(localIndex(node), -1, Integer::sum);
+            }
+            insns.remove(node);
+        }
+
+        private void retarget(JumpInsnNode jump, LabelNode label) {
+            reference(jump.label, -1);
+            jump.label = label;
+            reference(label, 1);
+        }
+
+        private AbstractInsnNode smallConstant(AbstractInsnNode insn) {
+            if (!(insn instanceof LdcInsnNode ldc) || !(ldc.cst instanceof Integer value)) {
+                return null;
+            }
+            AbstractInsnNode replacement;
+            if (value >= -1 && value <= 5) {
+                replacement = new InsnNode(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                replacement = new IntInsnNode(BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                replacement = new IntInsnNode(SIPUSH, value);
+            } else {
+                return null;
+            }
+            insns.set(insn, replacement);
+            return replacement;
+        }
+
+        // DUP POP, SWAP SWAP and NOP do nothing
+        private AbstractInsnNode redundantPair(AbstractInsnNode insn) {
+            if (insn.getOpcode() == NOP) {
+                AbstractInsnNode resume = insn.getPrevious() != null ? insn.getPrevious() : insn.getNext();
+                remove(insn);
+                return resume;
+            }
+            AbstractInsnNode next = next(insn);
+            if (next != null && (insn.getOpcode() == DUP && next.getOpcode() == POP
+                    || insn.getOpcode() == SWAP && next.getOpcode() == SWAP)) {
+                AbstractInsnNode resume = next.getNext();
+                remove(insn);
+                remove(next);
+                return resume != null ? resume : insns.getLast();
+            }
+            return null;
+        }
+
+        /*
+         * path GETFIELD f; computation; path SWAP PUTFIELD f  becomes  path DUP GETFIELD f; computation; PUTFIELD f
+         * where the computation is straight-line code that turns the value of f into one new value:
+         * operands, arithmetic and calls, such as x := x + 1 or s := s + "x".
+         */
+        private AbstractInsnNode fieldUpdate(AbstractInsnNode insn) {
+            List<AbstractInsnNode> object = path(insn);
+            if (object == null) {
+                return null;
+            }
+            AbstractInsnNode get = next(last(object));
+            if (get == null || get.getOpcode() != GETFIELD || isOuterLink(get)) {
+                return null;
+            }
+            int depth = 1;
+            AbstractInsnNode node = next(get);
+            while (node != null) {
+                List<AbstractInsnNode> target = path(node);
+                AbstractInsnNode swap = target == null ? null : next(last(target));
+                if (depth == 1 && swap != null && swap.getOpcode() == SWAP) {
+                    AbstractInsnNode put = next(swap);
+                    if (node == next(get) || !samePath(object, target)
+                            || put == null || put.getOpcode() != PUTFIELD || !sameField(get, put)) {
+                        return null;
+                    }
+                    insns.insert(last(object), new InsnNode(DUP));
+                    target.forEach(this::remove);
+                    remove(swap);
+                    return insn;
+                }
+                List<AbstractInsnNode> operand = operand(node);
+                if (operand != null) {
+                    depth++;
+                    node = next(last(operand));
+                    continue;
+                }
+                Integer effect = stackEffect(node);
+                if (effect == null || (depth += effect) < 1) {
+                    return null;
+                }
+                node = next(node);
+            }
+            return null;
+        }
+
+        // operand; path SWAP  becomes  path operand
+        private AbstractInsnNode pushAfterObject(AbstractInsnNode insn) {
+            List<AbstractInsnNode> operand = operand(insn);
+            if (operand == null) {
+                return null;
+            }
+            List<AbstractInsnNode> object = path(next(last(operand)));
+            if (object == null) {
+                return null;
+            }
+            AbstractInsnNode swap = next(last(object));
+            if (swap == null || swap.getOpcode() != SWAP) {
+                return null;
+            }
+            AbstractInsnNode first = operand.get(0);
+            for (AbstractInsnNode node : object) {
+                insns.remove(node);
+                insns.insertBefore(first, node);
+            }
+            remove(swap);
+            return object.get(0);
+        }
+
+        /*
+         * IFcc L0; ICONST_1; GOTO L1; L0: ICONST_0; L1: IFEQ L2  becomes  IFcc L2
+         * (with IFNE L2, or the constants the other way round, the condition is inverted)
+         */
+        private AbstractInsnNode materializedBoolean(AbstractInsnNode insn) {
+            if (!(insn instanceof JumpInsnNode jump) || !isConditional(jump)) {
+                return null;
+            }
+            AbstractInsnNode first = next(jump);
+            AbstractInsnNode jumpToEnd = next(first);
+            if (!isBooleanConstant(first) || jumpToEnd == null || jumpToEnd.getOpcode() != GOTO
+                    || next(jumpToEnd) != jump.label) {
+                return null;
+            }
+            AbstractInsnNode second = next(jump.label);
+            AbstractInsnNode endLabel = next(second);
+            AbstractInsnNode test = next(endLabel);
+            if (!isBooleanConstant(second) || first.getOpcode() == second.getOpcode()
+                    || endLabel != ((JumpInsnNode) jumpToEnd).label || test == null
+                    || test.getOpcode() != IFEQ && test.getOpcode() != IFNE
+                    || references.get(jump.label) != 1 || references.get((LabelNode) endLabel) != 1) {
+                return null;
+            }
+            boolean keep = (test.getOpcode() == IFEQ) == (first.getOpcode() == ICONST_1);
+            if (!keep) {
+                jump.setOpcode(invert(jump.getOpcode()));
+            }
+            retarget(jump, ((JumpInsnNode) test).label);
+            remove(first);
+            remove(jumpToEnd);
+            remove(second);
+            remove(test);
+            return jump;
+        }
+
+        // ICONST_0 IFEQ L  becomes  GOTO L, and ICONST_1 IFEQ L goes away
+        private AbstractInsnNode constantBranch(AbstractInsnNode insn) {
+            AbstractInsnNode test = next(insn);
+            if (!isBooleanConstant(insn) || test == null || test.getOpcode() != IFEQ && test.getOpcode() != IFNE) {
+                return null;
+            }
+            boolean taken = (insn.getOpcode() == ICONST_0) == (test.getOpcode() == IFEQ);
+            AbstractInsnNode resume;
+            if (taken) {
+                resume = new JumpInsnNode(GOTO, ((JumpInsnNode) test).label);
+                insns.set(test, resume);
+            } else {
+                resume = test.getNext();
+                remove(test);
+            }
+            remove(insn);
+            return resume != null ? resume : insns.getLast();
+        }
+
+        // INVOKESTATIC BooleanNotOp.not IFEQ L and ICONST_1 IXOR IFEQ L  become  IFNE L
+        private AbstractInsnNode negatedBranch(AbstractInsnNode insn) {
+            AbstractInsnNode xor = insn.getOpcode() == ICONST_1 ? next(insn) : null;
+            boolean isNot = insn instanceof MethodInsnNode call && call.getOpcode() == INVOKESTATIC
+                    && call.owner.equals(BOOLEAN_NOT_CLASS) && call.name.equals("not");
+            if (!isNot && (xor == null || xor.getOpcode() != IXOR)) {
+                return null;
+            }
+            AbstractInsnNode test = next(isNot ? insn : xor);
+            if (test == null || test.getOpcode() != IFEQ && test.getOpcode() != IFNE) {
+                return null;
+            }
+            ((JumpInsnNode) test).setOpcode(invert(test.getOpcode()));
+            remove(insn);
+            if (!isNot) {
+                remove(xor);
+            }
+            return test;
+        }
+
+        // IFcc L1; GOTO L2; L1:  becomes  IFNOTcc L2; L1:
+        private AbstractInsnNode jumpOverGoto(AbstractInsnNode insn) {
+            if (!(insn instanceof JumpInsnNode jump) || !isConditional(jump)) {
+                return null;
+            }
+            AbstractInsnNode next = next(jump);
+            if (next == null || next.getOpcode() != GOTO || next(next) != jump.label) {
+                return null;
+            }
+            jump.setOpcode(invert(jump.getOpcode()));
+            retarget(jump, ((JumpInsnNode) next).label);
+            remove(next);
+            return jump;
+        }
+
+        // A jump to a GOTO goes straight to where the GOTO leads
+        private AbstractInsnNode threadJump(AbstractInsnNode insn) {
+            if (!(insn instanceof JumpInsnNode jump)) {
+                return null;
+            }
+            Set<LabelNode> seen = new HashSet<>();
+            LabelNode target = jump.label;
+            seen.add(target);
+            while (true) {
+                AbstractInsnNode atTarget = next(target);
+                if (atTarget == null || atTarget.getOpcode() != GOTO) {
+                    break;
+                }
+                target = ((JumpInsnNode) atTarget).label;
+                // jumps that lead around in a circle are left alone
+                if (!seen.add(target)) {
+                    return null;
+                }
+            }
+            if (target == jump.label) {
+                return null;
+            }
+            retarget(jump, target);
+            return jump;
+        }
+
+        private AbstractInsnNode gotoNext(AbstractInsnNode insn) {
+            if (insn.getOpcode() != GOTO || next(insn) != ((JumpInsnNode) insn).label) {
+                return null;
+            }
+            AbstractInsnNode resume = insn.getPrevious() != null ? insn.getPrevious() : insn.getNext();
+            remove(insn);
+            return resume;
+        }
+
+        // Nothing after GOTO, RETURN or ATHROW runs until a label something jumps to
+        private AbstractInsnNode unreachable(AbstractInsnNode insn) {
+            int opcode = insn.getOpcode();
+            if (opcode != GOTO && opcode != ATHROW && (opcode < IRETURN || opcode > RETURN)) {
+                return null;
+            }
+            boolean changed = false;
+            AbstractInsnNode node = insn.getNext();
+            while (node != null && !isReferenced(node)) {
+                AbstractInsnNode following = node.getNext();
+                if (node.getOpcode() >= 0) {
+                    remove(node);
+                    changed = true;
+                }
+                node = following;
+            }
+            return changed ? insn : null;
+        }
+
+        // xSTORE n; xLOAD n  goes away when nothing else loads n
+        private AbstractInsnNode storeLoad(AbstractInsnNode insn) {
+            if (!(insn instanceof VarInsnNode store) || store.getOpcode() < ISTORE || store.getOpcode() > ASTORE
+                    || namedLocals.contains(store.var)) {
+                return null;
+            }
+            AbstractInsnNode load = next(store);
+            if (!(load instanceof VarInsnNode loadVar) || loadVar.var != store.var
+                    || loadVar.getOpcode() != store.getOpcode() - ISTORE + ILOAD
+                    || loads.getOrDefault(store.var, 0) != 1) {
+                return null;
+            }
+            AbstractInsnNode resume = insn.getPrevious() != null ? insn.getPrevious() : load.getNext();
+            remove(store);
+            remove(load);
+            return resume != null ? resume : insns.getFirst();
+        }
+
+        /*
+         * An object reached from a local: ALOAD n followed by GETFIELDs of this$ links.
+         */
+        private List<AbstractInsnNode> path(AbstractInsnNode node) {
+            if (node == null || node.getOpcode() != ALOAD) {
+                return null;
+            }
+            List<AbstractInsnNode> path = new ArrayList<>();
+            path.add(node);
+            AbstractInsnNode next = next(node);
+            while (next != null && next.getOpcode() == GETFIELD && isOuterLink(next)) {
+                path.add(next);
+                next = next(next);
+            }
+            return path;
+        }
+
+        /*
+         * A value pushed without popping anything and without side effects: a constant, a local,
+         * System.out, or a field of an object reached by a path.
+         */
+        private List<AbstractInsnNode> operand(AbstractInsnNode node) {
+            if (node == null) {
+                return null;
+            }
+            int opcode = node.getOpcode();
+            if (opcode >= ACONST_NULL && opcode <= ICONST_5 || opcode == BIPUSH || opcode == SIPUSH
+                    || opcode == ILOAD || opcode == FLOAD
+                    || node instanceof LdcInsnNode ldc && !(ldc.cst instanceof Long || ldc.cst instanceof Double)
+                    || opcode == GETSTATIC && isSingleWord(((FieldInsnNode) node).desc)) {
+                return List.of(node);
+            }
+            List<AbstractInsnNode> path = path(node);
+            if (path == null) {
+                return null;
+            }
+            AbstractInsnNode get = next(last(path));
+            if (get != null && get.getOpcode() == GETFIELD && isSingleWord(((FieldInsnNode) get).desc)) {
+                path.add(get);
+                return path;
+            }
+            return path;
+        }
+
+        private static boolean samePath(List<AbstractInsnNode> a, List<AbstractInsnNode> b) {
+            if (a.size() != b.size() || ((VarInsnNode) a.get(0)).var != ((VarInsnNode) b.get(0)).var) {
+                return false;
+            }
+            for (int i = 1; i < a.size(); i++) {
+                if (!sameField(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static AbstractInsnNode last(List<AbstractInsnNode> nodes) {
+        return nodes.get(nodes.size() - 1);
+    }
+
+    private static boolean isOuterLink(AbstractInsnNode node) {
+        return ((FieldInsnNode) node).name.startsWith("this$");
+    }
+
+    private static boolean sameField(AbstractInsnNode a, AbstractInsnNode b) {
+        FieldInsnNode fa = (FieldInsnNode) a;
+        FieldInsnNode fb = (FieldInsnNode) b;
+        return fa.owner.equals(fb.owner) && fa.name.equals(fb.name) && fa.desc.equals(fb.desc);
+    }
+
+    private static boolean isSingleWord(String desc) {
+        return !desc.equals("J") && !desc.equals("D");
+    }
+
+    /*
+     * Change in stack depth from int arithmetic or shifts, a cast or a call, or null for any other instruction.
+     */
+    private static Integer stackEffect(AbstractInsnNode node) {
+        int opcode = node.getOpcode();
+        if (opcode >= IADD && opcode <= IREM && (opcode - IADD) % 4 == 0 || opcode == IAND || opcode == IOR || opcode == IXOR
+                || opcode == ISHL || opcode == ISHR || opcode == IUSHR) {
+            return -1;
+        }
+        if (opcode == INEG || opcode == CHECKCAST) {
+            return 0;
+        }
+        String desc;
+        if (node instanceof MethodInsnNode call) {
+            desc = call.desc;
+        } else if (node instanceof InvokeDynamicInsnNode call) {
+            desc = call.desc;
+        } else {
+            return null;
+        }
+        Type type = Type.getMethodType(desc);
+        int effect = -(type.getArgumentsAndReturnSizes() >> 2) + (type.getArgumentsAndReturnSizes() & 3);
+        // getArgumentsAndReturnSizes counts an implicit receiver
+        return opcode == INVOKESTATIC || opcode == INVOKEDYNAMIC ? effect + 1 : effect;
+    }
+
+    private static boolean isBooleanConstant(AbstractInsnNode node) {
+        return node != null && (node.getOpcode() == ICONST_0 || node.getOpcode() == ICONST_1);
+    }
+
+    private static boolean isLoad(AbstractInsnNode node) {
+        return node.getOpcode() >= ILOAD && node.getOpcode() <= ALOAD;
+    }
+
+    private static int localIndex(AbstractInsnNode node) {
+        return node instanceof VarInsnNode var ? var.var : ((IincInsnNode) node).var;
+    }
+
+    private static boolean isConditional(JumpInsnNode jump) {
+        int opcode = jump.getOpcode();
+        return opcode >= IFEQ && opcode <= IF_ACMPNE || opcode == IFNULL || opcode == IFNONNULL;
+    }
+
+    // Conditional jump opcodes come in pairs whose conditions are each other's negation
+    private static int invert(int opcode) {
+        if (opcode == IFNULL) {
+            return IFNONNULL;
+        }
+        if (opcode == IFNONNULL) {
+            return IFNULL;
+        }
+        return (opcode - IFEQ) % 2 == 0 ? opcode + 1 : opcode - 1;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.CompilerOptions;
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.Profile;
+import edu.ufl.cise.plpfa22.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs programs that take no input at compile time, and replaces a program that runs to the end by one
+ * that prints each line of its output with a ! of a string literal, so the running JVM still chooses
+ * the line separator. No procedure classes are generated for it.
+ *
+ * The evaluation is limited to the number of steps set by the precompute-steps parameter, where
+ * each character of a string built or printed counts as a step, and MAX_DEPTH nested calls. Programs
+ * that need more, that would throw, or whose output has more than MAX_LINES lines or MAX_LENGTH
+ * characters are compiled as they are. Instrumented programs are not precomputed, since they are run
+ * for their counts.
+ */
+public class Precomputation implements AstPass {
+
+    public static final String NAME = "precompute";
+
+    /** Parameter: statements and expressions evaluated before giving up. */
+    public static final String STEPS = "precompute-steps";
+
+    static final int DEFAULT_STEPS = 1_000_000;
+
+    static final int MAX_DEPTH = 1000;
+
+    // a constant pool string holds at most 65535 bytes, and a char takes up to 3
+    static final int MAX_LENGTH = 65535 / 3;
+
+    // printing a literal takes 9 of the 65535 bytes of code a method may have
+    static final int MAX_LINES = 5000;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OptLevel getMinLevel() {
+        return OptLevel.O2;
+    }
+
+    @Override
+    public Program run(Program program, CompilerOptions options) throws PLPException {
+        if (options.isEnabled(Profile.GENERATE, null)) {
+            return program;
+        }
+        List<String> lines = ProgramEvaluator.run(program, options.getParam(STEPS, DEFAULT_STEPS), MAX_DEPTH);
+        if (lines == null) {
+            return program;
+        }
+        if (lines.size() > MAX_LINES || lines.stream().mapToInt(String::length).sum() > MAX_LENGTH) {
+            return program;
+        }
+        Statement statement = program.block.statement;
+        List<Statement> outputs = new ArrayList<>();
+        for (String line : lines) {
+            outputs.add(new StatementOutput(statement.firstToken, AstRewriter.literal(line, statement)));
+        }
+        Statement output = outputs.isEmpty() ? new StatementEmpty(statement.firstToken)
+                : new StatementBlock(statement.firstToken, outputs);
+        Block block = new Block(program.block.firstToken, List.of(), List.of(), List.of(), output);
+        return new Program(program.firstToken, block);
+    }
+}
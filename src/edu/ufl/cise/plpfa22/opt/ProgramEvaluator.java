@@ -0,0 +1,160 @@
+package edu.ufl.cise.plpfa22.opt;
+
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+import edu.ufl.cise.plpfa22.ir.Binary;
+import edu.ufl.cise.plpfa22.ir.IrType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a checked program at compile time, collecting the lines it outputs.
+ *
+ * Every procedure activation gets its own variables, linked to the activation of the enclosing block
+ * as the generated classes are through their this$ fields. Operators are evaluated by
+ * ConstantEvaluator, exactly as the generated code does. Evaluation gives up, returning null, if the
+ * program inputs anything, would throw at run time, or needs more than the given number of steps or
+ * nested calls. Building or printing a string takes a step per character as well, so the budget also
+ * bounds the time and memory spent on strings.
+ */
+public final class ProgramEvaluator {
+
+    private static final class Frame {
+        final Frame enclosing;
+        final int nest;
+        final Map<Declaration, Object> values = new IdentityHashMap<>();
+
+        Frame(Frame enclosing, int nest, Block block) {
+            this.enclosing = enclosing;
+            this.nest = nest;
+            for (VarDec varDec : block.varDecs) {
+                values.put(varDec, initialValue(varDec.getType()));
+            }
+        }
+    }
+
+    private static final class GiveUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GiveUp() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final int maxSteps;
+    private final int maxDepth;
+    private final List<String> output = new ArrayList<>();
+    private long steps;
+    private int depth;
+
+    private ProgramEvaluator(int maxSteps, int maxDepth) {
+        this.maxSteps = maxSteps;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * The lines the program prints, or null if it could not be run to the end within the budget.
+     */
+    public static List<String> run(Program program, int maxSteps, int maxDepth) {
+        ProgramEvaluator evaluator = new ProgramEvaluator(maxSteps, maxDepth);
+        try {
+            evaluator.execute(program.block.statement, new Frame(null, 0, program.block));
+        } catch (GiveUp e) {
+            return null;
+        }
+        return evaluator.output;
+    }
+
+    private static Object initialValue(Type type) {
+        if (type == Type.NUMBER) {
+            return 0;
+        }
+        return type == Type.BOOLEAN ? Boolean.FALSE : null;
+    }
+
+    private void step() {
+        charge(1);
+    }
+
+    private void charge(int cost) {
+        steps += cost;
+        if (steps > maxSteps) {
+            throw new GiveUp();
+        }
+    }
+
+    private void execute(Statement statement, Frame frame) {
+        step();
+        if (statement instanceof StatementAssign assign) {
+            Object value = evaluate(assign.expression, frame);
+            find(assign.ident.getDec(), frame).values.put(assign.ident.getDec(), value);
+        } else if (statement instanceof StatementOutput output) {
+            String line = String.valueOf(evaluate(output.expression, frame));
+            charge(line.length());
+            this.output.add(line);
+        } else if (statement instanceof StatementCall call) {
+            call((ProcDec) call.ident.getDec(), frame);
+        } else if (statement instanceof StatementBlock statementBlock) {
+            for (Statement nested : statementBlock.statements) {
+                execute(nested, frame);
+            }
+        } else if (statement instanceof StatementIf statementIf) {
+            if ((Boolean) evaluate(statementIf.expression, frame)) {
+                execute(statementIf.statement, frame);
+            }
+        } else if (statement instanceof StatementWhile statementWhile) {
+            while ((Boolean) evaluate(statementWhile.expression, frame)) {
+                execute(statementWhile.statement, frame);
+                step();
+            }
+        } else if (statement instanceof StatementInput) {
+            throw new GiveUp();
+        }
+    }
+
+    private void call(ProcDec procDec, Frame frame) {
+        if (++depth > maxDepth) {
+            throw new GiveUp();
+        }
+        Frame enclosing = frame;
+        while (enclosing.nest > procDec.getNest()) {
+            enclosing = enclosing.enclosing;
+        }
+        execute(procDec.block.statement, new Frame(enclosing, procDec.getNest() + 1, procDec.block));
+        depth--;
+    }
+
+    // the activation of the block that declares the variable
+    private static Frame find(Declaration dec, Frame frame) {
+        while (!frame.values.containsKey(dec)) {
+            frame = frame.enclosing;
+        }
+        return frame;
+    }
+
+    private Object evaluate(Expression expression, Frame frame) {
+        step();
+        if (expression instanceof ExpressionBinary binary) {
+            Object left = evaluate(binary.e0, frame);
+            Object right = evaluate(binary.e1, frame);
+            Object value = ConstantEvaluator.evaluate(Binary.Op.of(binary.op.getKind()), IrType.of(binary.e0.getType()), left, right);
+            if (value == null) {
+                throw new GiveUp();
+            }
+            if (value instanceof String string) {
+                charge(string.length());
+            }
+            return value;
+        }
+        if (expression instanceof ExpressionIdent ident) {
+            if (ident.getDec() instanceof ConstDec constDec) {
+                return constDec.val;
+            }
+            return find(ident.getDec(), frame).values.get(ident.getDec());
+        }
+        return AstRewriter.literalValue(expression);
+    }
+}
@@ -0,0 +1,343 @@
+package edu.ufl.cise.plpfa22.query;
+
+import edu.ufl.cise.plpfa22.CodeGenUtils;
+import edu.ufl.cise.plpfa22.CodeGenVisitor;
+import edu.ufl.cise.plpfa22.ILexer;
+import edu.ufl.cise.plpfa22.IToken;
+import edu.ufl.cise.plpfa22.LexicalException;
+import edu.ufl.cise.plpfa22.PLPException;
+import edu.ufl.cise.plpfa22.Parser;
+import edu.ufl.cise.plpfa22.ScopeSnapshot;
+import edu.ufl.cise.plpfa22.Lexer;
+import edu.ufl.cise.plpfa22.ast.*;
+import edu.ufl.cise.plpfa22.ast.Types.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Query-based front end for long-lived compiler processes such as an editor or build server.
+ *
+ * Each stage of the pipeline is a memoized query on a {@link QueryEngine}. Sources are set with
+ * {@link #setSource}; later requests only recompute what the change reaches. Scope checking, type
+ * inference results and bytecode are tracked per block, so an edit to one procedure does not
+ * regenerate the classes of the others, and type inference is only run again for blocks whose text
+ * or inputs changed.
+ */
+public class CompilerDatabase {
+
+    public static final String CLASS_NAME = "prog";
+    public static final String PACKAGE_NAME = "edu/ufl/cise/plpfa22";
+
+    /**
+     * Tokens of a file. Two lists are equal if they have the same kinds and text, wherever the tokens are.
+     */
+    public record TokenList(List<IToken> tokens) {
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TokenList other) || other.tokens.size() != tokens.size()) {
+                return false;
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                IToken a = tokens.get(i);
+                IToken b = other.tokens.get(i);
+                if (a.getKind() != b.getKind() || !String.valueOf(a.getText()).equals(String.valueOf(b.getText()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return tokens.size();
+        }
+    }
+
+    /**
+     * Result of checking a block. Only the summary, which describes the block text and what each name
+     * in it resolves to, takes part in equality; the scope refers to the declarations of the current AST.
+     */
+    public record ScopeResult(ScopeSnapshot scope, String summary) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ScopeResult other && summary.equals(other.summary);
+        }
+
+        @Override
+        public int hashCode() {
+            return summary.hashCode();
+        }
+    }
+
+    /**
+     * Types of the declarations and expressions of a block, and of the declarations it uses from
+     * enclosing blocks, in {@link RegionWalker} order.
+     */
+    public record TypeSummary(List<Type> owned, List<Type> foreign) {
+    }
+
+    private final QueryEngine engine = new QueryEngine();
+    private final ForkJoinPool pool;
+    private final Map<String, TypeMemo> typeMemos = new HashMap<>();
+
+    public CompilerDatabase() {
+        this(null);
+    }
+
+    public CompilerDatabase(ForkJoinPool pool) {
+        this.pool = pool;
+        engine.define(QueryKind.TOKENS, this::computeTokens);
+        engine.define(QueryKind.AST, this::computeAst);
+        engine.define(QueryKind.PROCEDURES, this::computeProcedures);
+        engine.define(QueryKind.SCOPE, this::computeScope);
+        engine.define(QueryKind.TYPES, this::computeTypes);
+        engine.define(QueryKind.PROC_TYPES, this::computeProcTypes);
+        engine.define(QueryKind.BYTECODE, this::computeBytecode);
+        engine.define(QueryKind.CLASSES, this::computeClasses);
+    }
+
+    public QueryEngine getEngine() {
+        return engine;
+    }
+
+    public void setSource(String file, String text) {
+        engine.set(QueryKey.of(QueryKind.SOURCE, file), text);
+    }
+
+    public TokenList tokens(String file) throws PLPException {
+        return (TokenList) engine.get(QueryKey.of(QueryKind.TOKENS, file));
+    }
+
+    public Program ast(String file) throws PLPException {
+        return (Program) engine.get(QueryKey.of(QueryKind.AST, file));
+    }
+
+    public ScopeResult scope(String file, String path) throws PLPException {
+        return (ScopeResult) engine.get(new QueryKey(QueryKind.SCOPE, file, path));
+    }
+
+    public TypeSummary types(String file, String path) throws PLPException {
+        return (TypeSummary) engine.get(new QueryKey(QueryKind.PROC_TYPES, file, path));
+    }
+
+    public CodeGenUtils.GenClass bytecode(String file, String path) throws PLPException {
+        return (CodeGenUtils.GenClass) engine.get(new QueryKey(QueryKind.BYTECODE, file, path));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<CodeGenUtils.GenClass> classes(String file) throws PLPException {
+        return (List<CodeGenUtils.GenClass>) engine.get(QueryKey.of(QueryKind.CLASSES, file));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> procedures(String file) throws PLPException {
+        return (List<String>) engine.get(QueryKey.of(QueryKind.PROCEDURES, file));
+    }
+
+    private Object computeTokens(QueryKey key) throws PLPException {
+        String source = (String) engine.get(QueryKey.of(QueryKind.SOURCE, key.file()));
+        ILexer lexer = new Lexer(source);
+        List<IToken> tokens = new ArrayList<>();
+        IToken token;
+        do {
+            token = lexer.next();
+            tokens.add(token);
+        } while (token.getKind() != IToken.Kind.EOF);
+        return new TokenList(tokens);
+    }
+
+    private Object computeAst(QueryKey key) throws PLPException {
+        List<IToken> tokens = tokens(key.file()).tokens();
+        return new Parser(new ILexer() {
+            private int position = 0;
+
+            @Override
+            public IToken next() throws LexicalException {
+                IToken token = peek();
+                position++;
+                return token;
+            }
+
+            @Override
+            public IToken peek() {
+                return tokens.get(Math.min(position, tokens.size() - 1));
+            }
+        }).parse();
+    }
+
+    private Object computeProcedures(QueryKey key) throws PLPException {
+        List<String> paths = new ArrayList<>();
+        collectPaths(ast(key.file()).block, "", paths);
+        return paths;
+    }
+
+    private static void collectPaths(Block block, String prefix, List<String> paths) {
+        for (ProcDec procDec : block.procedureDecs) {
+            String path = prefix + String.valueOf(procDec.ident.getText());
+            paths.add(path);
+            collectPaths(procDec.block, path + "/", paths);
+        }
+    }
+
+    private Object computeScope(QueryKey key) throws PLPException {
+        Program program = ast(key.file());
+        Block block;
+        ScopeSnapshot enclosing;
+        if (key.path().isEmpty()) {
+            block = program.block;
+            enclosing = ScopeSnapshot.EMPTY;
+        } else {
+            block = last(procedurePath(program, key.path())).block;
+            enclosing = scope(key.file(), parentPath(key.path())).scope();
+        }
+        ScopeSnapshot scope = AstVisitorImpl.checkBlock(block, enclosing, !key.path().isEmpty());
+
+        Map<Declaration, Block> owners = new IdentityHashMap<>();
+        ownBlock(block, owners);
+        RegionWalker walker = new RegionWalker(block, owners).walk();
+        StringBuilder summary = new StringBuilder(walker.getFingerprint()).append('|');
+        for (Declaration declaration : walker.getForeign()) {
+            summary.append(' ').append(declaration.getClass().getSimpleName()).append(declaration.getNest());
+        }
+        return new ScopeResult(scope, summary.toString());
+    }
+
+    private Object computeTypes(QueryKey key) throws PLPException {
+        Program program = ast(key.file());
+        scope(key.file(), "");
+        for (String path : procedures(key.file())) {
+            scope(key.file(), path);
+        }
+
+        TypeMemo memo = typeMemos.computeIfAbsent(key.file(), file -> new TypeMemo());
+        memo.nextGeneration();
+        program.visit(new ParallelTypeChecker(pool, memo), null);
+        return program;
+    }
+
+    private Object computeProcTypes(QueryKey key) throws PLPException {
+        Program program = (Program) engine.get(QueryKey.of(QueryKind.TYPES, key.file()));
+        Map<Declaration, Block> owners = new IdentityHashMap<>();
+        Block block = key.path().isEmpty() ? program.block : last(procedurePath(program, key.path())).block;
+        ownBlock(block, owners);
+        RegionWalker walker = new RegionWalker(block, owners).walk();
+        List<Type> owned = new ArrayList<>();
+        for (ASTNode node : walker.getOwned()) {
+            owned.add(node instanceof Declaration declaration ? declaration.getType() : ((Expression) node).getType());
+        }
+        List<Type> foreign = new ArrayList<>();
+        for (Declaration declaration : walker.getForeign()) {
+            foreign.add(declaration.getType());
+        }
+        return new TypeSummary(owned, foreign);
+    }
+
+    private Object computeBytecode(QueryKey key) throws PLPException {
+        // The class is determined by the block text, what its names resolve to and the inferred types,
+        // so those are the only dependencies; the AST itself is new after every edit
+        scope(key.file(), key.path());
+        types(key.file(), key.path());
+        Program program = (Program) engine.untracked(QueryKey.of(QueryKind.TYPES, key.file()));
+        List<ProcDec> path = key.path().isEmpty() ? List.of() : procedurePath(program, key.path());
+        CodeGenVisitor codeGenVisitor = new CodeGenVisitor(CLASS_NAME, PACKAGE_NAME, "");
+        return codeGenVisitor.generateClass(program, path);
+    }
+
+    private Object computeClasses(QueryKey key) throws PLPException {
+        List<CodeGenUtils.GenClass> classes = new ArrayList<>();
+        classes.add(bytecode(key.file(), ""));
+        for (String path : procedures(key.file())) {
+            classes.add(bytecode(key.file(), path));
+        }
+        return classes;
+    }
+
+    private static void ownBlock(Block block, Map<Declaration, Block> owners) {
+        for (ConstDec dec : block.constDecs) {
+            owners.put(dec, block);
+        }
+        for (VarDec dec : block.varDecs) {
+            owners.put(dec, block);
+        }
+        for (ProcDec dec : block.procedureDecs) {
+            owners.put(dec, block);
+        }
+    }
+
+    private static List<ProcDec> procedurePath(Program program, String path) throws PLPException {
+        List<ProcDec> procDecs = new ArrayList<>();
+        Block block = program.block;
+        for (String name : path.split("/")) {
+            ProcDec found = null;
+            for (ProcDec procDec : block.procedureDecs) {
+                if (String.valueOf(procDec.ident.getText()).equals(name)) {
+                    found = procDec;
+                }
+            }
+            if (found == null) {
+                throw new PLPException("No procedure " + path);
+            }
+            procDecs.add(found);
+            block = found.block;
+        }
+        return procDecs;
+    }
+
+    private static ProcDec last(List<ProcDec> procDecs) {
+        return procDecs.get(procDecs.size() - 1);
+    }
+
+    private static String parentPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * Region inference results of the latest type check of a file. Entries not used by a check are
+     * dropped at the start of the next one.
+     */
+    static class TypeMemo implements RegionCache {
+        private Map<String, Entry> previous = new ConcurrentHashMap<>();
+        private Map<String, Entry> current = new ConcurrentHashMap<>();
+        final AtomicInteger hits = new AtomicInteger();
+        final AtomicInteger misses = new AtomicInteger();
+
+        void nextGeneration() {
+            previous = current;
+            current = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public Entry get(String key) {
+            Entry entry = current.get(key);
+            if (entry == null) {
+                entry = previous.get(key);
+                if (entry != null) {
+                    current.put(key, entry);
+                }
+            }
+            (entry == null ? misses : hits).incrementAndGet();
+            return entry;
+        }
+
+        @Override
+        public void put(String key, Entry entry) {
+            current.put(key, entry);
+        }
+    }
+
+    /**
+     * Number of block type checks answered from earlier results, and the number that ran inference.
+     */
+    public int[] getTypeCacheStats(String file) {
+        TypeMemo memo = typeMemos.get(file);
+        return memo == null ? new int[]{0, 0} : new int[]{memo.hits.get(), memo.misses.get()};
+    }
+}
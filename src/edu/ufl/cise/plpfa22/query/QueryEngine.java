@@ -0,0 +1,168 @@
+package edu.ufl.cise.plpfa22.query;
+
+import edu.ufl.cise.plpfa22.PLPException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Demand-driven, memoizing evaluator for queries.
+ *
+ * Every input change starts a new revision. A memoized result remembers the revision it was last
+ * verified in, the revision its value last changed in, and the queries it read while computing. When
+ * asked for again in a later revision, the result is reused if none of those dependencies changed
+ * since it was verified; dependencies are brought up to date first, recursively. A recomputed value
+ * equal to the previous one keeps its old change revision, so the queries that depend on it are not
+ * recomputed either.
+ */
+public class QueryEngine {
+
+    @FunctionalInterface
+    public interface QueryFunction {
+        Object compute(QueryKey key) throws PLPException;
+    }
+
+    private static class Memo {
+        Object value;
+        PLPException error;
+        long changedAt;
+        long verifiedAt;
+        List<QueryKey> dependencies;
+        final boolean input;
+
+        Memo(Object value, PLPException error, long revision, List<QueryKey> dependencies, boolean input) {
+            this.value = value;
+            this.error = error;
+            this.changedAt = revision;
+            this.verifiedAt = revision;
+            this.dependencies = dependencies;
+            this.input = input;
+        }
+    }
+
+    private final Map<QueryKind, QueryFunction> functions = new EnumMap<>(QueryKind.class);
+    private final Map<QueryKey, Memo> memos = new HashMap<>();
+    private final Deque<Set<QueryKey>> active = new ArrayDeque<>();
+    private final Set<QueryKey> inProgress = new HashSet<>();
+    private final Map<QueryKind, Integer> executions = new EnumMap<>(QueryKind.class);
+    private long revision = 0;
+
+    public synchronized void define(QueryKind kind, QueryFunction function) {
+        functions.put(kind, function);
+    }
+
+    /**
+     * Sets the value of an input query, starting a new revision if the value differs from the current one.
+     */
+    public synchronized void set(QueryKey key, Object value) {
+        Memo memo = memos.get(key);
+        if (memo != null && Objects.equals(memo.value, value)) {
+            return;
+        }
+        revision++;
+        memos.put(key, new Memo(value, null, revision, List.of(), true));
+    }
+
+    public synchronized Object get(QueryKey key) throws PLPException {
+        if (!active.isEmpty()) {
+            active.peek().add(key);
+        }
+        Memo memo = refresh(key);
+        if (memo.error != null) {
+            throw memo.error;
+        }
+        return memo.value;
+    }
+
+    /**
+     * Reads a query without recording it as a dependency of the query being computed. Used when the
+     * caller's result is fully determined by dependencies it reads through {@link #get}.
+     */
+    public synchronized Object untracked(QueryKey key) throws PLPException {
+        Memo memo = refresh(key);
+        if (memo.error != null) {
+            throw memo.error;
+        }
+        return memo.value;
+    }
+
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    public synchronized int getExecutionCount(QueryKind kind) {
+        return executions.getOrDefault(kind, 0);
+    }
+
+    public synchronized void resetExecutionCounts() {
+        executions.clear();
+    }
+
+    private Memo refresh(QueryKey key) throws PLPException {
+        Memo memo = memos.get(key);
+        if (memo != null && (memo.input || isValid(memo))) {
+            return memo;
+        }
+        if (memo == null && key.kind() == QueryKind.SOURCE) {
+            throw new PLPException("No source set for " + key.file());
+        }
+        return execute(key, memo);
+    }
+
+    private boolean isValid(Memo memo) throws PLPException {
+        if (memo.verifiedAt == revision) {
+            return true;
+        }
+        for (QueryKey dependency : memo.dependencies) {
+            Memo current = memos.get(dependency);
+            if (current == null || (!current.input && !isValid(current))) {
+                current = execute(dependency, current);
+            }
+            if (current.changedAt > memo.verifiedAt) {
+                return false;
+            }
+        }
+        memo.verifiedAt = revision;
+        return true;
+    }
+
+    private Memo execute(QueryKey key, Memo previous) throws PLPException {
+        QueryFunction function = functions.get(key.kind());
+        if (function == null) {
+            throw new IllegalStateException("No query function defined for " + key.kind());
+        }
+        if (!inProgress.add(key)) {
+            throw new IllegalStateException("Cycle in queries at " + key);
+        }
+        executions.merge(key.kind(), 1, Integer::sum);
+        Set<QueryKey> dependencies = new LinkedHashSet<>();
+        active.push(dependencies);
+        Object value = null;
+        PLPException error = null;
+        try {
+            value = function.compute(key);
+        } catch (PLPException e) {
+            error = e;
+        } finally {
+            active.pop();
+            inProgress.remove(key);
+        }
+
+        Memo memo = new Memo(value, error, revision, new ArrayList<>(dependencies), false);
+        if (previous != null && previous.error == null && error == null && Objects.equals(previous.value, value)) {
+            // Keep the new value, which may refer to the current AST, but report it as unchanged
+            memo.changedAt = previous.changedAt;
+        }
+        memos.put(key, memo);
+        return memo;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.ufl.cise.plpfa22.query;
+
+/**
+ * Identifies one query. The path names a procedure by the names of the procedures enclosing it,
+ * separated by '/', and is empty for queries about the main block or the whole file.
+ */
+public record QueryKey(QueryKind kind, String file, String path) {
+
+    public static QueryKey of(QueryKind kind, String file) {
+        return new QueryKey(kind, file, "");
+    }
+
+    @Override
+    public String toString() {
+        return kind + "(" + file + (path.isEmpty() ? "" : ":" + path) + ")";
+    }
+}
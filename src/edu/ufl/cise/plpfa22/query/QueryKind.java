@@ -0,0 +1,13 @@
+package edu.ufl.cise.plpfa22.query;
+
+public enum QueryKind {
+    SOURCE,     // input: program text of a file
+    TOKENS,     // all tokens of a file
+    AST,        // parsed, unchecked program
+    PROCEDURES, // paths of all procedures, outermost first
+    SCOPE,      // scope check of one block
+    TYPES,      // type inference of the whole file
+    PROC_TYPES, // inferred types of one block
+    BYTECODE,   // class generated for one block
+    CLASSES     // all classes of a file, main class first
+}
@@ -0,0 +1,186 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.analysis.CallGraph;
+import edu.ufl.cise.plpfa22.analysis.CallGraph.Kind;
+import edu.ufl.cise.plpfa22.analysis.LoopInvariants;
+import edu.ufl.cise.plpfa22.ast.Block;
+import edu.ufl.cise.plpfa22.ast.Declaration;
+import edu.ufl.cise.plpfa22.ast.StatementAssign;
+import edu.ufl.cise.plpfa22.ast.StatementBlock;
+import edu.ufl.cise.plpfa22.ast.StatementOutput;
+import edu.ufl.cise.plpfa22.ast.StatementWhile;
+import edu.ufl.cise.plpfa22.ast.Program;
+import edu.ufl.cise.plpfa22.ast.ProcDec;
+import edu.ufl.cise.plpfa22.ast.VarDec;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisTest {
+
+	Program check(String input) throws PLPException {
+		Program program = (Program) CompilerComponentFactory.getParser(CompilerComponentFactory.getLexer(input)).parse();
+		program.visit(CompilerComponentFactory.getScopeVisitor(), null);
+		program.visit(CompilerComponentFactory.getTypeInferenceVisitor(), null);
+		return program;
+	}
+
+	static ProcDec proc(Block block, String name) {
+		for (ProcDec procDec : block.procedureDecs) {
+			if (String.valueOf(procDec.ident.getText()).equals(name)) {
+				return procDec;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	static VarDec var(Block block, String name) {
+		for (VarDec varDec : block.varDecs) {
+			if (String.valueOf(varDec.ident.getText()).equals(name)) {
+				return varDec;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	static Set<String> names(Set<VarDec> varDecs) {
+		Set<String> names = new HashSet<>();
+		for (VarDec varDec : varDecs) {
+			names.add(String.valueOf(varDec.ident.getText()));
+		}
+		return names;
+	}
+
+	@Test
+	void classifiesProcedures() throws PLPException {
+		String input = """
+				VAR a;
+				PROCEDURE leaf;
+				  a := a + 1;
+				PROCEDURE caller;
+				  CALL leaf;
+				PROCEDURE self;
+				  IF a < 10 THEN BEGIN a := a + 1; CALL self END;
+				PROCEDURE even;
+				  IF a > 0 THEN BEGIN a := a - 1; CALL odd END;
+				PROCEDURE odd;
+				  IF a > 0 THEN BEGIN a := a - 1; CALL even END;
+				BEGIN CALL caller; CALL self; CALL even END
+				.
+				""";
+		Program program = check(input);
+		CallGraph graph = CallGraph.build(program);
+		Block block = program.block;
+		assertEquals(Kind.LEAF, graph.getKind(proc(block, "leaf")));
+		assertEquals(Kind.NON_RECURSIVE, graph.getKind(proc(block, "caller")));
+		assertEquals(Kind.RECURSIVE, graph.getKind(proc(block, "self")));
+		assertEquals(Kind.RECURSIVE, graph.getKind(proc(block, "even")));
+		assertEquals(Kind.RECURSIVE, graph.getKind(proc(block, "odd")));
+		assertEquals(graph.getInfo(proc(block, "even")).getComponent(), graph.getInfo(proc(block, "odd")).getComponent());
+		assertEquals(4, graph.getComponents().size());
+		// callees come before callers
+		assertTrue(graph.getInfo(proc(block, "leaf")).getComponent() < graph.getInfo(proc(block, "caller")).getComponent());
+	}
+
+	@Test
+	void recordsOuterReadsAndWrites() throws PLPException {
+		String input = """
+				VAR x, y, z;
+				PROCEDURE p;
+				  VAR local;
+				  PROCEDURE q;
+				    BEGIN local := x; ? z END;
+				  BEGIN local := 1; CALL q; y := local END;
+				BEGIN z := 0; CALL p END
+				.
+				""";
+		Program program = check(input);
+		CallGraph graph = CallGraph.build(program);
+		ProcDec p = proc(program.block, "p");
+		ProcDec q = proc(p.block, "q");
+
+		assertEquals(Set.of("x"), names(graph.getInfo(q).getReads()));
+		assertEquals(Set.of("local", "z"), names(graph.getInfo(q).getWrites()));
+		assertEquals(Set.of(), names(graph.getInfo(p).getReads()));
+		assertEquals(Set.of("y"), names(graph.getInfo(p).getWrites()));
+		// q's write of local stays inside p
+		assertEquals(Set.of("y", "z"), names(graph.getInfo(p).getTransitiveWrites()));
+		assertEquals(Set.of("x"), names(graph.getInfo(p).getTransitiveReads()));
+		assertTrue(graph.getInfo(p).getTransitiveWrites().contains(var(program.block, "z")));
+	}
+
+	@Test
+	void transitiveWritesThroughRecursion() throws PLPException {
+		String input = """
+				VAR n, a, b;
+				PROCEDURE f;
+				  IF n > 0 THEN BEGIN n := n - 1; a := a + 1; CALL g END;
+				PROCEDURE g;
+				  BEGIN b := b + 1; CALL f END;
+				BEGIN n := 3; CALL f END
+				.
+				""";
+		Program program = check(input);
+		CallGraph graph = CallGraph.build(program);
+		assertEquals(Set.of("n", "a", "b"), names(graph.getInfo(proc(program.block, "f")).getTransitiveWrites()));
+		assertEquals(Set.of("n", "a", "b"), names(graph.getInfo(proc(program.block, "g")).getTransitiveWrites()));
+	}
+
+	@Test
+	void reachability() throws PLPException {
+		String input = """
+				VAR a;
+				PROCEDURE used;
+				  CALL helper;
+				PROCEDURE helper;
+				  a := 1;
+				PROCEDURE unused;
+				  CALL helper;
+				BEGIN CALL used; CALL used END
+				.
+				""";
+		Program program = check(input);
+		CallGraph graph = CallGraph.build(program);
+		Block block = program.block;
+		assertTrue(graph.isReachable(proc(block, "used")));
+		assertTrue(graph.isReachable(proc(block, "helper")));
+		assertFalse(graph.isReachable(proc(block, "unused")));
+		assertEquals(2, graph.getInfo(proc(block, "used")).getCallSites());
+		assertEquals(Set.of(proc(block, "used"), proc(block, "unused")), graph.getInfo(proc(block, "helper")).getCallers());
+	}
+
+	@Test
+	void loopInvariants() throws PLPException {
+		String input = """
+				VAR a, b, c, i;
+				PROCEDURE bump;
+				  b := b + 1;
+				BEGIN
+				  i := 0;
+				  WHILE i < a DO BEGIN i := i + 1; CALL bump; c := a * 2; ! a * b; ! a / 2; ! 2 / a END
+				END
+				.
+				""";
+		Program program = check(input);
+		StatementWhile loop = (StatementWhile) ((StatementBlock) program.block.statement).statements.get(1);
+		Set<Declaration> writes = new LoopInvariants(CallGraph.build(program)).getWrites(loop);
+		Set<VarDec> varDecs = new HashSet<>();
+		for (Declaration declaration : writes) {
+			varDecs.add((VarDec) declaration);
+		}
+		assertEquals(Set.of("i", "b", "c"), names(varDecs));
+
+		StatementBlock body = (StatementBlock) loop.statement;
+		assertFalse(LoopInvariants.isInvariant(loop.expression, writes));
+		assertTrue(LoopInvariants.isInvariant(((StatementAssign) body.statements.get(2)).expression, writes));
+		assertFalse(LoopInvariants.isInvariant(((StatementOutput) body.statements.get(3)).expression, writes));
+		assertTrue(LoopInvariants.isInvariant(((StatementOutput) body.statements.get(4)).expression, writes));
+		// would throw before the loop if a were zero
+		assertFalse(LoopInvariants.isInvariant(((StatementOutput) body.statements.get(5)).expression, writes));
+	}
+}
@@ -0,0 +1,29 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * Arithmetic by constants compiled as written against simplified and strength-reduced. C2 makes the
+ * same reductions once the loop is hot; run with -XX:TieredStopAtLevel=1 to see the interpreter and
+ * C1 difference.
+ */
+class ArithmeticBenchmark {
+
+	static final String HASH = """
+			VAR i, h, x;
+			BEGIN
+			  i := 0; h := 0;
+			  WHILE i < 1000000 DO
+			  BEGIN
+			    x := (h + i) * 1 + 0;
+			    h := (x * 32 + x / 4 - x % 64) * 8 + (i - i);
+			    h := h % 1048576;
+			    i := i + 1
+			  END;
+			  ! h
+			END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		Benchmark.compare("hash", HASH, new String[]{"-O1", "-fno-simplify", "-fno-strength-reduction"}, new String[]{"-O1"});
+	}
+}
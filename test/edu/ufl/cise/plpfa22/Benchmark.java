@@ -0,0 +1,73 @@
+package edu.ufl.cise.plpfa22;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Small benchmark harness for compiled PL/0 programs. JMH is not among the project's libraries, so
+ * this does the essentials by hand: every variant is compiled once, warmed up, then run a fixed
+ * number of times with its output discarded, and the mean and best time per run are printed, with the
+ * mean bytes the running thread allocated per run.
+ *
+ * Benchmarks are classes with a main method in the test tree, run by hand.
+ */
+class Benchmark {
+
+	static final int WARMUP = 20;
+	static final int ITERATIONS = 50;
+
+	record Result(String name, double meanMillis, double bestMillis, double meanKilobytes) {
+	}
+
+	/**
+	 * Compiles the program with the options and returns its main method.
+	 */
+	static Method compile(String source, String... options) throws Exception {
+		List<CodeGenUtils.GenClass> classes = new Compiler(CompilerOptions.parse(options)).compile(source, "prog", "edu/ufl/cise/plpfa22");
+		return new CodeGenUtils.DynamicClassLoader().define(classes).getMethod("main", String[].class);
+	}
+
+	static Result measure(String name, Method main) throws Exception {
+		PrintStream originalOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < WARMUP; i++) {
+				main.invoke(null, (Object) new String[0]);
+			}
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			long allocated = threads.getCurrentThreadAllocatedBytes();
+			long total = 0;
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < ITERATIONS; i++) {
+				long start = System.nanoTime();
+				main.invoke(null, (Object) new String[0]);
+				long time = System.nanoTime() - start;
+				total += time;
+				best = Math.min(best, time);
+			}
+			allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+			return new Result(name, total / 1e6 / ITERATIONS, best / 1e6, allocated / 1024.0 / ITERATIONS);
+		} finally {
+			System.setOut(originalOut);
+		}
+	}
+
+	/**
+	 * Runs the program compiled with each set of options and prints a line per variant.
+	 */
+	static void compare(String title, String source, String[]... variants) throws Exception {
+		System.out.println(title);
+		Result baseline = null;
+		for (String[] options : variants) {
+			Result result = measure(String.join(" ", options), compile(source, options));
+			if (baseline == null) {
+				baseline = result;
+			}
+			System.out.printf("  %-40s %10.3f ms %10.3f ms best %6.2fx %12.1f KB%n", result.name(), result.meanMillis(), result.bestMillis(),
+					baseline.meanMillis() / result.meanMillis(), result.meanKilobytes());
+		}
+	}
+}
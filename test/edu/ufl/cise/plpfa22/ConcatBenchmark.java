@@ -0,0 +1,40 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * String + compiled to chains of String.concat against one invokedynamic per chain.
+ */
+class ConcatBenchmark {
+
+	static final String CHAINS = """
+			VAR first, last, city, line, i, n;
+			BEGIN
+			  first := "Ada"; last := "Lovelace"; city := "London";
+			  i := 0; n := 0;
+			  WHILE i < 20000 DO
+			  BEGIN
+			    line := "name: " + first + " " + last + ", city: " + city + ", id: " + first + last;
+			    IF line # "" THEN n := n + 1;
+			    i := i + 1
+			  END;
+			  ! n
+			END
+			.
+			""";
+
+	static final String ACCUMULATE = """
+			VAR s, part, i;
+			BEGIN
+			  s := ""; part := "ab";
+			  i := 0;
+			  WHILE i < 2000 DO BEGIN s := s + part + "," + part + ";"; i := i + 1 END;
+			  ! s = ""
+			END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		for (String[] program : new String[][]{{"chains", CHAINS}, {"accumulate", ACCUMULATE}}) {
+			Benchmark.compare(program[0], program[1], new String[]{"-O1", "-fno-indy-concat"}, new String[]{"-O1"});
+		}
+	}
+}
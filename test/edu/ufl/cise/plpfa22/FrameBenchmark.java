@@ -0,0 +1,80 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * Procedure calls allocating an instance each against -fframe-reuse: the fib and series procedures of
+ * Paramtest3 with a longer series, and a procedure too large to inline called in a loop. Reuse takes
+ * the allocation per run from megabytes to a few kilobytes, but C2 allocates faster than the pool's
+ * bookkeeping and resets run, so the recursive series is about twice as slow with it.
+ */
+class FrameBenchmark {
+
+	static final String SERIES = """
+			VAR in, out, count;
+			PROCEDURE fib;
+			  VAR t, a, b;
+			  PROCEDURE recursiveCall;
+			    BEGIN
+			      in := t - 1; CALL fib; a := out;
+			      in := t - 2; CALL fib; b := out;
+			      out := a + b
+			    END;
+			  PROCEDURE baseCase;
+			    out := t;
+			  BEGIN
+			    t := in;
+			    IF t <= 1 THEN CALL baseCase;
+			    IF t > 1 THEN CALL recursiveCall
+			  END;
+			PROCEDURE series;
+			  CONST n = 24, start = 1;
+			  VAR i;
+			  PROCEDURE incI;
+			    CONST incVal = 1;
+			    i := i + incVal;
+			  PROCEDURE printOut;
+			    ! out;
+			  BEGIN
+			    count := "24";
+			    i := start;
+			    WHILE i <= n DO BEGIN in := i; CALL fib; CALL printOut; CALL incI END;
+			    CALL printMessage
+			  END;
+			PROCEDURE printMessage;
+			  ! "printed first " + count + " fib series";
+			CALL series
+			.
+			""";
+
+	// run is too large for the JIT to inline
+	static final String LOOP = """
+			VAR i, sum;
+			PROCEDURE step;
+			  VAR x, y;
+			  BEGIN
+			    x := i;
+			    x := x * 31 + 0; y := y + x % 7; x := x * 31 + 1; y := y + x % 7; x := x * 31 + 2; y := y + x % 7;
+			    x := x * 31 + 3; y := y + x % 7; x := x * 31 + 4; y := y + x % 7; x := x * 31 + 5; y := y + x % 7;
+			    x := x * 31 + 6; y := y + x % 7; x := x * 31 + 7; y := y + x % 7; x := x * 31 + 8; y := y + x % 7;
+			    x := x * 31 + 9; y := y + x % 7; x := x * 31 + 10; y := y + x % 7; x := x * 31 + 11; y := y + x % 7;
+			    x := x * 31 + 12; y := y + x % 7; x := x * 31 + 13; y := y + x % 7; x := x * 31 + 14; y := y + x % 7;
+			    x := x * 31 + 15; y := y + x % 7; x := x * 31 + 16; y := y + x % 7; x := x * 31 + 17; y := y + x % 7;
+			    x := x * 31 + 18; y := y + x % 7; x := x * 31 + 19; y := y + x % 7; x := x * 31 + 20; y := y + x % 7;
+			    x := x * 31 + 21; y := y + x % 7; x := x * 31 + 22; y := y + x % 7; x := x * 31 + 23; y := y + x % 7;
+			    sum := sum + y
+			  END;
+			BEGIN
+			  i := 0; sum := 0;
+			  WHILE i < 200000 DO BEGIN CALL step; i := i + 1 END;
+			  ! sum
+			END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		// without precomputation, so that -O2 does not print the output from a string
+		Benchmark.compare("series", SERIES, new String[]{"-O1"}, new String[]{"-O1", "-fframe-reuse"},
+				new String[]{"-O2", "-fno-precompute"}, new String[]{"-O2", "-fno-precompute", "-fframe-reuse"});
+		Benchmark.compare("loop", LOOP, new String[]{"-O1"}, new String[]{"-O1", "-fframe-reuse"},
+				new String[]{"-O2", "-fno-precompute"}, new String[]{"-O2", "-fno-precompute", "-fframe-reuse"});
+	}
+}
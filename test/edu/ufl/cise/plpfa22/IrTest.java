@@ -0,0 +1,285 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.ASTNode;
+import edu.ufl.cise.plpfa22.ast.Program;
+import edu.ufl.cise.plpfa22.ir.BasicBlock;
+import edu.ufl.cise.plpfa22.ir.Instruction;
+import edu.ufl.cise.plpfa22.ir.IrBuilder;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.IrModule;
+import edu.ufl.cise.plpfa22.ir.LoadField;
+import edu.ufl.cise.plpfa22.ir.Phi;
+import edu.ufl.cise.plpfa22.ir.StoreField;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IrTest {
+
+	ASTNode check(String input) throws PLPException {
+		ASTNode ast = CompilerComponentFactory.getParser(CompilerComponentFactory.getLexer(input)).parse();
+		ast.visit(CompilerComponentFactory.getScopeVisitor(), null);
+		ast.visit(CompilerComponentFactory.getTypeInferenceVisitor(), null);
+		return ast;
+	}
+
+	@SuppressWarnings("unchecked")
+	List<CodeGenUtils.GenClass> compile(String input, boolean ir) throws Exception {
+		ASTNode ast = check(input);
+		return (List<CodeGenUtils.GenClass>) ast.visit(ir
+				? CompilerComponentFactory.getIrCodeGenVisitor("prog", "edu/ufl/cise/plpfa22", "")
+				: CompilerComponentFactory.getCodeGenVisitor("prog", "edu/ufl/cise/plpfa22", ""), null);
+	}
+
+	String run(List<CodeGenUtils.GenClass> classes) throws Exception {
+		PrintStream originalOut = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out));
+		try {
+			Class<?> mainClass = new CodeGenUtils.DynamicClassLoader().define(classes);
+			mainClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		} finally {
+			System.setOut(originalOut);
+		}
+		return out.toString();
+	}
+
+	void assertSameOutput(String input) throws Exception {
+		assertEquals(run(compile(input, false)), run(compile(input, true)));
+	}
+
+	IrModule lower(String input) throws PLPException {
+		return IrBuilder.build((Program) check(input), "prog", "edu/ufl/cise/plpfa22");
+	}
+
+	static List<Instruction> instructions(IrFunction function) {
+		List<Instruction> instructions = new ArrayList<>();
+		for (BasicBlock block : function.getBlocks()) {
+			instructions.addAll(block.getPhis());
+			instructions.addAll(block.getInstructions());
+		}
+		return instructions;
+	}
+
+	@Test
+	void loopsAndPhis() throws Exception {
+		String input = """
+				VAR a, b, i, t;
+				BEGIN
+				  a := 0; b := 1; i := 0;
+				  WHILE i < 10 DO
+				  BEGIN t := a; a := b; b := t + b; i := i + 1 END;
+				  ! a; ! b
+				END
+				.
+				""";
+		assertSameOutput(input);
+		IrFunction main = lower(input).getMain();
+		main.verify();
+		// a, b and i change in the loop; t is only used inside it
+		assertEquals(3, main.getBlocks().get(1).getPhis().size());
+		for (Instruction instruction : instructions(main)) {
+			assertFalse(instruction instanceof LoadField || instruction instanceof StoreField, instruction.toString());
+		}
+	}
+
+	@Test
+	void swapThroughPhis() throws Exception {
+		String input = """
+				VAR a, b, i;
+				BEGIN
+				  a := 1; b := 2; i := 0;
+				  WHILE i < 3 DO
+				  BEGIN a := b; b := a + b; i := i + 1 END;
+				  ! a; ! b
+				END
+				.
+				""";
+		assertSameOutput(input);
+	}
+
+	@Test
+	void capturedVariablesStayInFields() throws Exception {
+		String input = """
+				VAR x, y;
+				PROCEDURE p;
+				  VAR local, counter;
+				  PROCEDURE q;
+				    counter := counter + x;
+				  BEGIN local := 3; counter := 0; CALL q; CALL q; ! counter + local END;
+				BEGIN x := 5; y := 7; CALL p; ! y END
+				.
+				""";
+		assertSameOutput(input);
+		IrModule module = lower(input);
+		IrFunction p = module.getFunction("edu/ufl/cise/plpfa22/prog$p");
+		Set<String> fields = new TreeSet<>();
+		for (Instruction instruction : instructions(p)) {
+			if (instruction instanceof LoadField load) {
+				fields.add(load.getField().name());
+			} else if (instruction instanceof StoreField store) {
+				fields.add(store.getField().name());
+			}
+		}
+		assertEquals(Set.of("counter"), fields);
+		// x is read by q, so the main block keeps it in its field; y is not
+		Set<String> mainFields = new TreeSet<>();
+		for (Instruction instruction : instructions(module.getMain())) {
+			if (instruction instanceof StoreField store) {
+				mainFields.add(store.getField().name());
+			}
+		}
+		assertEquals(Set.of("x"), mainFields);
+	}
+
+	@Test
+	void recursionAndNesting() throws Exception {
+		assertSameOutput("""
+				VAR n, result;
+				PROCEDURE fact;
+				  VAR saved;
+				  BEGIN
+				    IF n > 1 THEN BEGIN saved := n; n := n - 1; CALL fact; result := result * saved END;
+				    IF n <= 1 THEN result := 1
+				  END;
+				BEGIN n := 6; result := 1; CALL fact; ! result END
+				.
+				""");
+		assertSameOutput("""
+				VAR a;
+				PROCEDURE p;
+				  VAR b;
+				  PROCEDURE q;
+				    VAR c;
+				    PROCEDURE r;
+				      BEGIN a := a + b + c; ! a END;
+				    BEGIN c := 100; CALL r END;
+				  BEGIN b := 10; CALL q; CALL q END;
+				BEGIN a := 1; CALL p; ! a END
+				.
+				""");
+	}
+
+	@Test
+	void operators() throws Exception {
+		assertSameOutput("""
+				CONST s = "abc", t = "ab", k = 7, yes = TRUE;
+				VAR u, v, w;
+				BEGIN
+				  u := "ab"; v := u + "c"; w := 5;
+				  ! t < s; ! s < t; ! t <= s; ! s > t; ! s >= s; ! s > s;
+				  ! u = t; ! u # t; ! v = s; ! u + "x";
+				  ! k / 2; ! k % 4; ! 0 - k; ! k * w; ! w - 10;
+				  ! w < k; ! w >= k; ! w = 5; ! w # 5;
+				  ! yes + FALSE; ! yes * FALSE; ! FALSE < yes; ! yes <= FALSE; ! yes = yes
+				END
+				.
+				""");
+	}
+
+	@Test
+	void uninitializedVariables() throws Exception {
+		assertSameOutput("""
+				VAR n, s, b;
+				BEGIN
+				  IF FALSE THEN BEGIN n := 1; s := "x"; b := TRUE END;
+				  ! n; ! s; ! b
+				END
+				.
+				""");
+	}
+
+	@Test
+	void sameClassLayout() throws Exception {
+		String input = """
+				CONST c = 42;
+				VAR x, unused;
+				PROCEDURE p;
+				  VAR y;
+				  PROCEDURE q;
+				    y := x;
+				  BEGIN y := c; CALL q; ! y END;
+				BEGIN x := 1; CALL p END
+				.
+				""";
+		List<CodeGenUtils.GenClass> direct = compile(input, false);
+		List<CodeGenUtils.GenClass> ir = compile(input, true);
+		assertEquals(direct.size(), ir.size());
+		Class<?> directMain = new CodeGenUtils.DynamicClassLoader().define(direct);
+		Class<?> irMain = new CodeGenUtils.DynamicClassLoader().define(ir);
+		assertEquals(directMain.getName(), irMain.getName());
+		for (CodeGenUtils.GenClass genClass : direct) {
+			String name = CodeGenUtils.toJavaClassName(genClass.className());
+			assertEquals(fields(directMain.getClassLoader().loadClass(name)), fields(irMain.getClassLoader().loadClass(name)), name);
+		}
+		assertTrue(run(ir).startsWith("1"));
+	}
+
+	static Set<String> fields(Class<?> c) {
+		Set<String> fields = new TreeSet<>();
+		for (Field field : c.getDeclaredFields()) {
+			fields.add(field.getName() + ":" + field.getType().getName());
+		}
+		return fields;
+	}
+
+	@Test
+	void phiOperandsMatchPredecessors() throws Exception {
+		IrModule module = lower("""
+				VAR i, j, s;
+				BEGIN
+				  i := 0; s := 0;
+				  WHILE i < 4 DO
+				  BEGIN
+				    j := 0;
+				    WHILE j < i DO BEGIN IF j % 2 = 0 THEN s := s + j; j := j + 1 END;
+				    i := i + 1
+				  END;
+				  ! s
+				END
+				.
+				""");
+		IrFunction main = module.getMain();
+		main.verify();
+		for (BasicBlock block : main.getBlocks()) {
+			for (Phi phi : block.getPhis()) {
+				assertEquals(block.getPredecessors().size(), phi.getOperands().size());
+			}
+		}
+	}
+
+	@Test
+	void deadStringOperationsStillThrow() throws Exception {
+		// s is null, and only the = and # tests accept that as their argument
+		String[] expressions = {"\"x\" + s", "s + \"x\"", "\"x\" < s", "\"x\" <= s", "\"x\" > s", "\"x\" >= s", "s = \"x\""};
+		for (String expression : expressions) {
+			String input = """
+					VAR s, t, b;
+					BEGIN t := "ba"; b := (%s) = (%s); ! t END
+					.
+					""".formatted(expression, expression);
+			List<CodeGenUtils.GenClass> classes = new Compiler(CompilerOptions.parse("-O1", "-fir-backend"))
+					.compile(input, "prog", "edu/ufl/cise/plpfa22");
+			Exception e = assertThrows(Exception.class, () -> run(classes), expression);
+			assertTrue(e.getCause() instanceof NullPointerException, expression);
+		}
+		String equality = """
+				VAR s, t, b;
+				BEGIN t := "ba"; b := "x" = s; b := "x" # s; ! t END
+				.
+				""";
+		assertEquals("ba", run(new Compiler(CompilerOptions.parse("-O1", "-fir-backend"))
+				.compile(equality, "prog", "edu/ufl/cise/plpfa22")).strip());
+	}
+}
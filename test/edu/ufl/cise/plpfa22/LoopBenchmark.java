@@ -0,0 +1,29 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * Counting loops in a nested procedure with variables in fields against variables cached in locals.
+ */
+class LoopBenchmark {
+
+	static final String NESTED = """
+			VAR n, sum;
+			PROCEDURE outer;
+			  VAR i;
+			  PROCEDURE inner;
+			    VAR j;
+			    BEGIN
+			      j := 0;
+			      WHILE j < n DO BEGIN sum := sum + i * j; j := j + 1 END
+			    END;
+			  BEGIN
+			    i := 0;
+			    WHILE i < n DO BEGIN CALL inner; i := i + 1 END
+			  END;
+			BEGIN n := 3000; sum := 0; CALL outer; ! sum END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		Benchmark.compare("nested", NESTED, new String[]{"-O2", "-fno-scalar-replacement"}, new String[]{"-O2"});
+	}
+}
@@ -0,0 +1,1271 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.CompilerOptions.OptLevel;
+import edu.ufl.cise.plpfa22.ast.AstTraversalVisitor;
+import edu.ufl.cise.plpfa22.ast.ConstDec;
+import edu.ufl.cise.plpfa22.ast.ExpressionBinary;
+import edu.ufl.cise.plpfa22.ast.ExpressionIdent;
+import edu.ufl.cise.plpfa22.ast.Program;
+import edu.ufl.cise.plpfa22.ast.StatementIf;
+import edu.ufl.cise.plpfa22.ast.StatementWhile;
+import edu.ufl.cise.plpfa22.ir.Branch;
+import edu.ufl.cise.plpfa22.ir.IrBuilder;
+import edu.ufl.cise.plpfa22.ir.IrFunction;
+import edu.ufl.cise.plpfa22.ir.IrModule;
+import edu.ufl.cise.plpfa22.opt.AlgebraicSimplification;
+import edu.ufl.cise.plpfa22.opt.AstPass;
+import edu.ufl.cise.plpfa22.opt.ConstantFolding;
+import edu.ufl.cise.plpfa22.opt.DeadCodeElimination;
+import edu.ufl.cise.plpfa22.opt.IrConstantFolding;
+import edu.ufl.cise.plpfa22.opt.IrDeadCodeElimination;
+import edu.ufl.cise.plpfa22.opt.IrPass;
+import edu.ufl.cise.plpfa22.opt.PassManager;
+import edu.ufl.cise.plpfa22.opt.PeepholeOptimizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptimizerTests {
+
+	static final String PACKAGE_NAME = "edu/ufl/cise/plpfa22";
+
+	List<CodeGenUtils.GenClass> compile(String input, String... args) throws PLPException {
+		return new Compiler(CompilerOptions.parse(args)).compile(input, "prog", PACKAGE_NAME);
+	}
+
+	String run(List<CodeGenUtils.GenClass> classes) throws Exception {
+		PrintStream originalOut = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out));
+		try {
+			Class<?> mainClass = new CodeGenUtils.DynamicClassLoader().define(classes);
+			mainClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		} finally {
+			System.setOut(originalOut);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Checks that the program prints the same with the given options as without optimization.
+	 */
+	String assertSameOutput(String input, String... args) throws Exception {
+		String expected = run(compile(input, "-O0"));
+		assertEquals(expected, run(compile(input, args)), String.join(" ", args));
+		return expected;
+	}
+
+	record RecordingPass(String name, OptLevel minLevel, List<String> log) implements AstPass, IrPass {
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public OptLevel getMinLevel() {
+			return minLevel;
+		}
+
+		@Override
+		public Program run(Program program, CompilerOptions options) {
+			log.add(name);
+			return program;
+		}
+
+		@Override
+		public boolean run(IrFunction function, CompilerOptions options) {
+			log.add(name + ":" + function.getClassName().substring(function.getClassName().lastIndexOf('/') + 1));
+			return false;
+		}
+	}
+
+	@Test
+	void parseOptions() {
+		CompilerOptions options = CompilerOptions.parse("-O2", "-fno-inline", "-fir-backend");
+		assertEquals(OptLevel.O2, options.getLevel());
+		assertFalse(options.isEnabled("inline", OptLevel.O1));
+		assertTrue(options.isEnabled("fold", OptLevel.O1));
+		assertTrue(options.isEnabled("ir-backend", null));
+		assertFalse(options.isEnabled("other", null));
+		assertEquals(OptLevel.O0, CompilerOptions.parse().getLevel());
+		assertFalse(CompilerOptions.parse().isEnabled("fold", OptLevel.O1));
+		assertTrue(CompilerOptions.parse("-O0", "-ffold").isEnabled("fold", OptLevel.O1));
+		assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse("-O3"));
+		assertEquals("-O2 -fir-backend -fno-inline", options.toString());
+		CompilerOptions unroll = CompilerOptions.parse("-O2", "-funroll-factor=8");
+		assertEquals(8, unroll.getParam("unroll-factor", 4));
+		assertEquals(4, CompilerOptions.parse().getParam("unroll-factor", 4));
+		assertFalse(unroll.isEnabled("unroll-factor", null));
+		assertEquals("-O2 -funroll-factor=8", unroll.toString());
+	}
+
+	@Test
+	void passesRunInOrderPerLevel() throws Exception {
+		List<String> log = new ArrayList<>();
+		RecordingPass a = new RecordingPass("a", OptLevel.O1, log);
+		RecordingPass b = new RecordingPass("b", OptLevel.O2, log);
+		RecordingPass c = new RecordingPass("c", null, log);
+		String input = """
+				PROCEDURE p; ! 1;
+				CALL p
+				.
+				""";
+
+		PassManager o1 = new PassManager(CompilerOptions.parse("-O1")).add((AstPass) b).add((AstPass) a).add((IrPass) c);
+		assertEquals(List.of("a"), o1.getEnabledPasses());
+
+		CompilerOptions options = CompilerOptions.parse("-O2", "-fc", "-fir-backend");
+		PassManager o2 = new PassManager(options).add((AstPass) b).add((AstPass) a).add((IrPass) c);
+		assertEquals(List.of("b", "a", "c"), o2.getEnabledPasses());
+		Compiler compiler = new Compiler(options, o2);
+		assertEquals("1\n", run(compiler.compile(input, "prog", PACKAGE_NAME)).replace("\r", ""));
+		assertEquals(List.of("b", "a", "c:prog", "c:prog$p"), log);
+
+		for (String phase : List.of("parse", "scope", "types", "b", "a", "lower", "c", "codegen")) {
+			assertTrue(compiler.getPassManager().getTimings().containsKey(phase), phase);
+		}
+		assertTrue(compiler.getPassManager().getReport().contains("total"));
+	}
+
+	@Test
+	void levelsAgree() throws Exception {
+		String input = """
+				CONST n = 10;
+				VAR i, sum, s;
+				PROCEDURE add;
+				  sum := sum + i;
+				BEGIN
+				  i := 0; sum := 0; s := "";
+				  WHILE i < n DO BEGIN CALL add; s := s + "."; i := i + 1 END;
+				  ! sum; ! s
+				END
+				.
+				""";
+		assertSameOutput(input, "-O1");
+		assertSameOutput(input, "-O2");
+		assertSameOutput(input, "-O2", "-fir-backend");
+	}
+
+	static int count(Program program, Class<?> nodeClass) throws PLPException {
+		int[] count = {0};
+		program.visit(new AstTraversalVisitor() {
+			@Override
+			public Object visitExpressionBinary(ExpressionBinary expressionBinary, Object arg) throws PLPException {
+				if (nodeClass.isInstance(expressionBinary)) {
+					count[0]++;
+				}
+				return super.visitExpressionBinary(expressionBinary, arg);
+			}
+
+			@Override
+			public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+				if (nodeClass.isInstance(statementWhile)) {
+					count[0]++;
+				}
+				return super.visitStatementWhile(statementWhile, arg);
+			}
+
+			@Override
+			public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+				if (nodeClass.isInstance(expressionIdent) && expressionIdent.getDec() instanceof ConstDec) {
+					count[0]++;
+				}
+				return null;
+			}
+		}, null);
+		return count[0];
+	}
+
+	@Test
+	void constantFolding() throws Exception {
+		String input = """
+				CONST n = 3, greeting = "hello", yes = TRUE;
+				VAR x;
+				PROCEDURE p;
+				  CONST m = 4;
+				  ! n * m + 2 * (n - 1);
+				BEGIN
+				  x := n;
+				  ! greeting + ", " + "world";
+				  ! yes * (n < 4) + FALSE;
+				  ! "he" < greeting; ! greeting > "lo"; ! greeting >= "hello";
+				  ! x * (n + 1);
+				  ! 7 / (n - 3 + 1);
+				  CALL p
+				END
+				.
+				""";
+		assertEquals("hello, world\ntrue\ntrue\ntrue\ntrue\n12\n7\n16\n", assertSameOutput(input, "-O1").replace("\r", ""));
+		assertSameOutput(input, "-O1", "-fir-backend");
+
+		Program program = new Compiler(new CompilerOptions()).check(input);
+		Program folded = new ConstantFolding().run(program, new CompilerOptions());
+		assertEquals(0, count(folded, ExpressionIdent.class));
+		// only x * 4 is left
+		assertEquals(1, count(folded, ExpressionBinary.class));
+	}
+
+	@Test
+	void divisionByZeroIsNotFolded() throws Exception {
+		String input = """
+				CONST zero = 0;
+				! 1 / zero
+				.
+				""";
+		Program folded = new ConstantFolding().run(new Compiler(new CompilerOptions()).check(input), new CompilerOptions());
+		assertEquals(1, count(folded, ExpressionBinary.class));
+		Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O1")));
+		assertTrue(e.getCause() instanceof ArithmeticException);
+	}
+
+	@Test
+	void escapedStringsSurviveFolding() throws Exception {
+		assertSameOutput("""
+				CONST a = "tab\\there", b = "quote\\"\\\\";
+				! a + b
+				.
+				""", "-O1");
+	}
+
+	@Test
+	void staticFinalConstants() throws Exception {
+		String input = """
+				CONST n = 42, s = "str", b = TRUE;
+				PROCEDURE p;
+				  CONST m = 7;
+				  ! m;
+				BEGIN ! n; ! s; ! b; CALL p END
+				.
+				""";
+		for (String backend : List.of("-fno-ir-backend", "-fir-backend")) {
+			List<CodeGenUtils.GenClass> classes = compile(input, "-O1", "-fno-fold", backend);
+			Class<?> mainClass = new CodeGenUtils.DynamicClassLoader().define(classes);
+			Field n = mainClass.getField("n");
+			assertTrue(Modifier.isStatic(n.getModifiers()) && Modifier.isFinal(n.getModifiers()));
+			assertEquals(42, n.get(null));
+			assertEquals("str", mainClass.getField("s").get(null));
+			assertEquals(true, mainClass.getField("b").get(null));
+			Field m = mainClass.getClassLoader().loadClass("edu.ufl.cise.plpfa22.prog$p").getField("m");
+			assertEquals(7, m.get(null));
+			for (CodeGenUtils.GenClass genClass : classes) {
+				String code = CodeGenUtils.bytecodeToString(genClass.byteCode());
+				assertFalse(Pattern.compile("(GET|PUT)FIELD \\S+\\.[nsbm] ").matcher(code).find(), code);
+			}
+		}
+		assertSameOutput(input, "-O1", "-fno-fold");
+	}
+
+	static int countStatements(Program program) throws PLPException {
+		int[] count = {0};
+		program.visit(new AstTraversalVisitor() {
+			@Override
+			public Object visitStatementIf(StatementIf statementIf, Object arg) throws PLPException {
+				count[0]++;
+				return super.visitStatementIf(statementIf, arg);
+			}
+
+			@Override
+			public Object visitStatementWhile(StatementWhile statementWhile, Object arg) throws PLPException {
+				count[0]++;
+				return super.visitStatementWhile(statementWhile, arg);
+			}
+		}, null);
+		return count[0];
+	}
+
+	@Test
+	void deadCodeElimination() throws Exception {
+		String input = """
+				CONST debug = FALSE, verbose = 0;
+				VAR x;
+				PROCEDURE trace;
+				  ! "trace";
+				PROCEDURE log;
+				  CALL trace;
+				PROCEDURE unused;
+				  CALL log;
+				PROCEDURE work;
+				  x := x + 1;
+				BEGIN
+				  x := 0;
+				  IF debug THEN CALL log;
+				  IF verbose > 0 THEN BEGIN CALL log; ! x END;
+				  WHILE debug DO x := x + 1;
+				  IF debug = FALSE THEN CALL work;
+				  IF x > 0 THEN BEGIN END;
+				  ! x
+				END
+				.
+				""";
+		assertEquals("1\n", assertSameOutput(input, "-O1").replace("\r", ""));
+		assertSameOutput(input, "-O1", "-fir-backend");
+
+		CompilerOptions options = CompilerOptions.parse("-O1");
+		Program program = new ConstantFolding().run(new Compiler(options).check(input), options);
+		Program optimized = new DeadCodeElimination().run(program, options);
+		assertEquals(0, countStatements(optimized));
+		assertEquals(List.of("work"), optimized.block.procedureDecs.stream().map(procDec -> String.valueOf(procDec.ident.getText())).toList());
+		// trace and log are only called from code that was removed
+		assertEquals(5, compile(input, "-O0").size());
+		assertEquals(2, compile(input, "-O1").size());
+		assertEquals(5, compile(input, "-O1", "-fno-dce").size());
+	}
+
+	@Test
+	void conditionsThatMayThrowAreKept() throws Exception {
+		String input = """
+				VAR zero;
+				BEGIN
+				  zero := 0;
+				  IF 1 / zero = 1 THEN BEGIN END;
+				  ! "unreachable"
+				END
+				.
+				""";
+		for (String backend : List.of("-fno-ir-backend", "-fir-backend")) {
+			Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O1", backend)));
+			assertTrue(e.getCause() instanceof ArithmeticException, backend);
+		}
+		String strings = """
+				VAR s;
+				BEGIN
+				  IF s = "x" THEN BEGIN END;
+				  ! "unreachable"
+				END
+				.
+				""";
+		Exception e = assertThrows(Exception.class, () -> run(compile(strings, "-O1")));
+		assertTrue(e.getCause() instanceof NullPointerException);
+	}
+
+	@Test
+	void irBranchesOnPropagatedConstants() throws Exception {
+		String input = """
+				VAR b, i, n;
+				BEGIN
+				  b := FALSE; n := 0; i := 0;
+				  WHILE i < 3 DO BEGIN IF b THEN ! "never"; n := n + i; i := i + 1 END;
+				  IF b THEN ! "never";
+				  ! n
+				END
+				.
+				""";
+		assertEquals("3\n", assertSameOutput(input, "-O1", "-fir-backend").replace("\r", ""));
+
+		CompilerOptions options = CompilerOptions.parse("-O1");
+		IrModule module = IrBuilder.build(new Compiler(options).check(input), "prog", PACKAGE_NAME);
+		IrFunction main = module.getMain();
+		int blocks = main.getBlocks().size();
+		new IrConstantFolding().run(main, options);
+		new IrDeadCodeElimination().run(main, options);
+		main.verify();
+		assertTrue(main.getBlocks().size() < blocks, main.toString());
+		long branches = main.getBlocks().stream().filter(block -> block.getTerminator() instanceof Branch).count();
+		assertEquals(1, branches, main.toString());
+	}
+
+	static int countInstructions(List<CodeGenUtils.GenClass> classes) {
+		int count = 0;
+		for (CodeGenUtils.GenClass genClass : classes) {
+			for (String line : CodeGenUtils.bytecodeToString(genClass.byteCode()).split("\n")) {
+				if (line.matches("    [A-Z][A-Z0-9_]+( .*)?") && !line.startsWith("    MAX")) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Test
+	void peephole() throws Exception {
+		String input = """
+				VAR x, s, b;
+				PROCEDURE p;
+				  VAR i;
+				  BEGIN
+				    i := 0;
+				    WHILE i < 300 DO BEGIN x := x + 1; s := s + "."; i := i + 1 END;
+				    IF s # "" THEN b := x >= 300
+				  END;
+				BEGIN
+				  x := 0; s := "";
+				  CALL p;
+				  IF x > 100 THEN ! x;
+				  IF b THEN ! "b";
+				  IF s = "" THEN ! "empty"
+				END
+				.
+				""";
+		for (String backend : List.of("-fno-ir-backend", "-fir-backend")) {
+			assertSameOutput(input, "-O0", "-fpeephole", backend);
+			List<CodeGenUtils.GenClass> plain = compile(input, "-O0", backend);
+			List<CodeGenUtils.GenClass> optimized = compile(input, "-O0", "-fpeephole", backend);
+			assertTrue(countInstructions(optimized) < countInstructions(plain), backend);
+			for (CodeGenUtils.GenClass genClass : optimized) {
+				String code = CodeGenUtils.bytecodeToString(genClass.byteCode());
+				assertFalse(Pattern.compile("LDC -?\\d|BooleanNotOp").matcher(code).find(), code);
+			}
+		}
+		String direct = "";
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-fpeephole")) {
+			direct += CodeGenUtils.bytecodeToString(genClass.byteCode());
+		}
+		// x := x + 1 in p
+		assertTrue(Pattern.compile("DUP\\s+GETFIELD \\S+prog.x : I\\s+ICONST_1\\s+IADD\\s+PUTFIELD \\S+prog.x : I").matcher(direct).find(), direct);
+
+		Compiler compiler = new Compiler(CompilerOptions.parse("-O1"));
+		compiler.compile(input, "prog", PACKAGE_NAME);
+		PeepholeOptimizer peephole = (PeepholeOptimizer) compiler.getPassManager().getMethodPasses().get(0);
+		assertTrue(peephole.getStats().get("prog$p.run").removed() > 0);
+		assertEquals(0, peephole.getStats().get("prog.<init>").removed());
+		assertTrue(compiler.getPassManager().getReport().contains("prog$p.run"), compiler.getPassManager().getReport());
+	}
+
+	@Test
+	void peepholeKeepsLoops() throws Exception {
+		// jumps to jumps, empty loop bodies and loops that never end must survive threading
+		String input = """
+				VAR i, j;
+				BEGIN
+				  i := 0;
+				  WHILE i < 5 DO BEGIN j := 0; WHILE j < i DO j := j + 1; i := i + 1 END;
+				  WHILE FALSE DO ! "never";
+				  IF TRUE THEN IF i > 0 THEN IF j > 0 THEN ! i + j;
+				  ! i # 5
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fpeephole");
+		assertSameOutput(input, "-O0", "-fpeephole", "-fir-backend");
+		assertSameOutput(input, "-O2");
+		List<CodeGenUtils.GenClass> endless = compile("""
+				VAR i;
+				WHILE TRUE DO i := i + 1
+				.
+				""", "-O1");
+		new CodeGenUtils.DynamicClassLoader().define(endless);
+	}
+
+	@Test
+	void conditionJumps() throws Exception {
+		String input = """
+				VAR i, j, a, b, s, t;
+				BEGIN
+				  s := "ab"; t := "abc";
+				  i := 0;
+				  WHILE i < 2 DO
+				  BEGIN
+				    j := 0;
+				    WHILE j <= 1 DO
+				    BEGIN
+				      a := i = 1; b := j # 0;
+				      IF a + b THEN ! "or";
+				      IF a * b THEN ! "and";
+				      IF (a + b) * (a # b) THEN ! "xor";
+				      IF (a * FALSE) + (b * TRUE) THEN ! "b";
+				      IF a < b THEN ! "a < b";
+				      IF (i >= j) * (("ab" = s) + ("abc" # s)) THEN ! "mixed";
+				      IF (s <= t) * (t >= s) * ("ab" # t) THEN ! i + j;
+				      j := j + 1
+				    END;
+				    i := i + 1
+				  END;
+				  WHILE FALSE DO ! "never";
+				  IF TRUE THEN ! "always"
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fcondition-jumps");
+		assertSameOutput(input, "-O1");
+		String code = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-fcondition-jumps").get(0).byteCode());
+		// only the assignments to a and b still materialize booleans
+		assertEquals(2, Pattern.compile("ICONST_1\\s+GOTO").matcher(code).results().count(), code);
+		// # on strings jumps on the result of equals instead of negating it
+		assertFalse(Pattern.compile("equals \\(Ljava/lang/Object;\\)Z\\s+INVOKESTATIC").matcher(code).find(), code);
+	}
+
+	@Test
+	void conditionsDoNotSkipExceptions() throws Exception {
+		String[] conditions = {"(1 / zero = 1) + TRUE", "TRUE + (1 / zero = 1)", "FALSE * (1 / zero = 1)", "(s = \"x\") + (s < \"y\")"};
+		for (String condition : conditions) {
+			String input = """
+					VAR zero, s;
+					BEGIN zero := 0; IF %s THEN ! "then" END
+					.
+					""".formatted(condition);
+			Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O0", "-fcondition-jumps")), condition);
+			assertTrue(e.getCause() instanceof ArithmeticException || e.getCause() instanceof NullPointerException, condition);
+		}
+		// a true left side decides + when the right side cannot throw
+		assertEquals("then\n", run(compile("""
+				VAR x;
+				BEGIN x := 1; IF (x > 0) + (x / 2 = 0) THEN ! "then" END
+				.
+				""", "-O0", "-fcondition-jumps")).replace("\r", ""));
+	}
+
+	@Test
+	void indyConcat() throws Exception {
+		String input = """
+				CONST sep = ", ", odd = "\u0001\u0002";
+				VAR s, t, i;
+				PROCEDURE p;
+				  s := s + sep + t + "!";
+				BEGIN
+				  s := "a"; t := "b"; i := 0;
+				  WHILE i < 3 DO BEGIN CALL p; i := i + 1 END;
+				  ! s + ("[" + t + "]") + odd;
+				  ! "x" + sep + "y"
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-findy-concat");
+		assertSameOutput(input, "-O1");
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-findy-concat", "-fstatic-constants")) {
+			String code = CodeGenUtils.bytecodeToString(genClass.byteCode());
+			assertFalse(code.contains("concat (Ljava/lang/String;)"), code);
+		}
+		String p = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-findy-concat", "-fstatic-constants").get(1).byteCode());
+		assertEquals(1, Pattern.compile("INVOKEDYNAMIC").matcher(p).results().count(), p);
+		assertTrue(p.contains("\"\\u0001, \\u0001!\""), p);
+
+		// more operands than one call site takes
+		String many = "VAR v; BEGIN v := \"v\"; ! v" + " + v".repeat(300) + " END .";
+		assertEquals(301, assertSameOutput(many, "-O0", "-findy-concat").strip().length());
+	}
+
+	@Test
+	void indyConcatKeepsNullChecks() throws Exception {
+		for (String expression : List.of("s + \"x\"", "\"x\" + s", "\"x\" + (\"y\" + s)")) {
+			String input = "VAR s; ! %s .".formatted(expression);
+			Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O0", "-findy-concat")), expression);
+			assertTrue(e.getCause() instanceof NullPointerException, expression);
+		}
+	}
+
+	@Test
+	void stringIntrinsics() throws Exception {
+		String input = """
+				CONST s = "abc", t = "ab";
+				VAR u, v;
+				BEGIN
+				  u := "ab"; v := u + "c";
+				  ! t < s; ! s < t; ! u <= v; ! v > u; ! s >= s; ! s > s; ! u < u;
+				  ! u = t; ! u # t; ! v = s;
+				  IF u < v THEN ! "lt"; IF u > v THEN ! "gt";
+				  WHILE u # v DO u := v
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fstring-intrinsics");
+		assertSameOutput(input, "-O0", "-fstring-intrinsics", "-fir-backend");
+		assertSameOutput(input, "-O1");
+		for (String[] args : List.of(new String[]{"-fstring-intrinsics"}, new String[]{"-fstring-intrinsics", "-fir-backend"})) {
+			String code = CodeGenUtils.bytecodeToString(compile(input, args).get(0).byteCode());
+			assertEquals(9, Pattern.compile("INVOKESTATIC edu/ufl/cise/plpfa22/PLPRuntime").matcher(code).results().count(), code);
+			assertFalse(Pattern.compile("startsWith|endsWith|BooleanNotOp").matcher(code).find(), code);
+		}
+	}
+
+	@Test
+	void stringIntrinsicsKeepNullChecks() throws Exception {
+		for (String expression : List.of("s < \"x\"", "\"x\" <= s", "s > \"x\"", "\"x\" >= s", "s # \"x\"")) {
+			String input = "VAR s; ! %s .".formatted(expression);
+			Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O0", "-fstring-intrinsics")), expression);
+			assertTrue(e.getCause() instanceof NullPointerException, expression);
+		}
+	}
+
+	@Test
+	void ropeStrings() throws Exception {
+		String input = """
+				VAR s, t, u, i;
+				PROCEDURE p;
+				  s := s + "<" + t + ">";
+				BEGIN
+				  s := "a"; t := "b"; i := 0;
+				  WHILE i < 3 DO BEGIN CALL p; u := s; s := s + "."; i := i + 1 END;
+				  ! s; ! u;
+				  t := s; t := t + "!"; s := s + "?"; t := t + "!";
+				  ! t; ! s; ! s < t; ! t > "!!"
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-frope-strings");
+		assertSameOutput(input, "-O0", "-frope-strings", "-findy-concat");
+		assertSameOutput(input, "-O2");
+		String main = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-frope-strings").get(0).byteCode());
+		assertTrue(main.contains("public Ledu/ufl/cise/plpfa22/PLPString; s"), main);
+		assertTrue(main.contains("public Ledu/ufl/cise/plpfa22/PLPString; t"), main);
+		assertTrue(main.contains("public Ljava/lang/String; u"), main);
+		assertFalse(main.contains("concat"), main);
+
+		String uninitialized = "VAR s; BEGIN IF FALSE THEN s := s + \"x\"; ! s END .";
+		assertEquals("null", assertSameOutput(uninitialized, "-O0", "-frope-strings").strip());
+	}
+
+	@Test
+	void ropeStringsKeepNullChecks() throws Exception {
+		for (String input : List.of("VAR s; s := s + \"x\" .", "VAR s, t; BEGIN s := \"a\"; s := s + t END .")) {
+			Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O0", "-frope-strings")), input);
+			assertTrue(e.getCause() instanceof NullPointerException, input);
+		}
+	}
+
+	@Test
+	void tailCalls() throws Exception {
+		String input = """
+				VAR n, sum;
+				PROCEDURE count;
+				  VAR seen, s;
+				  PROCEDURE check;
+				    IF seen # 0 THEN ! "stale";
+				  BEGIN
+				    CALL check;
+				    IF "" = s THEN ! "stale string";
+				    seen := 1; s := "";
+				    sum := sum + n; n := n - 1;
+				    IF n > 0 THEN BEGIN IF n # 0 THEN BEGIN CALL count; END END
+				  END;
+				BEGIN n := DEPTH; sum := 0; CALL count; ! sum END
+				.
+				""";
+		assertEquals("5050", assertSameOutput(input.replace("DEPTH", "100"), "-O0", "-ftail-calls").strip());
+		// far deeper than the JVM stack allows
+		assertEquals(String.valueOf((int) (1_000_000L * 1_000_001 / 2)), run(compile(input.replace("DEPTH", "1000000"), "-O1")).strip());
+		for (CodeGenUtils.GenClass genClass : compile(input.replace("DEPTH", "1"), "-O1")) {
+			String code = CodeGenUtils.bytecodeToString(genClass.byteCode());
+			if (genClass.className().endsWith("$count")) {
+				assertFalse(Pattern.compile("NEW edu/ufl/cise/plpfa22/prog\\$count\\s").matcher(code).find(), code);
+			}
+		}
+
+		// not in tail position
+		String notTail = """
+				VAR n;
+				PROCEDURE down;
+				  BEGIN n := n - 1; IF n > 0 THEN CALL down; ! n END;
+				BEGIN n := 3; CALL down END
+				.
+				""";
+		assertEquals("0\n0\n0", assertSameOutput(notTail, "-O1").strip().replace("\r", ""));
+	}
+
+	@Test
+	void loopInvariantCodeMotion() throws Exception {
+		String input = """
+				CONST k = 3;
+				VAR a, b, s, out;
+				PROCEDURE p;
+				  VAR i, t;
+				  PROCEDURE bump;
+				    b := b + 1;
+				  BEGIN
+				    i := 0; t := 0;
+				    WHILE i < a * k DO
+				    BEGIN
+				      t := t + a * 2 + b;
+				      IF i = a - 1 THEN CALL bump;
+				      out := s + "x";
+				      WHILE t > a * 100 DO t := t - a * 100;
+				      i := i + 1
+				    END;
+				    ! t; ! out; ! b
+				  END;
+				BEGIN a := 4; b := 1; s := "q"; CALL p END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-flicm");
+		assertSameOutput(input, "-O2");
+		String p = "";
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-flicm", "-fstatic-constants")) {
+			if (genClass.className().endsWith("$p")) {
+				p = CodeGenUtils.bytecodeToString(genClass.byteCode());
+			}
+		}
+		// a * k, a * 2, a - 1 and both a * 100 are hoisted, b is not
+		assertEquals(5, Pattern.compile("GETFIELD edu/ufl/cise/plpfa22/prog.a ").matcher(p).results().count(), p);
+		assertEquals(2, Pattern.compile("GETFIELD edu/ufl/cise/plpfa22/prog.b ").matcher(p).results().count(), p);
+		// the static chain is walked once for the loop, then for ! out and ! b
+		assertEquals(3, Pattern.compile("GETFIELD \\S+\\.this\\$0").matcher(p).results().count(), p);
+
+		// division may throw, so it stays where the loop may never evaluate it
+		String divide = "VAR a, i, r; BEGIN WHILE i < 0 DO BEGIN r := 1 / a; i := i + 1 END; ! r END .";
+		assertEquals("0", assertSameOutput(divide, "-O0", "-flicm").strip());
+
+		// the second loop hoists a different instance into the slot the first one used, and only on one path
+		String siblings = """
+				VAR a;
+				PROCEDURE p;
+				  VAR b;
+				  PROCEDURE q;
+				    VAR j;
+				    BEGIN
+				      j := 0;
+				      WHILE j < 2 DO BEGIN b := b + 1; j := j + 1 END;
+				      IF a > 0 THEN WHILE j < 4 DO BEGIN a := a + 1; j := j + 1 END;
+				      ! a
+				    END;
+				  BEGIN CALL q END;
+				BEGIN a := 1; CALL p END
+				.
+				""";
+		assertEquals("3", assertSameOutput(siblings, "-O0", "-flicm").strip());
+		assertSameOutput(siblings, "-O1", "-flicm");
+	}
+
+	@Test
+	void scalarReplacement() throws Exception {
+		String input = """
+				VAR total, calls;
+				PROCEDURE outer;
+				  VAR i, j, last;
+				  PROCEDURE record;
+				    BEGIN calls := calls + 1; last := i END;
+				  PROCEDURE reset;
+				    IF total > 1000 THEN total := 0;
+				  BEGIN
+				    i := 0;
+				    WHILE i < 100 DO
+				    BEGIN
+				      j := 0;
+				      WHILE j < i DO BEGIN total := total + j; j := j + 1 END;
+				      IF i % 10 = 0 THEN CALL record;
+				      IF i % 7 = 0 THEN CALL reset;
+				      i := i + 1
+				    END;
+				    ! last; ! j
+				  END;
+				BEGIN CALL outer; ! total; ! calls END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fscalar-replacement");
+		assertSameOutput(input, "-O2");
+		String outer = "";
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-fscalar-replacement")) {
+			if (genClass.className().endsWith("$outer")) {
+				outer = CodeGenUtils.bytecodeToString(genClass.byteCode());
+			}
+		}
+		// i is loaded before the loop, stored for record and stored after the loop
+		assertEquals(1, Pattern.compile("GETFIELD \\S+outer.i ").matcher(outer).results().count(), outer);
+		assertEquals(3, Pattern.compile("PUTFIELD \\S+outer.i ").matcher(outer).results().count(), outer);
+		// total is written back before reset, which reads and writes it, and reread after
+		assertEquals(2, Pattern.compile("GETFIELD \\S+prog.total ").matcher(outer).results().count(), outer);
+	}
+
+	@Test
+	void uncapturedVariablesAreLocals() throws Exception {
+		String input = """
+				VAR x, y, s;
+				PROCEDURE p;
+				  VAR local, counter, text;
+				  PROCEDURE q;
+				    counter := counter + x;
+				  BEGIN
+				    ! local; ! text;
+				    local := 3; counter := 0; text := "t";
+				    CALL q; CALL q;
+				    text := text + "!";
+				    ! counter + local; ! text
+				  END;
+				BEGIN x := 5; y := 7; s := "s"; CALL p; ! y; ! s END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fcapture-analysis");
+		assertSameOutput(input, "-O0", "-fcapture-analysis", "-frope-strings");
+		assertSameOutput(input, "-O1");
+		Class<?> main = new CodeGenUtils.DynamicClassLoader().define(compile(input, "-O0", "-fcapture-analysis"));
+		assertEquals(Set.of("x:int"), IrTest.fields(main));
+		Class<?> p = main.getClassLoader().loadClass("edu.ufl.cise.plpfa22.prog$p");
+		assertEquals(Set.of("this$0:edu.ufl.cise.plpfa22.prog", "counter:int"), IrTest.fields(p));
+	}
+
+	@Test
+	void algebraicSimplification() throws Exception {
+		String input = """
+				VAR x, y, z;
+				BEGIN
+				  x := 0 - 7; y := 3;
+				  ! x + 0; ! 0 + x; ! x - 0; ! x * 1; ! 1 * x; ! x / 1;
+				  ! x * 0; ! 0 * x; ! x % 1; ! x - x;
+				  ! (x + 1) - 3; ! 5 + (x - 5); ! (2 * x) * 4; ! (x + 2147483647) + 1;
+				  ! (y / z) * 0; ! (y / z) % 1
+				END
+				.
+				""";
+		Program program = new Compiler(new CompilerOptions()).check(input);
+		Program simplified = new AlgebraicSimplification().run(program, new CompilerOptions());
+		// 0 - 7, x - 2, x * 8, x + MIN_VALUE, and (y / z) * 0 and (y / z) % 1, which may throw
+		assertEquals(8, count(simplified, ExpressionBinary.class));
+		Exception e = assertThrows(Exception.class, () -> run(compile(input, "-O1")));
+		assertTrue(e.getCause() instanceof ArithmeticException);
+		assertSameOutput(input.replace("! (y / z) * 0; ! (y / z) % 1", "z := 1"), "-O1");
+	}
+
+	@Test
+	void strengthReduction() throws Exception {
+		String input = """
+				VAR x, i;
+				BEGIN
+				  i := 0 - 40;
+				  WHILE i < 40 DO
+				  BEGIN
+				    x := i * 7 - 3;
+				    ! x * 4; ! 8 * x; ! x / 8; ! x % 16; ! x / 2; ! x % 2; ! x / 1073741824; ! x % 1073741824;
+				    i := i + 3
+				  END;
+				  x := 0 - 2147483647 - 1;
+				  ! x / 2; ! x % 2; ! x / 1073741824; ! x % 1073741824; ! x * 2; ! x / 4 * 4
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fstrength-reduction");
+		assertSameOutput(input, "-O1");
+		String code = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-fstrength-reduction").get(0).byteCode());
+		// only i * 7 is left
+		assertEquals(1, Pattern.compile("IMUL|IDIV|IREM").matcher(code).results().count(), code);
+	}
+
+	@Test
+	void commonSubexpressions() throws Exception {
+		String input = """
+				VAR a, b, c, x, y;
+				PROCEDURE p;
+				  b := b + 1;
+				BEGIN
+				  a := 3; b := 4; c := 5;
+				  x := (a * b + c) * (a * b + c);
+				  y := a * b;
+				  ! x; ! y;
+				  CALL p;
+				  ! a * b;
+				  a := a * b;
+				  ! a * b;
+				  IF a > b THEN ! (a * b + c) * (a * b + c)
+				END
+				.
+				""";
+		String output = assertSameOutput(input, "-O0", "-fcse");
+		assertEquals("289\n12\n15\n75\n6400\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O2");
+		String code = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-fcse").get(0).byteCode());
+		// a * b + c once, a * b again after CALL p and after a := a * b, and a * b + c again inside the IF
+		assertEquals(6, Pattern.compile("IMUL").matcher(code).results().count(), code);
+	}
+
+	@Test
+	void inlining() throws Exception {
+		String input = """
+				VAR i;
+				PROCEDURE incI;
+				  i := i + 1;
+				PROCEDURE twice;
+				  BEGIN CALL incI; CALL incI END;
+				PROCEDURE printMessage;
+				  ! "done";
+				PROCEDURE down;
+				  IF i > 0 THEN BEGIN i := i - 1; CALL down END;
+				PROCEDURE outer;
+				  VAR k;
+				  PROCEDURE bump;
+				    k := k + 1;
+				  PROCEDURE inner;
+				    BEGIN CALL bump; CALL bump END;
+				  PROCEDURE inner2;
+				    VAR j;
+				    BEGIN j := 5; CALL bump; ! j + k END;
+				  BEGIN k := i; CALL bump; CALL inner; CALL inner2; ! k END;
+				BEGIN
+				  i := 0;
+				  WHILE i < 10 DO BEGIN CALL twice; CALL incI END;
+				  ! i;
+				  CALL outer;
+				  CALL down;
+				  ! i;
+				  CALL printMessage
+				END
+				.
+				""";
+		String output = assertSameOutput(input, "-O0", "-finline");
+		assertEquals("12\n21\n16\n0\ndone\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O2");
+		assertSameOutput(input, "-O2", "-fir-backend");
+		// the recursive procedure and those declaring variables keep their classes
+		Set<String> classes = new HashSet<>();
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-finline")) {
+			classes.add(genClass.className());
+		}
+		assertEquals(Set.of("edu/ufl/cise/plpfa22/prog", "edu/ufl/cise/plpfa22/prog$down", "edu/ufl/cise/plpfa22/prog$outer",
+				"edu/ufl/cise/plpfa22/prog$outer$inner2"), classes);
+	}
+
+	@Test
+	void loopUnrolling() throws Exception {
+		String input = """
+				VAR i, s, t;
+				BEGIN
+				  s := 0; i := 0;
+				  WHILE i < 4 DO BEGIN s := s + i * i; i := i + 1 END;
+				  ! s; ! i;
+				  i := 1;
+				  WHILE i <= 30 DO BEGIN t := t + i; i := i + 1 END;
+				  ! t; ! i;
+				  i := 0;
+				  WHILE i < 10 DO BEGIN t := t - 1; i := i + 2 END;
+				  ! t
+				END
+				.
+				""";
+		String output = assertSameOutput(input, "-O0", "-funroll");
+		assertEquals("14\n4\n465\n31\n460\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O2");
+		assertSameOutput(input, "-O2", "-funroll-factor=7");
+		assertSameOutput(input, "-O2", "-fir-backend");
+
+		// the whole program would be precomputed
+		Compiler compiler = new Compiler(CompilerOptions.parse("-O2", "-fno-precompute"));
+		Program unrolled = compiler.getPassManager().runAstPasses(compiler.check(input));
+		// the first loop is gone, the second runs 7 times with 4 copies and 2 iterations after it, the third has stride 2
+		assertEquals(2, count(unrolled, StatementWhile.class));
+		// s + 1, s + 4, s + 9; i < 29, t + i, t + (i + 1) ... t + (i + 3), i + 4; t + 29, t + 30; i < 10, t - 1, i + 2
+		assertEquals(17, count(unrolled, ExpressionBinary.class));
+		// only the short loop is unrolled without partial unrolling
+		compiler = new Compiler(CompilerOptions.parse("-O2", "-fno-precompute", "-funroll-factor=1"));
+		assertEquals(2, count(compiler.getPassManager().runAstPasses(compiler.check(input)), StatementWhile.class));
+		// 15 copies of a body of 4 nodes fit, but not with the 2 iterations left over after them
+		compiler = new Compiler(CompilerOptions.parse("-O2", "-fno-precompute", "-funroll-factor=15"));
+		String fits = "VAR i, t; BEGIN i := 1; WHILE i <= 31 DO BEGIN t := t + i; i := i + 1 END; ! t END .";
+		assertTrue(count(compiler.getPassManager().runAstPasses(compiler.check(fits)), ExpressionBinary.class) > 3);
+		String tooLarge = "VAR i, t; BEGIN i := 1; WHILE i <= 32 DO BEGIN t := t + i; i := i + 1 END; ! t END .";
+		assertEquals(3, count(compiler.getPassManager().runAstPasses(compiler.check(tooLarge)), ExpressionBinary.class));
+	}
+
+	@Test
+	void precomputation() throws Exception {
+		String input = """
+				VAR i, s, name;
+				PROCEDURE fib;
+				  VAR a, b, t;
+				  BEGIN
+				    a := 0; b := 1; i := 0;
+				    WHILE i < 10 DO BEGIN t := a + b; a := b; b := t; i := i + 1 END;
+				    ! a
+				  END;
+				PROCEDURE count;
+				  IF i > 0 THEN BEGIN s := s + i; i := i - 1; CALL count END;
+				BEGIN
+				  CALL fib;
+				  i := 100; CALL count; ! s;
+				  name := "report";
+				  ! name + " done"; ! s > 5000
+				END
+				.
+				""";
+		String output = assertSameOutput(input, "-O0", "-fprecompute");
+		assertEquals("55\n5050\nreport done\ntrue\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O2");
+		List<CodeGenUtils.GenClass> classes = compile(input, "-O0", "-fprecompute");
+		assertEquals(1, classes.size());
+		String code = CodeGenUtils.bytecodeToString(classes.get(0).byteCode());
+		// a println per line, which ends it with the separator of the running JVM
+		assertEquals(4, Pattern.compile("println").matcher(code).results().count(), code);
+		assertTrue(code.contains("LDC \"55\"") && code.contains("LDC \"report done\""), code);
+
+		// too many steps, a run-time error or input: compiled as it is
+		assertEquals(3, compile(input, "-O0", "-fprecompute", "-fprecompute-steps=1000").size());
+		String failing = """
+				VAR x;
+				BEGIN ! 1; ! 1 / x END
+				.
+				""";
+		assertTrue(CodeGenUtils.bytecodeToString(compile(failing, "-O0", "-fprecompute").get(0).byteCode()).contains("IDIV"));
+		String reading = """
+				VAR x;
+				PROCEDURE p;
+				  ! x;
+				BEGIN ? x; CALL p; x := 1 END
+				.
+				""";
+		assertEquals(2, compile(reading, "-O0", "-fprecompute").size());
+		// a string of 4M characters, concatenated again and again
+		String growing = """
+				VAR s, t, i;
+				BEGIN
+				  s := "x"; i := 0;
+				  WHILE i < 22 DO BEGIN s := s + s; i := i + 1 END;
+				  i := 0;
+				  WHILE i < 300 DO BEGIN t := s + "y"; i := i + 1 END;
+				  ! i
+				END
+				.
+				""";
+		assertTrue(CodeGenUtils.bytecodeToString(compile(growing, "-O0", "-fprecompute").get(0).byteCode()).contains("LDC \"y\""));
+	}
+
+	@Test
+	void switchDispatch() throws Exception {
+		String input = """
+				VAR op, i, acc;
+				PROCEDURE setop;
+				  op := 2;
+				PROCEDURE bump;
+				  acc := acc + 1;
+				BEGIN
+				  i := 0;
+				  WHILE i < 12 DO
+				  BEGIN
+				    op := i % 6;
+				    IF op = 1 THEN ! "one";
+				    IF 2 = op THEN BEGIN ! "two"; CALL bump END;
+				    IF op = 3 THEN ! "three";
+				    IF op = 5 THEN ! acc;
+				    i := i + 1
+				  END;
+				  op := 1000;
+				  IF op = 7 THEN ! 7;
+				  IF op = 1000 THEN ! 1000;
+				  IF op = 0 - 5 THEN ! 5;
+				  op := 1;
+				  IF op = 1 THEN CALL setop;
+				  IF op = 2 THEN ! "reassigned";
+				  IF op = 3 THEN ! "no"
+				END
+				.
+				""";
+		assertSameOutput(input, "-O0", "-fswitch-dispatch");
+		assertSameOutput(input, "-O1");
+		String code = CodeGenUtils.bytecodeToString(compile(input, "-O1").get(0).byteCode());
+		// the keys 1, 2, 3, 5 are dense and 7, 1000, -5 are not; CALL setop assigns op
+		assertEquals(1, Pattern.compile("TABLESWITCH").matcher(code).results().count(), code);
+		assertEquals(1, Pattern.compile("LOOKUPSWITCH").matcher(code).results().count(), code);
+		// without folding, 0 - 5 is not a literal and the run is too short
+		assertFalse(CodeGenUtils.bytecodeToString(compile(input, "-O0", "-fswitch-dispatch").get(0).byteCode()).contains("LOOKUPSWITCH"));
+	}
+
+	@Test
+	void frameReuse() throws Exception {
+		String input = """
+				VAR in, out;
+				PROCEDURE fib;
+				  VAR t, a, b;
+				  PROCEDURE recursiveCall;
+				    BEGIN
+				      in := t - 1; CALL fib; a := out;
+				      in := t - 2; CALL fib; b := out;
+				      out := a + b
+				    END;
+				  PROCEDURE baseCase;
+				    out := t;
+				  BEGIN
+				    t := in;
+				    IF t <= 1 THEN CALL baseCase;
+				    IF t > 1 THEN CALL recursiveCall
+				  END;
+				PROCEDURE fresh;
+				  VAR x, s, f;
+				  BEGIN
+				    ! x; ! s; ! f;
+				    x := x + 1; s := "set"; f := TRUE
+				  END;
+				BEGIN
+				  in := 20; CALL fib; ! out;
+				  CALL fresh; CALL fresh;
+				  in := 5; CALL fib; ! out
+				END
+				.
+				""";
+		// the second activation of fresh still starts with the defaults
+		String output = assertSameOutput(input, "-O0", "-fframe-reuse");
+		assertEquals("6765\n0\nnull\nfalse\n0\nnull\nfalse\n5\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O1", "-fframe-reuse");
+		assertSameOutput(input, "-O2", "-fno-precompute", "-fframe-reuse");
+		// one allocation site per procedure, in the method its calls get the instance from
+		Pattern allocation = Pattern.compile("NEW edu/ufl/cise/plpfa22/prog\\$");
+		long reused = 0;
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0", "-fframe-reuse")) {
+			reused += allocation.matcher(CodeGenUtils.bytecodeToString(genClass.byteCode())).results().count();
+		}
+		assertEquals(4, reused);
+		long allocated = 0;
+		for (CodeGenUtils.GenClass genClass : compile(input, "-O0")) {
+			allocated += allocation.matcher(CodeGenUtils.bytecodeToString(genClass.byteCode())).results().count();
+		}
+		assertEquals(8, allocated);
+	}
+
+	@Test
+	void singleClass() throws Exception {
+		String input = """
+				CONST limit = 3;
+				VAR in, out;
+				PROCEDURE fib;
+				  VAR t, a, b;
+				  PROCEDURE recursiveCall;
+				    BEGIN
+				      in := t - 1; CALL fib; a := out;
+				      in := t - 2; CALL fib; b := out;
+				      out := a + b
+				    END;
+				  PROCEDURE baseCase;
+				    out := t;
+				  BEGIN
+				    t := in;
+				    IF t <= 1 THEN CALL baseCase;
+				    IF t > 1 THEN CALL recursiveCall
+				  END;
+				PROCEDURE words;
+				  CONST limit = "!";
+				  VAR s, f, n;
+				  PROCEDURE outer;
+				    VAR k;
+				    PROCEDURE inner;
+				      BEGIN s := s + limit; f := f = FALSE; n := n + k END;
+				    BEGIN k := 2; CALL inner; IF n < 6 THEN CALL outer END;
+				  BEGIN s := "go"; CALL outer; ! s; ! f; ! n END;
+				PROCEDURE countdown;
+				  IF in > 0 THEN BEGIN ! in; in := in - 1; CALL countdown END;
+				PROCEDURE run;
+				  BEGIN in := limit; CALL countdown END;
+				BEGIN
+				  in := 20; CALL fib; ! out;
+				  CALL words; CALL run
+				END
+				.
+				""";
+		String output = assertSameOutput(input, "-O0", "-fsingle-class");
+		assertEquals("6765\ngo!!!\ntrue\n6\n3\n2\n1\n", output.replace("\r\n", "\n"));
+		assertSameOutput(input, "-O1", "-fsingle-class");
+		assertSameOutput(input, "-O2", "-fno-precompute", "-fsingle-class");
+		// the procedures are private methods of prog, getting the arrays of the variables they share
+		List<CodeGenUtils.GenClass> classes = compile(input, "-O1", "-fsingle-class");
+		assertEquals(1, classes.size());
+		String code = CodeGenUtils.bytecodeToString(classes.get(0).byteCode());
+		assertTrue(code.contains("private prog$fib$recursiveCall([I[I[I)V"), code);
+		assertTrue(code.contains("private prog$words$outer$inner([Ljava/lang/String;[Z[I[I)V"), code);
+		assertTrue(code.contains("private prog$run()V"), code);
+		assertThrows(IllegalArgumentException.class, () -> compile(input, "-O1", "-fsingle-class", "-fir-backend"));
+	}
+
+	@Test
+	void profileGuided() throws Exception {
+		String input = """
+				VAR i, s;
+				PROCEDURE never;
+				  i := i + 1;
+				PROCEDURE hot;
+				  BEGIN s := s + 1; s := s + 2; s := s + 3; s := s + 4; s := s + 5 END;
+				BEGIN
+				  i := 0;
+				  s := 0;
+				  WHILE i < 2000 DO
+				  BEGIN
+				    IF i = 1234 THEN ! "rare";
+				    CALL hot;
+				    i := i + 1
+				  END;
+				  IF i < 0 THEN CALL never;
+				  ! s
+				END
+				.
+				""";
+		Profile.clearRecorded();
+		String output = run(compile(input, "-O0", "-fprofile-generate"));
+		assertEquals("rare\n30000\n", output.replace("\r\n", "\n"));
+		Profile all = Profile.recorded();
+		String id = Profile.programId(input);
+		Profile recorded = all.forProgram(id);
+		assertEquals(2000, recorded.getCount("call 4:11"));
+		assertEquals(0, recorded.getCount("call 2:11"));
+		assertEquals(2000, recorded.getCount("if 11:5"));
+		assertEquals(1, recorded.getCount("if-taken 11:5"));
+		assertEquals(1, recorded.getCount("while 9:18"));
+		assertEquals(2000, recorded.getCount("while-trip 9:18"));
+		assertEquals(1, recorded.getCount("if 15:3"));
+		// nested IF statements are counted apart
+		String nested = """
+				VAR i, n;
+				BEGIN
+				  WHILE i < 1000 DO
+				  BEGIN
+				    IF i > 0 THEN IF i = 500 THEN n := n + 1;
+				    i := i + 1
+				  END;
+				  ! n
+				END
+				.
+				""";
+		Profile.clearRecorded();
+		run(compile(nested, "-O0", "-fprofile-generate"));
+		Profile counts = Profile.recorded().forProgram(Profile.programId(nested));
+		assertEquals(1000, counts.getCount("if 5:5"));
+		assertEquals(999, counts.getCount("if-taken 5:5"));
+		assertEquals(999, counts.getCount("if 5:19"));
+		assertEquals(1, counts.getCount("if-taken 5:19"));
+		// programs keep their counts apart, also where their statements are at the same location
+		String variant = nested.replace("500", "250");
+		run(compile(variant, "-O0", "-fprofile-generate"));
+		assertEquals(1000, Profile.recorded().forProgram(Profile.programId(nested)).getCount("if 5:5"));
+		assertEquals(1000, Profile.recorded().forProgram(Profile.programId(variant)).getCount("if 5:5"));
+		Profile.clearRecorded();
+		run(compile(input, "-O0", "-fprofile-generate"));
+		// a second run of the same code counts on
+		run(compile(input, "-O0", "-fprofile-generate"));
+		assertEquals(4000, Profile.recorded().forProgram(id).getCount("call 4:11"));
+		// sites are counted by index
+		String instrumented = CodeGenUtils.bytecodeToString(compile(input, "-O0", "-fprofile-generate").get(0).byteCode());
+		assertTrue(instrumented.contains("edu/ufl/cise/plpfa22/Profile.count (I)V"), instrumented);
+		assertThrows(IllegalArgumentException.class, () -> compile(input, "-O0", "-fprofile-generate", "-fir-backend"));
+
+		Path file = Files.createTempFile("profile", ".txt");
+		try {
+			all.write(file);
+			Profile profile = Profile.read(file);
+			assertEquals(2000, profile.getCount(id + " while-trip 9:18"));
+			assertEquals(4000, Profile.read(file).merge(profile).forProgram(id).getCount("call 4:11"));
+
+			// the rarely taken body is moved after the RETURN of run
+			Compiler compiler = new Compiler(CompilerOptions.parse("-O1").setProfile(profile));
+			List<CodeGenUtils.GenClass> classes = compiler.compile(input, "prog", PACKAGE_NAME);
+			assertEquals(output, run(classes));
+			String code = CodeGenUtils.bytecodeToString(classes.get(0).byteCode());
+			int run = code.indexOf("public run()V");
+			assertTrue(code.indexOf("LDC \"rare\"") > code.indexOf("RETURN", run), code);
+			code = CodeGenUtils.bytecodeToString(compile(input, "-O1").get(0).byteCode());
+			run = code.indexOf("public run()V");
+			assertTrue(code.indexOf("LDC \"rare\"") < code.indexOf("RETURN", run), code);
+
+			// the hot procedure is inlined despite its size, and the one never called is not
+			Set<String> names = new HashSet<>();
+			for (CodeGenUtils.GenClass genClass : compile(input, "-O2", "-fno-precompute")) {
+				names.add(genClass.className());
+			}
+			assertEquals(Set.of("edu/ufl/cise/plpfa22/prog", "edu/ufl/cise/plpfa22/prog$hot"), names);
+			names.clear();
+			compiler = new Compiler(CompilerOptions.parse("-O2", "-fno-precompute").setProfile(profile));
+			classes = compiler.compile(input, "prog", PACKAGE_NAME);
+			for (CodeGenUtils.GenClass genClass : classes) {
+				names.add(genClass.className());
+			}
+			assertEquals(Set.of("edu/ufl/cise/plpfa22/prog", "edu/ufl/cise/plpfa22/prog$never"), names);
+			assertEquals(output, run(classes));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelAnalysisTest {
+
+	static final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@AfterAll
+	static void shutdown() {
+		pool.shutdown();
+	}
+
+	ASTNode check(String input, boolean parallel) throws PLPException {
+		ASTNode ast = CompilerComponentFactory.getParser(CompilerComponentFactory.getLexer(input)).parse();
+		if (parallel) {
+			ast.visit(CompilerComponentFactory.getScopeVisitor(pool), null);
+			ast.visit(CompilerComponentFactory.getTypeInferenceVisitor(pool), null);
+		} else {
+			ast.visit(CompilerComponentFactory.getScopeVisitor(), null);
+			ast.visit(CompilerComponentFactory.getTypeInferenceVisitor(), null);
+		}
+		return ast;
+	}
+
+	/**
+	 * Lists every identifier use and declaration with the annotations the checkers put on it.
+	 */
+	List<String> annotations(ASTNode ast) throws PLPException {
+		List<String> out = new ArrayList<>();
+		ast.visit(new AstTraversalVisitor() {
+			@Override
+			public Object visitVarDec(VarDec varDec, Object arg) {
+				out.add("var " + String.valueOf(varDec.ident.getText()) + " " + varDec.getType() + " " + varDec.getNest());
+				return null;
+			}
+
+			@Override
+			public Object visitConstDec(ConstDec constDec, Object arg) {
+				out.add("const " + String.valueOf(constDec.ident.getText()) + " " + constDec.getType() + " " + constDec.getNest());
+				return null;
+			}
+
+			@Override
+			public Object visitProcedure(ProcDec procDec, Object arg) throws PLPException {
+				out.add("proc " + String.valueOf(procDec.ident.getText()) + " " + procDec.getType() + " " + procDec.getNest());
+				return super.visitProcedure(procDec, arg);
+			}
+
+			@Override
+			public Object visitExpressionIdent(ExpressionIdent expressionIdent, Object arg) {
+				out.add("use " + String.valueOf(expressionIdent.firstToken.getText()) + " " + expressionIdent.getType()
+						+ " " + expressionIdent.getNest() + " " + expressionIdent.getDec().getNest());
+				return null;
+			}
+
+			@Override
+			public Object visitIdent(Ident ident, Object arg) {
+				out.add("ident " + String.valueOf(ident.getText()) + " " + ident.getNest() + " " + ident.getDec().getNest());
+				return null;
+			}
+		}, null);
+		return out;
+	}
+
+	String manyProcedures(int count) {
+		StringBuilder sb = new StringBuilder("VAR total, label;\n");
+		for (int i = 0; i < count; i++) {
+			sb.append("PROCEDURE p").append(i).append(";\n")
+					.append("  VAR a, s;\n")
+					.append("  PROCEDURE inner;\n")
+					.append("    BEGIN a := a * 2; total := total + a END;\n")
+					.append("  BEGIN a := ").append(i).append("; s := \"p\"; CALL inner;")
+					.append(" IF a > 10 THEN label := s + \"!\" END;\n");
+		}
+		sb.append("BEGIN total := 0;\n");
+		for (int i = 0; i < count; i++) {
+			sb.append("CALL p").append(i).append(";\n");
+		}
+		sb.append("! total\nEND\n.\n");
+		return sb.toString();
+	}
+
+	@Test
+	void manySiblingsMatchSequential() throws PLPException {
+		String input = manyProcedures(200);
+		assertEquals(annotations(check(input, false)), annotations(check(input, true)));
+	}
+
+	@Test
+	void typeFlowsBetweenSiblings() throws PLPException {
+		String input = """
+				VAR x, y;
+				PROCEDURE p;
+				  x := y;
+				PROCEDURE q;
+				  y := "hello";
+				BEGIN CALL q; CALL p; ! x END
+				.
+				""";
+		assertEquals(annotations(check(input, false)), annotations(check(input, true)));
+	}
+
+	@Test
+	void scopeErrorInOneProcedure() {
+		String input = manyProcedures(20).replace("PROCEDURE p7;\n  VAR a, s;", "PROCEDURE p7;\n  VAR b, s;");
+		assertThrows(ScopeException.class, () -> check(input, true));
+	}
+
+	@Test
+	void conflictingInferenceAcrossProcedures() {
+		String input = """
+				VAR x;
+				PROCEDURE p;
+				  x := 3;
+				PROCEDURE q;
+				  x := "three";
+				CALL p
+				.
+				""";
+		assertThrows(TypeCheckException.class, () -> check(input, false));
+		assertThrows(TypeCheckException.class, () -> check(input, true));
+	}
+
+	@Test
+	void untypedVariable() {
+		String input = """
+				VAR x;
+				PROCEDURE p;
+				  ! x;
+				CALL p
+				.
+				""";
+		assertThrows(TypeCheckException.class, () -> check(input, false));
+		assertThrows(TypeCheckException.class, () -> check(input, true));
+	}
+}
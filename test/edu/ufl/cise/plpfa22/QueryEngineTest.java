@@ -0,0 +1,159 @@
+package edu.ufl.cise.plpfa22;
+
+import edu.ufl.cise.plpfa22.ast.ASTNode;
+import edu.ufl.cise.plpfa22.query.CompilerDatabase;
+import edu.ufl.cise.plpfa22.query.QueryEngine;
+import edu.ufl.cise.plpfa22.query.QueryKind;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryEngineTest {
+
+	static final String FILE = "prog.p0";
+
+	static final String PROGRAM = """
+			VAR total, name;
+			PROCEDURE p;
+			  VAR a;
+			  PROCEDURE r;
+			    a := a + 1;
+			  BEGIN a := 10; CALL r; total := total + a END;
+			PROCEDURE q;
+			  BEGIN name := "q"; total := total * 2 END;
+			BEGIN
+			  total := 1;
+			  CALL p;
+			  CALL q;
+			  ! total;
+			  ! name
+			END
+			.
+			""";
+
+	@SuppressWarnings("unchecked")
+	List<CodeGenUtils.GenClass> compile(String input) throws Exception {
+		ASTNode ast = CompilerComponentFactory.getParser(CompilerComponentFactory.getLexer(input)).parse();
+		ast.visit(CompilerComponentFactory.getScopeVisitor(), null);
+		ast.visit(CompilerComponentFactory.getTypeInferenceVisitor(), null);
+		return (List<CodeGenUtils.GenClass>) ast.visit(CompilerComponentFactory.getCodeGenVisitor("prog", "edu/ufl/cise/plpfa22", ""), null);
+	}
+
+	String run(List<CodeGenUtils.GenClass> classes) throws Exception {
+		PrintStream originalOut = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out));
+		try {
+			Class<?> mainClass = new CodeGenUtils.DynamicClassLoader().define(classes);
+			mainClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		} finally {
+			System.setOut(originalOut);
+		}
+		return out.toString();
+	}
+
+	Set<String> classNames(List<CodeGenUtils.GenClass> classes) {
+		Set<String> names = new HashSet<>();
+		for (CodeGenUtils.GenClass genClass : classes) {
+			names.add(genClass.className());
+		}
+		return names;
+	}
+
+	@Test
+	void matchesFullCompile() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		db.setSource(FILE, PROGRAM);
+		List<CodeGenUtils.GenClass> classes = db.classes(FILE);
+		List<CodeGenUtils.GenClass> expected = compile(PROGRAM);
+		assertEquals(expected.get(0).className(), classes.get(0).className());
+		assertEquals(classNames(expected), classNames(classes));
+		assertEquals(run(expected), run(classes));
+	}
+
+	@Test
+	void unchangedSourceIsNotRecomputed() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		QueryEngine engine = db.getEngine();
+		db.setSource(FILE, PROGRAM);
+		List<CodeGenUtils.GenClass> first = db.classes(FILE);
+		engine.resetExecutionCounts();
+
+		db.setSource(FILE, PROGRAM);
+		assertSame(first, db.classes(FILE));
+		for (QueryKind kind : QueryKind.values()) {
+			assertEquals(0, engine.getExecutionCount(kind), kind.toString());
+		}
+	}
+
+	@Test
+	void whitespaceEditStopsAtTokens() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		QueryEngine engine = db.getEngine();
+		db.setSource(FILE, PROGRAM);
+		db.classes(FILE);
+		engine.resetExecutionCounts();
+
+		db.setSource(FILE, PROGRAM.replace("CALL q;", "CALL   q ;"));
+		db.classes(FILE);
+		assertEquals(1, engine.getExecutionCount(QueryKind.TOKENS));
+		assertEquals(0, engine.getExecutionCount(QueryKind.AST));
+		assertEquals(0, engine.getExecutionCount(QueryKind.BYTECODE));
+	}
+
+	@Test
+	void editOnlyRegeneratesAffectedProcedure() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		QueryEngine engine = db.getEngine();
+		db.setSource(FILE, PROGRAM);
+		List<CodeGenUtils.GenClass> before = db.classes(FILE);
+		int[] statsBefore = db.getTypeCacheStats(FILE);
+		engine.resetExecutionCounts();
+
+		String edited = PROGRAM.replace("total := total * 2", "total := total * 3");
+		db.setSource(FILE, edited);
+		List<CodeGenUtils.GenClass> after = db.classes(FILE);
+
+		assertEquals(1, engine.getExecutionCount(QueryKind.BYTECODE));
+		assertEquals(1, engine.getExecutionCount(QueryKind.TYPES));
+		// main, p and r are answered from the previous check
+		int[] statsAfter = db.getTypeCacheStats(FILE);
+		assertTrue(statsAfter[0] - statsBefore[0] >= 3);
+		for (int i = 0; i < before.size(); i++) {
+			if (!before.get(i).className().endsWith("$q")) {
+				assertArrayEquals(before.get(i).byteCode(), after.get(i).byteCode());
+			}
+		}
+		assertEquals(run(compile(edited)), run(after));
+	}
+
+	@Test
+	void typeChangeReachesUsers() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		db.setSource(FILE, PROGRAM);
+		db.classes(FILE);
+
+		String edited = PROGRAM.replace("name := \"q\"", "name := 42");
+		db.setSource(FILE, edited);
+		assertEquals(run(compile(edited)), run(db.classes(FILE)));
+	}
+
+	@Test
+	void errorsAreReportedAndRecovered() throws Exception {
+		CompilerDatabase db = new CompilerDatabase();
+		db.setSource(FILE, PROGRAM.replace("a := a + 1", "b := a + 1"));
+		assertThrows(ScopeException.class, () -> db.classes(FILE));
+		db.setSource(FILE, PROGRAM);
+		assertEquals(run(compile(PROGRAM)), run(db.classes(FILE)));
+	}
+}
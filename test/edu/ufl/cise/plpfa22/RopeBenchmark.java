@@ -0,0 +1,21 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * A string built by appending in a loop, held as a String against a PLPString.
+ */
+class RopeBenchmark {
+
+	static final String BUILD = """
+			VAR s, i;
+			BEGIN
+			  s := ""; i := 0;
+			  WHILE i < 20000 DO BEGIN s := s + "item" + ", "; i := i + 1 END;
+			  ! s = ""
+			END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		Benchmark.compare("build", BUILD, new String[]{"-O2", "-fno-rope-strings"}, new String[]{"-O2"});
+	}
+}
@@ -0,0 +1,87 @@
+package edu.ufl.cise.plpfa22;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cost of getting a program with many procedures running, with a class per procedure against
+ * -fsingle-class. Each round defines the compiled classes in a new class loader and runs main once, so
+ * the time includes loading, verifying and interpreting them; the metaspace figure is what the
+ * round's classes added. Medians over ROUNDS, after a garbage collection that unloads the classes of
+ * the previous round.
+ */
+class StartupBenchmark {
+
+	static final int PROCEDURES = 1000;
+	static final int ROUNDS = 15;
+
+	record Result(String name, int classes, int bytes, double compileMillis, double startMillis, double metaspaceKilobytes) {
+	}
+
+	// procedures with a nested procedure each, sharing one of their variables
+	static String program(int procedures) {
+		StringBuilder source = new StringBuilder("VAR total;\n");
+		for (int i = 0; i < procedures; i++) {
+			source.append("PROCEDURE p").append(i).append(";\n")
+					.append("  VAR a;\n")
+					.append("  PROCEDURE q; a := a + ").append(i).append(";\n")
+					.append("  BEGIN a := 1; CALL q; total := total + a END;\n");
+		}
+		source.append("BEGIN\n  total := 0;\n");
+		for (int i = 0; i < procedures; i++) {
+			source.append("  CALL p").append(i).append(";\n");
+		}
+		return source.append("  ! total\nEND\n.\n").toString();
+	}
+
+	static Result measure(String source, String... options) throws Exception {
+		MemoryPoolMXBean metaspace = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getName().equals("Metaspace")).findFirst().orElseThrow();
+		double[] compileMillis = new double[ROUNDS];
+		double[] startMillis = new double[ROUNDS];
+		double[] metaspaceKilobytes = new double[ROUNDS];
+		List<CodeGenUtils.GenClass> classes = null;
+		PrintStream originalOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < ROUNDS; i++) {
+				long start = System.nanoTime();
+				classes = new Compiler(CompilerOptions.parse(options)).compile(source, "prog", "edu/ufl/cise/plpfa22");
+				compileMillis[i] = (System.nanoTime() - start) / 1e6;
+
+				System.gc();
+				long used = metaspace.getUsage().getUsed();
+				start = System.nanoTime();
+				Class<?> mainClass = new CodeGenUtils.DynamicClassLoader().define(classes);
+				mainClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+				startMillis[i] = (System.nanoTime() - start) / 1e6;
+				metaspaceKilobytes[i] = (metaspace.getUsage().getUsed() - used) / 1024.0;
+			}
+		} finally {
+			System.setOut(originalOut);
+		}
+		int bytes = classes.stream().mapToInt(genClass -> genClass.byteCode().length).sum();
+		return new Result(String.join(" ", options), classes.size(), bytes, median(compileMillis), median(startMillis),
+				median(metaspaceKilobytes));
+	}
+
+	static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	public static void main(String[] args) throws Exception {
+		String source = program(PROCEDURES);
+		System.out.println(PROCEDURES + " procedures with a nested procedure each");
+		for (String[] options : List.of(new String[]{"-O1"}, new String[]{"-O1", "-fsingle-class"})) {
+			Result result = measure(source, options);
+			System.out.printf("  %-20s %6d classes %9d bytes %10.3f ms compile %10.3f ms start %10.1f KB metaspace%n", result.name(),
+					result.classes(), result.bytes(), result.compileMillis(), result.startMillis(), result.metaspaceKilobytes());
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package edu.ufl.cise.plpfa22;
+
+/**
+ * String relational operators compiled inline against calls into PLPRuntime.
+ */
+class StringCompareBenchmark {
+
+	static final String RELATIONS = """
+			VAR path, prefix, suffix, i, n;
+			BEGIN
+			  prefix := "/usr/local"; suffix := ".class"; path := "/usr/local/lib/Main.class";
+			  i := 0; n := 0;
+			  WHILE i < 500000 DO
+			  BEGIN
+			    IF prefix < path THEN n := n + 1;
+			    IF path >= suffix THEN n := n + 1;
+			    IF (path > prefix) # (prefix <= path) THEN n := n - 1;
+			    i := i + 1
+			  END;
+			  ! n
+			END
+			.
+			""";
+
+	public static void main(String[] args) throws Exception {
+		Benchmark.compare("relations", RELATIONS, new String[]{"-O1", "-fno-string-intrinsics"}, new String[]{"-O1"});
+	}
+}